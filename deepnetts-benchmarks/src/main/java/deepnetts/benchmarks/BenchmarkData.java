@@ -0,0 +1,182 @@
+/**
+ *  DeepNetts is pure Java Deep Learning Library with support for Backpropagation
+ *  based learning and image recognition.
+ *
+ *  Copyright (C) 2017  Zoran Sevarac <sevarac@gmail.com>
+ *
+ * This file is part of DeepNetts.
+ *
+ * DeepNetts is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <https://www.gnu.org/licenses/>.package
+ * deepnetts.core;
+ */
+package deepnetts.benchmarks;
+
+import deepnetts.data.TabularDataSet;
+import deepnetts.net.ConvolutionalNetwork;
+import deepnetts.net.layers.activation.ActivationType;
+import deepnetts.net.loss.LossType;
+import deepnetts.util.Tensor;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Random;
+import javax.imageio.ImageIO;
+
+/**
+ * Synthetic data sets, files and networks used by benchmarks.
+ * All data is generated from a fixed seed, so each run benchmarks the same work.
+ *
+ * @author Zoran Sevarac
+ */
+final class BenchmarkData {
+
+    static final long SEED = 123;
+
+    private BenchmarkData() { }
+
+    /**
+     * Input shapes of common image data sets: MNIST, CIFAR-10 and 96x96 color images (like STL-10), as width x height x depth.
+     */
+    static final String MNIST = "28x28x1", CIFAR10 = "32x32x3", STL10 = "96x96x3";
+
+    /**
+     * Parses shape given as width x height x depth.
+     *
+     * @param shape shape string like 28x28x1
+     * @return array with width, height and depth
+     */
+    static int[] parseShape(String shape) {
+        final String[] parts = shape.split("x");
+        return new int[]{Integer.parseInt(parts[0]), Integer.parseInt(parts[1]), Integer.parseInt(parts[2])};
+    }
+
+    /**
+     * Creates convolutional network for classification of images with the specified shape into 10 classes:
+     * convolution 5x5 with 16 channels, max pooling 2x2, fully connected layer with 128 units and softmax output.
+     */
+    static ConvolutionalNetwork convolutionalNetwork(int width, int height, int depth) {
+        return ConvolutionalNetwork.builder()
+                .addInputLayer(width, height, depth)
+                .addConvolutionalLayer(5, 5, 16, ActivationType.RELU)
+                .addMaxPoolingLayer(2, 2, 2)
+                .addFullyConnectedLayer(128, ActivationType.RELU)
+                .addOutputLayer(10, ActivationType.SOFTMAX)
+                .lossFunction(LossType.CROSS_ENTROPY)
+                .randomSeed(SEED)
+                .build();
+    }
+
+    /**
+     * Creates data set with random inputs of the specified shape and random one hot encoded targets.
+     */
+    static TabularDataSet<TabularDataSet.Item> classificationSet(int samples, int width, int height, int depth, int classes) {
+        final Random random = new Random(SEED);
+        final int inputSize = width * height * depth;
+        final TabularDataSet<TabularDataSet.Item> dataSet = new TabularDataSet<>(inputSize, classes);
+
+        for (int i = 0; i < samples; i++) {
+            final float[] inputs = randomValues(random, inputSize);
+            final float[] targets = new float[classes];
+            targets[random.nextInt(classes)] = 1;
+            final Tensor input = (height == 1 && depth == 1) ? new Tensor(inputs) : new Tensor(height, width, depth, inputs);
+            dataSet.add(new TabularDataSet.Item(input, new Tensor(targets)));
+        }
+
+        final String[] columnNames = new String[inputSize + classes];
+        for (int i = 0; i < columnNames.length; i++) {
+            columnNames[i] = (i < inputSize ? "in" : "out") + i;
+        }
+        dataSet.setColumnNames(columnNames);
+
+        return dataSet;
+    }
+
+    static float[] randomValues(Random random, int size) {
+        final float[] values = new float[size];
+        for (int i = 0; i < size; i++) {
+            values[i] = random.nextFloat();
+        }
+        return values;
+    }
+
+    /**
+     * Writes CSV file with header and the specified number of rows with random values.
+     */
+    static void writeCsv(File file, int rows, int numInputs, int numOutputs) throws IOException {
+        final Random random = new Random(SEED);
+        final int cols = numInputs + numOutputs;
+
+        try (PrintWriter out = new PrintWriter(file, "UTF-8")) {
+            for (int c = 0; c < cols; c++) {
+                out.print(c > 0 ? "," : "");
+                out.print("col" + c);
+            }
+            out.println();
+            for (int r = 0; r < rows; r++) {
+                for (int c = 0; c < cols; c++) {
+                    out.print(c > 0 ? "," : "");
+                    out.print(c < numInputs ? random.nextFloat() : random.nextInt(2));
+                }
+                out.println();
+            }
+        }
+    }
+
+    /**
+     * Writes the specified number of random PNG images in two categories into the given directory,
+     * with image index file index.txt and labels file labels.txt, as used by ImageSet.
+     */
+    static void writeImages(File dir, int count, int width, int height) throws IOException {
+        final Random random = new Random(SEED);
+        final String[] labels = {"cat", "dog"};
+
+        try (PrintWriter index = new PrintWriter(new File(dir, "index.txt"), "UTF-8")) {
+            for (String label : labels) {
+                new File(dir, label).mkdirs();
+            }
+            for (int i = 0; i < count; i++) {
+                final BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+                for (int y = 0; y < height; y++) {
+                    for (int x = 0; x < width; x++) {
+                        image.setRGB(x, y, random.nextInt(0x1000000));
+                    }
+                }
+                final String label = labels[i % labels.length];
+                final String fileName = label + "/" + i + ".png";
+                ImageIO.write(image, "png", new File(dir, fileName));
+                index.println(fileName + " " + label);
+            }
+        }
+
+        try (PrintWriter labelsFile = new PrintWriter(new File(dir, "labels.txt"), "UTF-8")) {
+            for (String label : labels) {
+                labelsFile.println(label);
+            }
+        }
+    }
+
+    /**
+     * Deletes the specified file, or directory with all its content.
+     */
+    static void delete(File file) {
+        final File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+
+}
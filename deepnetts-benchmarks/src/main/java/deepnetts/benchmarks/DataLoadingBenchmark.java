@@ -0,0 +1,99 @@
+/**
+ *  DeepNetts is pure Java Deep Learning Library with support for Backpropagation
+ *  based learning and image recognition.
+ *
+ *  Copyright (C) 2017  Zoran Sevarac <sevarac@gmail.com>
+ *
+ * This file is part of DeepNetts.
+ *
+ * DeepNetts is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <https://www.gnu.org/licenses/>.package
+ * deepnetts.core;
+ */
+package deepnetts.benchmarks;
+
+import deepnetts.data.DataSets;
+import deepnetts.data.ImageSet;
+import deepnetts.data.PackedTabularDataSet;
+import deepnetts.data.TabularDataSet;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Loading of data sets from files: CSV file with 100000 rows and 22 columns,
+ * and 1000 PNG images of 32x32 pixels with image index and labels files.
+ * Files are generated in a temporary directory, which is deleted after benchmark.
+ *
+ * @author Zoran Sevarac
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DataLoadingBenchmark {
+
+    static final int CSV_ROWS = 100000, CSV_INPUTS = 20, CSV_OUTPUTS = 2;
+    static final int IMAGE_COUNT = 1000, IMAGE_SIZE = 32;
+
+    private File dir, csvFile, imageDir;
+
+    @Setup
+    public void setup() throws IOException {
+        dir = Files.createTempDirectory("deepnetts-benchmarks").toFile();
+
+        csvFile = new File(dir, "data.csv");
+        BenchmarkData.writeCsv(csvFile, CSV_ROWS, CSV_INPUTS, CSV_OUTPUTS);
+
+        imageDir = new File(dir, "images");
+        imageDir.mkdirs();
+        BenchmarkData.writeImages(imageDir, IMAGE_COUNT, IMAGE_SIZE, IMAGE_SIZE);
+    }
+
+    @TearDown
+    public void tearDown() {
+        BenchmarkData.delete(dir);
+    }
+
+    @Benchmark
+    public TabularDataSet readCsv() throws IOException {
+        return DataSets.readCsv(csvFile, CSV_INPUTS, CSV_OUTPUTS, true, ",");
+    }
+
+    @Benchmark
+    public PackedTabularDataSet readCsvPacked() throws IOException {
+        return DataSets.readCsvPacked(csvFile, CSV_INPUTS, CSV_OUTPUTS, true, ",");
+    }
+
+    @Benchmark
+    public ImageSet loadImages() throws IOException {
+        final ImageSet imageSet = new ImageSet(IMAGE_SIZE, IMAGE_SIZE);
+        imageSet.loadLabels(new File(imageDir, "labels.txt"));
+        imageSet.loadImages(new File(imageDir, "index.txt"));
+        return imageSet;
+    }
+
+}
@@ -0,0 +1,98 @@
+/**
+ *  DeepNetts is pure Java Deep Learning Library with support for Backpropagation
+ *  based learning and image recognition.
+ *
+ *  Copyright (C) 2017  Zoran Sevarac <sevarac@gmail.com>
+ *
+ * This file is part of DeepNetts.
+ *
+ * DeepNetts is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <https://www.gnu.org/licenses/>.package
+ * deepnetts.core;
+ */
+package deepnetts.benchmarks;
+
+import deepnetts.data.TabularDataSet;
+import deepnetts.net.ConvolutionalNetwork;
+import deepnetts.net.layers.FullyConnectedLayer;
+import deepnetts.net.weights.PrecisionType;
+import deepnetts.util.Tensor;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Forward pass of fully connected layer with float and bfloat16 weights, for a single sample and for a batch of samples.
+ * Uses the fully connected layer of a network created by {@link BenchmarkData#convolutionalNetwork(int, int, int)},
+ * after a complete forward pass, so the layer has valid inputs.
+ *
+ * @author Zoran Sevarac
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FullyConnectedBenchmark {
+
+    @Param({BenchmarkData.MNIST, BenchmarkData.CIFAR10, BenchmarkData.STL10})
+    String shape;
+
+    /**
+     * Precision of fully connected layer weights.
+     */
+    @Param({"FLOAT32", "BFLOAT16"})
+    PrecisionType precision;
+
+    private FullyConnectedLayer fullyConnectedLayer;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        final int[] dims = BenchmarkData.parseShape(shape);
+        final ConvolutionalNetwork network = BenchmarkData.convolutionalNetwork(dims[0], dims[1], dims[2]);
+        network.setInferencePrecision(precision);
+        fullyConnectedLayer = (FullyConnectedLayer) network.getLayers().get(3);
+
+        final TabularDataSet<TabularDataSet.Item> samples = BenchmarkData.classificationSet(LayerBenchmark.BATCH_SIZE, dims[0], dims[1], dims[2], 10);
+        network.setInput(samples.get(0).getInput());
+
+        network.initBatch(LayerBenchmark.BATCH_SIZE);
+        for (int i = 0; i < LayerBenchmark.BATCH_SIZE; i++) {
+            network.setBatchInput(i, samples.get(i));
+        }
+        network.forwardBatch(LayerBenchmark.BATCH_SIZE);
+    }
+
+    @Benchmark
+    public Tensor fullyConnectedForward() {
+        fullyConnectedLayer.forward();
+        return fullyConnectedLayer.getOutputs();
+    }
+
+    @Benchmark
+    public Tensor fullyConnectedForwardBatch() {
+        fullyConnectedLayer.forwardBatch(LayerBenchmark.BATCH_SIZE);
+        return fullyConnectedLayer.getBatchOutputs();
+    }
+
+}
@@ -0,0 +1,186 @@
+/**
+ *  DeepNetts is pure Java Deep Learning Library with support for Backpropagation
+ *  based learning and image recognition.
+ *
+ *  Copyright (C) 2017  Zoran Sevarac <sevarac@gmail.com>
+ *
+ * This file is part of DeepNetts.
+ *
+ * DeepNetts is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <https://www.gnu.org/licenses/>.package
+ * deepnetts.core;
+ */
+package deepnetts.benchmarks;
+
+import deepnetts.data.TabularDataSet;
+import deepnetts.net.ConvolutionalNetwork;
+import deepnetts.net.layers.AbstractLayer;
+import deepnetts.net.layers.ConvolutionalLayer;
+import deepnetts.net.layers.FullyConnectedLayer;
+import deepnetts.net.layers.MaxPoolingLayer;
+import deepnetts.util.Tensor;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Forward and backward pass of convolutional, max pooling and fully connected layers,
+ * for a single sample and for a batch of samples, with input shapes of MNIST, CIFAR-10 and 96x96 color images.
+ * Layers are benchmarked inside a network created by {@link BenchmarkData#convolutionalNetwork(int, int, int)},
+ * after a complete forward and backward pass, so each layer has valid inputs and deltas of next layer.
+ *
+ * @author Zoran Sevarac
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LayerBenchmark {
+
+    /**
+     * Number of samples in a batch for batch benchmarks.
+     */
+    static final int BATCH_SIZE = 32;
+
+    @Param({BenchmarkData.MNIST, BenchmarkData.CIFAR10, BenchmarkData.STL10})
+    String shape;
+
+    private ConvolutionalNetwork network;
+    private ConvolutionalLayer convLayer;
+    private MaxPoolingLayer poolLayer;
+    private FullyConnectedLayer fullyConnectedLayer;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        final int[] dims = BenchmarkData.parseShape(shape);
+        network = BenchmarkData.convolutionalNetwork(dims[0], dims[1], dims[2]);
+        convLayer = (ConvolutionalLayer) network.getLayers().get(1);
+        poolLayer = (MaxPoolingLayer) network.getLayers().get(2);
+        fullyConnectedLayer = (FullyConnectedLayer) network.getLayers().get(3);
+
+        final TabularDataSet<TabularDataSet.Item> samples = BenchmarkData.classificationSet(BATCH_SIZE, dims[0], dims[1], dims[2], 10);
+        final float[] outputError = BenchmarkData.randomValues(new Random(BenchmarkData.SEED), 10);
+
+        network.setInput(samples.get(0).getInput());
+        network.setOutputError(outputError);
+        network.backward();
+
+        network.initBatch(BATCH_SIZE);
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            network.setBatchInput(i, samples.get(i));
+        }
+        network.forwardBatch(BATCH_SIZE);
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            network.setBatchOutputError(i, outputError);
+        }
+        network.backwardBatch(BATCH_SIZE);
+    }
+
+    /**
+     * Backward passes keep adding to gradients, which are reset so they stay in the same range.
+     */
+    @Setup(Level.Iteration)
+    public void resetGradients() {
+        for (AbstractLayer layer : network.getLayers()) {
+            if (layer.getGradients() != null) {
+                layer.getGradients().fill(0);
+                Tensor.fill(layer.getBiasGradients(), 0);
+            }
+        }
+    }
+
+    @Benchmark
+    public Tensor convolutionalForward() {
+        convLayer.forward();
+        return convLayer.getOutputs();
+    }
+
+    @Benchmark
+    public Tensor convolutionalBackward() {
+        convLayer.backward();
+        return convLayer.getDeltas();
+    }
+
+    @Benchmark
+    public Tensor maxPoolingForward() {
+        poolLayer.forward();
+        return poolLayer.getOutputs();
+    }
+
+    @Benchmark
+    public Tensor maxPoolingBackward() {
+        poolLayer.backward();
+        return poolLayer.getDeltas();
+    }
+
+    @Benchmark
+    public Tensor fullyConnectedForward() {
+        fullyConnectedLayer.forward();
+        return fullyConnectedLayer.getOutputs();
+    }
+
+    @Benchmark
+    public Tensor fullyConnectedBackward() {
+        fullyConnectedLayer.backward();
+        return fullyConnectedLayer.getDeltas();
+    }
+
+    @Benchmark
+    public Tensor convolutionalForwardBatch() {
+        convLayer.forwardBatch(BATCH_SIZE);
+        return convLayer.getBatchOutputs();
+    }
+
+    @Benchmark
+    public Tensor convolutionalBackwardBatch() {
+        convLayer.backwardBatch(BATCH_SIZE);
+        return convLayer.getBatchDeltas();
+    }
+
+    @Benchmark
+    public Tensor maxPoolingForwardBatch() {
+        poolLayer.forwardBatch(BATCH_SIZE);
+        return poolLayer.getBatchOutputs();
+    }
+
+    @Benchmark
+    public Tensor maxPoolingBackwardBatch() {
+        poolLayer.backwardBatch(BATCH_SIZE);
+        return poolLayer.getBatchDeltas();
+    }
+
+    @Benchmark
+    public Tensor fullyConnectedForwardBatch() {
+        fullyConnectedLayer.forwardBatch(BATCH_SIZE);
+        return fullyConnectedLayer.getBatchOutputs();
+    }
+
+    @Benchmark
+    public Tensor fullyConnectedBackwardBatch() {
+        fullyConnectedLayer.backwardBatch(BATCH_SIZE);
+        return fullyConnectedLayer.getBatchDeltas();
+    }
+
+}
@@ -0,0 +1,125 @@
+/**
+ *  DeepNetts is pure Java Deep Learning Library with support for Backpropagation
+ *  based learning and image recognition.
+ *
+ *  Copyright (C) 2017  Zoran Sevarac <sevarac@gmail.com>
+ *
+ * This file is part of DeepNetts.
+ *
+ * DeepNetts is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <https://www.gnu.org/licenses/>.package
+ * deepnetts.core;
+ */
+package deepnetts.benchmarks;
+
+import deepnetts.util.Tensor;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Element wise tensor operations, for tensors which fit in L1 cache, L2 cache and main memory.
+ *
+ * @author Zoran Sevarac
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TensorBenchmark {
+
+    @Param({"1024", "65536", "1048576"})
+    int size;
+
+    private Tensor a, b;
+
+    /**
+     * Random signs, used for multiplication so that values keep their magnitude over many invocations.
+     */
+    private Tensor signs;
+
+    @Setup
+    public void setup() {
+        final Random random = new Random(BenchmarkData.SEED);
+        a = new Tensor(BenchmarkData.randomValues(random, size));
+        b = new Tensor(BenchmarkData.randomValues(random, size));
+        signs = new Tensor(size);
+        for (int i = 0; i < size; i++) {
+            signs.set(i, random.nextBoolean() ? 1 : -1);
+        }
+    }
+
+    @Benchmark
+    public Tensor add() {
+        a.add(b);
+        return a;
+    }
+
+    @Benchmark
+    public Tensor sub() {
+        a.sub(b);
+        return a;
+    }
+
+    @Benchmark
+    public Tensor multiplyElementWise() {
+        a.multiplyElementWise(signs);
+        return a;
+    }
+
+    @Benchmark
+    public Tensor multiply() {
+        a.multiply(-1f);
+        return a;
+    }
+
+    @Benchmark
+    public Tensor div() {
+        a.div(-1f);
+        return a;
+    }
+
+    @Benchmark
+    public Tensor fill() {
+        a.fill(0.5f);
+        return a;
+    }
+
+    @Benchmark
+    public Tensor copy() {
+        Tensor.copy(a, b);
+        return b;
+    }
+
+    @Benchmark
+    public float sumAbs() {
+        return a.sumAbs();
+    }
+
+    @Benchmark
+    public float sumSqr() {
+        return a.sumSqr();
+    }
+
+}
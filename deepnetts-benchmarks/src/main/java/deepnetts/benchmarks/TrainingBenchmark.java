@@ -0,0 +1,103 @@
+/**
+ *  DeepNetts is pure Java Deep Learning Library with support for Backpropagation
+ *  based learning and image recognition.
+ *
+ *  Copyright (C) 2017  Zoran Sevarac <sevarac@gmail.com>
+ *
+ * This file is part of DeepNetts.
+ *
+ * DeepNetts is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <https://www.gnu.org/licenses/>.package
+ * deepnetts.core;
+ */
+package deepnetts.benchmarks;
+
+import deepnetts.core.DeepNetts;
+import deepnetts.data.TabularDataSet;
+import deepnetts.net.ConvolutionalNetwork;
+import deepnetts.net.FeedForwardNetwork;
+import deepnetts.net.NeuralNetwork;
+import deepnetts.net.layers.activation.ActivationType;
+import deepnetts.net.loss.LossType;
+import deepnetts.net.train.BackpropagationTrainer;
+import java.util.concurrent.TimeUnit;
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.core.config.Configurator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * A single training epoch with BackpropagationTrainer on synthetic data, in online and batch mode,
+ * for a small feed forward network and for a convolutional network with MNIST shaped inputs.
+ * Each invocation continues training of the same network for one more epoch.
+ *
+ * @author Zoran Sevarac
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class TrainingBenchmark {
+
+    @Param({"feedforward", "convolutional"})
+    String network;
+
+    @Param({"false", "true"})
+    boolean batchMode;
+
+    private NeuralNetwork<?> neuralNet;
+    private TabularDataSet<TabularDataSet.Item> trainingSet;
+
+    @Setup
+    public void setup() {
+        Configurator.setLevel(DeepNetts.class.getName(), Level.WARN); // do not log every epoch and mini batch
+
+        if (network.equals("feedforward")) {
+            trainingSet = BenchmarkData.classificationSet(10000, 64, 1, 1, 10);
+            neuralNet = FeedForwardNetwork.builder()
+                    .addInputLayer(64)
+                    .addFullyConnectedLayer(32, ActivationType.TANH)
+                    .addOutputLayer(10, ActivationType.SOFTMAX)
+                    .lossFunction(LossType.CROSS_ENTROPY)
+                    .randomSeed(BenchmarkData.SEED)
+                    .build();
+        } else {
+            final int[] dims = BenchmarkData.parseShape(BenchmarkData.MNIST);
+            trainingSet = BenchmarkData.classificationSet(1000, dims[0], dims[1], dims[2], 10);
+            neuralNet = BenchmarkData.convolutionalNetwork(dims[0], dims[1], dims[2]);
+        }
+
+        ((BackpropagationTrainer) neuralNet.getTrainer())
+                .setMaxEpochs(1)
+                .setLearningRate(0.01f)
+                .setBatchMode(batchMode)
+                .setBatchSize(32);
+    }
+
+    @Benchmark
+    public NeuralNetwork<?> trainEpoch() {
+        neuralNet.train(trainingSet);
+        return neuralNet;
+    }
+
+}
@@ -39,7 +39,7 @@ public final class DeepNetts {
         prop = new Properties();
         prop.put("version", "1.0");
         prop.put("vendor", "Deep Netts LLC");
-        prop.put("multithreaded", "false");
+        prop.put("multithreaded", System.getProperty("deepnetts.multithreaded", "false"));
     }
 
     public static DeepNetts getInstance() {
@@ -58,6 +58,21 @@ public final class DeepNetts {
         return prop.getProperty("version");
     }
 
+    /**
+     * Returns true if training should use all available processors by default.
+     * Can be set with system property deepnetts.multithreaded=true
+     *
+     * @return true if multithreaded training is enabled
+     * @see deepnetts.net.train.BackpropagationTrainer#setThreadCount(int)
+     */
+    public boolean isMultithreaded() {
+        return Boolean.parseBoolean(prop.getProperty("multithreaded"));
+    }
+
+    public void setMultithreaded(boolean multithreaded) {
+        prop.put("multithreaded", Boolean.toString(multithreaded));
+    }
+
     public Properties getProperties() {
         return prop;
     }
@@ -72,6 +72,18 @@ public class DataSets {
      *
      */
     public static TabularDataSet readCsv(File csvFile, int numInputs, int numOutputs, boolean hasColumnNames, String delimiter) throws FileNotFoundException, IOException {
+        if (!csvFile.exists()) {
+            throw new FileNotFoundException("File not found: " + csvFile);
+        }
+        // memory mapped parallel parsing for simple delimiters, regular expression delimiters are parsed line by line
+        if (ParallelCsvReader.supportsDelimiter(delimiter)) {
+            return ParallelCsvReader.read(csvFile, numInputs, numOutputs, hasColumnNames, delimiter, Runtime.getRuntime().availableProcessors(), false);
+        }
+
+        return readCsvSequential(csvFile, numInputs, numOutputs, hasColumnNames, delimiter);
+    }
+
+    private static TabularDataSet readCsvSequential(File csvFile, int numInputs, int numOutputs, boolean hasColumnNames, String delimiter) throws IOException {
         TabularDataSet dataSet = new TabularDataSet(numInputs, numOutputs);
         BufferedReader br = new BufferedReader(new FileReader(csvFile));
         String line=null;
@@ -150,6 +162,30 @@ public class DataSets {
         return readCsv(new File(fileName), numInputs, numOutputs, false, ",");
     }
 
+    /**
+     * Creates packed data set from CSV file, which keeps all values in two contiguous arrays instead of an object for each row.
+     * Recommended for large data sets. Empty lines are skipped.
+     *
+     * @param csvFile CSV file
+     * @param numInputs number of input values in a row
+     * @param numOutputs number of output values in a row
+     * @param hasColumnNames true if first row contains column names
+     * @param delimiter delimiter used to separate values
+     * @return packed data set with values loaded from file
+     * @throws IOException if there was an error reading file
+     * @see PackedTabularDataSet
+     */
+    public static PackedTabularDataSet readCsvPacked(File csvFile, int numInputs, int numOutputs, boolean hasColumnNames, String delimiter) throws IOException {
+        if (!csvFile.exists()) {
+            throw new FileNotFoundException("File not found: " + csvFile);
+        }
+        if (ParallelCsvReader.supportsDelimiter(delimiter)) {
+            return (PackedTabularDataSet) ParallelCsvReader.read(csvFile, numInputs, numOutputs, hasColumnNames, delimiter, Runtime.getRuntime().availableProcessors(), true);
+        }
+
+        return new PackedTabularDataSet(readCsvSequential(csvFile, numInputs, numOutputs, hasColumnNames, delimiter));
+    }
+
     // delimiter, hasHeader, column names and columnTypes
     public static CsvFormat detectCsvFormat(String fileName) throws FileNotFoundException, IOException {
         BufferedReader br = new BufferedReader(new FileReader(fileName));
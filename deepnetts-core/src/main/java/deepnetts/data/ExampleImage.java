@@ -24,14 +24,25 @@ package deepnetts.data;
 import deepnetts.util.ImageUtils;
 import deepnetts.util.Tensor;
 import java.awt.image.BufferedImage;
+import java.awt.image.ComponentSampleModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
 import java.awt.image.Raster;
+import java.awt.image.SampleModel;
+import java.awt.image.SinglePixelPackedSampleModel;
 import java.io.File;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import javax.imageio.ImageIO;
 
 /**
  * This class represents example image to train the network.
  * It contains image and label information.
+ *
+ * In compact mode pixels are kept as bytes (one byte per channel), instead of floats,
+ * which takes 4 times less memory. Pixels are then converted to floats in range [0, 1]
+ * only when they are copied into network's input.
  */
 public class ExampleImage implements MLDataItem {
 
@@ -58,8 +69,34 @@ public class ExampleImage implements MLDataItem {
 
     private Tensor rgbTensor;
 
+    /**
+     * RGB values of image pixels in compact mode, in the same order as in rgbVector.
+     */
+    private byte[] pixels;
+
+    /**
+     * RGB values of image pixels in a (memory mapped) buffer, used instead of pixels array for cached images.
+     */
+    private ByteBuffer pixelBuffer;
+
+    /**
+     * Index of the target output with value 1, -1 if not set or if all target outputs are zero.
+     */
+    private int targetIdx = -1;
+
     private File file;
 
+    /**
+     * Float value for each byte value of a pixel channel.
+     */
+    private static final float[] BYTE_TO_FLOAT = new float[256];
+
+    static {
+        for (int i = 0; i < BYTE_TO_FLOAT.length; i++) {
+            BYTE_TO_FLOAT[i] = i / 255.0f;
+        }
+    }
+
 
     
     /**
@@ -91,7 +128,38 @@ public class ExampleImage implements MLDataItem {
     public ExampleImage(BufferedImage image) {
         this(image, null);
     }    
+
+    /**
+     * Creates an instance of new example image with specified image and label,
+     * which keeps pixels as bytes if compact is true.
+     *
+     * @param image image
+     * @param label image label
+     * @param compact true to keep pixels as bytes
+     */
+    public ExampleImage(BufferedImage image, String label, boolean compact) {
+        this.label = label;
+        width = image.getWidth();
+        height = image.getHeight();
+
+        if (compact) {
+            createCompactInputFromPixels(image);
+        } else {
+            createInputFromPixels(image);
+        }
+    }
     
+    /**
+     * Creates example image which reads RGB values of pixels from specified buffer, starting at its position.
+     * Used for images loaded from image set cache file.
+     */
+    ExampleImage(int width, int height, String label, ByteBuffer pixelBuffer) {
+        this.label = label;
+        this.width = width;
+        this.height = height;
+        this.pixelBuffer = pixelBuffer;
+    }
+
     public ExampleImage(BufferedImage image, String label, int targetWidth, int targetHeight) throws IOException {
         this.label = label;
         width = targetWidth;
@@ -106,7 +174,30 @@ public class ExampleImage implements MLDataItem {
     }    
     
     private void createInputFromPixels(BufferedImage image) {
-        rgbVector = new float[width * height * 3];
+        final byte[] planes = new byte[width * height * 3];
+        readPixels(image, width, height, planes);
+
+        rgbVector = new float[planes.length];
+        for (int i = 0; i < planes.length; i++) {
+            rgbVector[i] = BYTE_TO_FLOAT[planes[i] & 0xFF];
+        }
+
+        rgbTensor = new Tensor(height, width, 3, rgbVector);
+    }
+
+    private void createCompactInputFromPixels(BufferedImage image) {
+        pixels = new byte[width * height * 3];
+        readPixels(image, width, height, pixels);
+    }
+
+    /**
+     * Reads RGB values of image pixels into planar channels: all red values, then all green, then all blue.
+     * Common image types are read directly from underlying data buffer, and other types are first drawn as ARGB image.
+     */
+    private static void readPixels(BufferedImage image, int width, int height, byte[] planes) {
+        if (readPixelsFromDataBuffer(image, width, height, planes)) {
+            return;
+        }
 
         // ako image nije sRGB
         if (image.getType() != BufferedImage.TYPE_INT_ARGB) {
@@ -115,36 +206,190 @@ public class ExampleImage implements MLDataItem {
             image = imageCopy;
         }
         Raster raster = image.getRaster();
-        float[] pixel = null;
+        int[] pixel = null;
 
         for (int y = 0; y < height; y++) {
             for (int x = 0; x < width; x++) {
-                //  int color = image.getRGB(x, y);
+                pixel = raster.getPixel(x, y, pixel);
 
-                pixel = raster.getPixel(x, y, pixel); // get as butes
+                planes[y * width + x] = (byte) pixel[0];
+                planes[width * height + y * width + x] = (byte) pixel[1];
+                planes[2 * width * height + y * width + x] = (byte) pixel[2];
+            }
+        }
+    }
 
-                rgbVector[y * width + x] = pixel[0] / 255.0f;
-                rgbVector[width * height + y * width + x] = pixel[1] / 255.0f;
-                rgbVector[2 * width * height + y * width + x] = pixel[2] / 255.0f;
+    /**
+     * Reads pixels in one sequential pass through data buffer for TYPE_3BYTE_BGR, TYPE_INT_RGB, TYPE_INT_ARGB
+     * and TYPE_BYTE_GRAY images, which are not sub images of other images.
+     *
+     * @return true if pixels are read, false if image has some other layout
+     */
+    private static boolean readPixelsFromDataBuffer(BufferedImage image, int width, int height, byte[] planes) {
+        final Raster raster = image.getRaster();
+        if (raster.getParent() != null || raster.getSampleModelTranslateX() != 0 || raster.getSampleModelTranslateY() != 0
+                || image.getWidth() < width || image.getHeight() < height) {
+            return false;
+        }
+
+        final int planeSize = width * height;
+        final SampleModel sampleModel = raster.getSampleModel();
+        final DataBuffer dataBuffer = raster.getDataBuffer();
 
+        switch (image.getType()) {
+            case BufferedImage.TYPE_INT_RGB:
+            case BufferedImage.TYPE_INT_ARGB: {
+                if (!(sampleModel instanceof SinglePixelPackedSampleModel) || dataBuffer.getNumBanks() != 1) {
+                    return false;
+                }
+                final int[] data = ((DataBufferInt) dataBuffer).getData();
+                final int scanline = ((SinglePixelPackedSampleModel) sampleModel).getScanlineStride();
+                final int offset = dataBuffer.getOffset();
+                for (int y = 0; y < height; y++) {
+                    int src = offset + y * scanline;
+                    int dest = y * width;
+                    for (int x = 0; x < width; x++, src++, dest++) {
+                        final int argb = data[src];
+                        planes[dest] = (byte) (argb >> 16);
+                        planes[planeSize + dest] = (byte) (argb >> 8);
+                        planes[2 * planeSize + dest] = (byte) argb;
+                    }
+                }
+                return true;
             }
+            case BufferedImage.TYPE_3BYTE_BGR: {
+                if (!(sampleModel instanceof ComponentSampleModel) || dataBuffer.getNumBanks() != 1) {
+                    return false;
+                }
+                final ComponentSampleModel componentModel = (ComponentSampleModel) sampleModel;
+                final int[] bandOffsets = componentModel.getBandOffsets();
+                final byte[] data = ((DataBufferByte) dataBuffer).getData();
+                final int scanline = componentModel.getScanlineStride();
+                final int pixelStride = componentModel.getPixelStride();
+                final int offset = dataBuffer.getOffset();
+                for (int y = 0; y < height; y++) {
+                    int src = offset + y * scanline;
+                    int dest = y * width;
+                    for (int x = 0; x < width; x++, src += pixelStride, dest++) {
+                        planes[dest] = data[src + bandOffsets[0]];
+                        planes[planeSize + dest] = data[src + bandOffsets[1]];
+                        planes[2 * planeSize + dest] = data[src + bandOffsets[2]];
+                    }
+                }
+                return true;
+            }
+            case BufferedImage.TYPE_BYTE_GRAY: {
+                if (!(sampleModel instanceof ComponentSampleModel) || dataBuffer.getNumBanks() != 1) {
+                    return false;
+                }
+                final byte[] data = ((DataBufferByte) dataBuffer).getData();
+                final int scanline = ((ComponentSampleModel) sampleModel).getScanlineStride();
+                final int offset = dataBuffer.getOffset();
+                for (int y = 0; y < height; y++) {
+                    final int src = offset + y * scanline;
+                    final int dest = y * width;
+                    System.arraycopy(data, src, planes, dest, width);
+                    System.arraycopy(data, src, planes, planeSize + dest, width);
+                    System.arraycopy(data, src, planes, 2 * planeSize + dest, width);
+                }
+                return true;
+            }
+            default:
+                return false;
         }
-
-        rgbTensor = new Tensor(height, width, 3, rgbVector);
     }
-    
+
     public void invert() {
+        if (pixelBuffer != null) { // buffer can be read only, so copy pixels into own array
+            pixels = new byte[width * height * 3];
+            for (int i = 0; i < pixels.length; i++) {
+                pixels[i] = pixelBuffer.get(pixelBuffer.position() + i);
+            }
+            pixelBuffer = null;
+        }
+
+        if (pixels != null) {
+            for (int i = 0; i < pixels.length; i++) {
+                pixels[i] = (byte) (255 - (pixels[i] & 0xFF));
+            }
+            return;
+        }
+
         for (int i = 0; i < rgbVector.length; i++) {
             rgbVector[i] = 1 - rgbVector[i];
         }
     }
 
+    /**
+     * Returns true if pixels are kept as bytes.
+     *
+     * @return true in compact mode
+     */
+    public boolean isCompact() {
+        return pixels != null || pixelBuffer != null;
+    }
+
+    /**
+     * Converts pixels to floats in range [0, 1] directly into specified array.
+     *
+     * @param dest destination array
+     * @param destOffset position in destination array
+     */
+    @Override
+    public void copyInputTo(float[] dest, int destOffset) {
+        if (pixelBuffer != null) {
+            final int start = pixelBuffer.position();
+            final int count = width * height * 3;
+            for (int i = 0; i < count; i++) {
+                dest[destOffset + i] = BYTE_TO_FLOAT[pixelBuffer.get(start + i) & 0xFF];
+            }
+            return;
+        }
+
+        if (pixels == null) {
+            System.arraycopy(rgbVector, 0, dest, destOffset, rgbVector.length);
+            return;
+        }
+
+        for (int i = 0; i < pixels.length; i++) {
+            dest[destOffset + i] = BYTE_TO_FLOAT[pixels[i] & 0xFF];
+        }
+    }
+
+    /**
+     * Copies RGB values of pixels as bytes into specified array, in the same order as in rgbVector.
+     */
+    void copyPixelsTo(byte[] dest, int destOffset) {
+        final int count = width * height * 3;
+        if (pixelBuffer != null) {
+            for (int i = 0; i < count; i++) {
+                dest[destOffset + i] = pixelBuffer.get(pixelBuffer.position() + i);
+            }
+        } else if (pixels != null) {
+            System.arraycopy(pixels, 0, dest, destOffset, count);
+        } else {
+            for (int i = 0; i < count; i++) {
+                dest[destOffset + i] = (byte) Math.max(0, Math.min(255, Math.round(rgbVector[i] * 255)));
+            }
+        }
+    }
+
     @Override
     public Tensor getTargetOutput() {
         return targetOutput;
     }
 
+    /**
+     * Returns RGB values of image pixels. In compact mode values are converted into a new array.
+     *
+     * @return RGB values of image pixels
+     */
     public float[] getRgbVector() {
+        if (isCompact()) {
+            final float[] values = new float[width * height * 3];
+            copyInputTo(values, 0);
+            return values;
+        }
         return rgbVector;
     }
 
@@ -153,6 +398,22 @@ public class ExampleImage implements MLDataItem {
         this.targetOutput = targetOutput;
     }
 
+    /**
+     * Sets index of the target output with value 1, and target output tensor, which can be
+     * shared by all images with the same label.
+     *
+     * @param targetIdx index of the target output with value 1, or -1 if all outputs are zero
+     * @param targetOutput target output
+     */
+    public final void setTargetOutput(int targetIdx, Tensor targetOutput) {
+        this.targetIdx = targetIdx;
+        this.targetOutput = targetOutput;
+    }
+
+    public int getTargetIdx() {
+        return targetIdx;
+    }
+
     public int getWidth() {
         return width;
     }
@@ -165,8 +426,16 @@ public class ExampleImage implements MLDataItem {
         return label;
     }
 
+    /**
+     * Returns network input for this image. In compact mode a new tensor is created with converted pixel values.
+     *
+     * @return network input
+     */
     @Override
     public Tensor getInput() {
+        if (isCompact()) {
+            return new Tensor(height, width, 3, getRgbVector());
+        }
         return rgbTensor;
     }
 
@@ -174,4 +443,13 @@ public class ExampleImage implements MLDataItem {
         return file;
     }
 
+    /**
+     * Sets file this image was loaded from.
+     *
+     * @param file image file
+     */
+    public void setFile(File file) {
+        this.file = file;
+    }
+
 }
\ No newline at end of file
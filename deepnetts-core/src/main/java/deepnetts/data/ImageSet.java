@@ -60,6 +60,17 @@ public class ImageSet extends TabularDataSet<ExampleImage> {
     private final int imageHeight;
     private boolean scaleImages = true;
     private boolean invertImages = false;
+
+    /**
+     * If true, images keep pixels as bytes and share target outputs for each label.
+     */
+    private boolean compactStorage = false;
+    private Tensor[] targetOutputs;
+
+    /**
+     * File with decoded images, used instead of image files when it matches image index, labels and dimensions.
+     */
+    private File cacheFile;
     private Tensor mean;
     private String delimiter = " ";
 
@@ -135,6 +146,10 @@ public class ImageSet extends TabularDataSet<ExampleImage> {
             throw new DeepNettsException("Error: Labels are not loaded. In order to load images correctly you have to load labels first using ImageSet.loadLabels method.");
         }
 
+        if (cacheFile != null && loadFromCache(imageIdxFile)) {
+            return;
+        }
+
         // use paths of the image index file as root path for image categories
         final String rootPath = imageIdxFile.getPath().substring(0, imageIdxFile.getPath().lastIndexOf(File.separator));
 
@@ -186,6 +201,9 @@ public class ImageSet extends TabularDataSet<ExampleImage> {
 
             LOGGER.info("Loaded " + size() + " images");
 
+            if (cacheFile != null) {
+                writeToCache(imageIdxFile);
+            }
         } catch (FileNotFoundException ex) {
             LOGGER.error(ex);
             throw new DeepNettsException("Could not find image file: " + imgFileName, ex);
@@ -269,19 +287,81 @@ public class ImageSet extends TabularDataSet<ExampleImage> {
         LOGGER.info("Loaded " + size() + " images");
     }
 
+    /**
+     * Loads images from cache file, if it was created for the specified index file and settings of this image set.
+     *
+     * @return true if images are loaded from cache
+     */
+    private boolean loadFromCache(File imageIdxFile) {
+        try {
+            final byte[] key = ImageSetCache.key(imageIdxFile, columnNames, imageWidth, imageHeight, scaleImages, invertImages);
+            final List<ExampleImage> cachedImages = ImageSetCache.read(cacheFile, key, imageWidth, imageHeight, columnNames);
+            if (cachedImages == null || cachedImages.isEmpty()) {
+                return false;
+            }
+            synchronized (LOCK) {
+                items.addAll(cachedImages);
+            }
+            LOGGER.info("Loaded " + cachedImages.size() + " images from cache " + cacheFile);
+            return true;
+        } catch (IOException ex) {
+            LOGGER.warn("Could not load images from cache " + cacheFile, ex);
+            return false;
+        }
+    }
+
+    private void writeToCache(File imageIdxFile) {
+        for (ExampleImage image : items) {
+            if (image.getWidth() != imageWidth || image.getHeight() != imageHeight) {
+                LOGGER.warn("Images are not cached since they do not have the same dimensions " + imageWidth + "x" + imageHeight);
+                return;
+            }
+        }
+
+        try {
+            final byte[] key = ImageSetCache.key(imageIdxFile, columnNames, imageWidth, imageHeight, scaleImages, invertImages);
+            ImageSetCache.write(cacheFile, key, imageWidth, imageHeight, items);
+            LOGGER.info("Saved " + size() + " images to cache " + cacheFile);
+        } catch (IOException ex) {
+            LOGGER.warn("Could not save images to cache " + cacheFile, ex);
+        }
+    }
+
     private void processImages(List<BufferedImage> images, List<String> labels) throws IOException {
             for (int i = 0; i < images.size(); i++) {
                 BufferedImage img = images.get(i);
                 final  String lbl = labels.get(i);
                 if (scaleImages) img = ImageUtils.scaleImage(img, imageWidth, imageHeight);
                 
-                final ExampleImage exImg = new ExampleImage(img, lbl);
-                exImg.setTargetOutput(new Tensor(oneHotEncode(lbl, columnNames)));
+                final ExampleImage exImg = createExampleImage(img, lbl);
                 if (invertImages) exImg.invert();
                 add(exImg);
             }
     }
 
+    private ExampleImage createExampleImage(BufferedImage img, String lbl) {
+        if (!compactStorage) {
+            final ExampleImage exImg = new ExampleImage(img, lbl);
+            exImg.setTargetOutput(new Tensor(oneHotEncode(lbl, columnNames)));
+            return exImg;
+        }
+
+        synchronized (LOCK) {
+            if (targetOutputs == null || targetOutputs.length != columnNames.length + 1) {
+                targetOutputs = new Tensor[columnNames.length + 1]; // last one is for negative label
+                for (int i = 0; i < columnNames.length; i++) {
+                    targetOutputs[i] = new Tensor(oneHotEncode(columnNames[i], columnNames));
+                }
+                targetOutputs[columnNames.length] = new Tensor(columnNames.length);
+            }
+        }
+
+        final ExampleImage exImg = new ExampleImage(img, lbl, true);
+        final int targetIdx = lbl.equalsIgnoreCase(NEGATIVE_LABEL) ? -1 : Arrays.asList(columnNames).indexOf(lbl);
+        exImg.setTargetOutput(targetIdx, targetOutputs[targetIdx >= 0 ? targetIdx : columnNames.length]); // unknown and negative labels have all zeros
+        return exImg;
+    }
+
     public void invert() {
         throw new UnsupportedOperationException("Not supported yet."); //To change body of generated methods, choose Tools | Templates.
     }
@@ -308,8 +388,7 @@ public class ImageSet extends TabularDataSet<ExampleImage> {
                 String lbl = li.next();
                 if (scaleImages) img = ImageUtils.scaleImage(img, imageWidth, imageHeight);
                 
-                final ExampleImage exImg = new ExampleImage(img, lbl);
-                exImg.setTargetOutput(new Tensor(oneHotEncode(lbl, columnNames)));
+                final ExampleImage exImg = createExampleImage(img, lbl);
                 if (invertImages) exImg.invert();
                 add(exImg); // vratiti kao batch rezultata
             }
@@ -330,7 +409,7 @@ public class ImageSet extends TabularDataSet<ExampleImage> {
      * @param labels all available labels
      * @return
      */
-    private float[] oneHotEncode(final String label, final String[] labels) {
+    static float[] oneHotEncode(final String label, final String[] labels) {
         final float[] returnArr = new float[labels.length];
 
         if (label.equalsIgnoreCase(NEGATIVE_LABEL)) {
@@ -381,22 +460,31 @@ public class ImageSet extends TabularDataSet<ExampleImage> {
         int itemIdx = 0;
 
         for (int p = 0; p < partSizes.length; p++) {
-            ImageSet subSet = new ImageSet(imageWidth, imageHeight);
             int itemsCount = (int) (size() * partSizes[p]);
-
-            for (int j = 0; j < itemsCount; j++) {
-                subSet.add(items.get(itemIdx));
-                itemIdx++;
-            }
-
-            subSets[p] = subSet;
-            subSets[p].columnNames = columnNames;
-            // anything else? image dimensions?
+            subSets[p] = newPart(indexedItems().range(itemIdx, itemIdx + itemsCount)); // parts share images with this set
+            itemIdx += itemsCount;
         }
 
         return subSets;
     }
 
+    @Override
+    public ImageSet subset(int... idxs) {
+        return (ImageSet) super.subset(idxs);
+    }
+
+    @Override
+    ImageSet newPart(List<ExampleImage> partItems) {
+        ImageSet part = new ImageSet(imageWidth, imageHeight);
+        part.compactStorage = compactStorage;
+        part.targetOutputs = targetOutputs;
+        part.scaleImages = scaleImages;
+        part.invertImages = invertImages;
+        part.columnNames = columnNames;
+        part.items = partItems;
+        return part;
+    }
+
     /**
      * Loads and returns image labels to train neural network from the specified
      * file. These labels will be used to label network's outputs.
@@ -449,6 +537,9 @@ public class ImageSet extends TabularDataSet<ExampleImage> {
      * @return mean Tensor for the entire dataset
      */
     public Tensor zeroMean() {
+        if (compactStorage || (!items.isEmpty() && items.get(0).isCompact())) {
+            throw new DeepNettsException("Zero mean normalization is not supported for images with compact storage!");
+        }
         mean = new Tensor(imageHeight, imageWidth, 3);
 
         // sum all matrices
@@ -505,6 +596,36 @@ public class ImageSet extends TabularDataSet<ExampleImage> {
         this.invertImages = invertImages;
     }
 
+    public File getCacheFile() {
+        return cacheFile;
+    }
+
+    /**
+     * Sets file used to cache decoded images. When set, loadImages(File) loads images from this file
+     * if it was created for the same image index, labels, image dimensions and flags,
+     * otherwise it loads image files and saves them into this file for later use.
+     * Images loaded from cache keep pixels in memory mapped file, like images with compact storage.
+     *
+     * @param cacheFile cache file, or null to disable caching
+     */
+    public void setCacheFile(File cacheFile) {
+        this.cacheFile = cacheFile;
+    }
+
+    public boolean getCompactStorage() {
+        return compactStorage;
+    }
+
+    /**
+     * Sets flag that indicates whether loaded images should keep pixels as bytes,
+     * which takes 4 times less memory than floats. Should be set before loading images.
+     *
+     * @param compactStorage true to keep pixels as bytes
+     */
+    public void setCompactStorage(boolean compactStorage) {
+        this.compactStorage = compactStorage;
+    }
+
     
     
     /**
@@ -0,0 +1,221 @@
+/**
+ *  DeepNetts is pure Java Deep Learning Library with support for Backpropagation
+ *  based learning and image recognition.
+ *
+ *  Copyright (C) 2017  Zoran Sevarac <sevarac@gmail.com>
+ *
+ * This file is part of DeepNetts.
+ *
+ * DeepNetts is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+package deepnetts.data;
+
+import deepnetts.util.Tensor;
+import java.io.File;
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Cache file with decoded and scaled images of an {@link ImageSet}, used to avoid decoding images on each load.
+ *
+ * Cache is valid only for the same image index file content, labels, image dimensions and preprocessing flags,
+ * which are all hashed into a key stored in file header. Changes of image files which are not
+ * listed differently in the index are not detected.
+ *
+ * <pre>
+ * int    magic, version, image width, image height, data offset
+ * byte[] key (32 bytes)
+ * int    number of item labels, followed by item labels as strings (short length and UTF-8 bytes)
+ * int    number of images, followed by label id of each image
+ * (padding to 8 bytes)
+ * byte   RGB planes of each image (width * height * 3 bytes per image)
+ * </pre>
+ *
+ * All numbers are little endian. Pixels are memory mapped when cache is loaded, and images read their
+ * pixels from mapped buffer when used, so loaded images do not take heap space for pixels.
+ *
+ * @author Zoran Sevarac
+ */
+final class ImageSetCache {
+
+    /**
+     * First four bytes of each cache file: 'DNIC'.
+     */
+    private static final int MAGIC = 0x43494E44;
+
+    private static final int VERSION = 1;
+
+    private static final int KEY_SIZE = 32;
+
+    private ImageSetCache() { }
+
+    /**
+     * Calculates cache key from the content of image index file, labels, image dimensions and flags.
+     */
+    static byte[] key(File imageIdxFile, String[] labels, int imageWidth, int imageHeight, boolean scaleImages, boolean invertImages) throws IOException {
+        try {
+            final MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(Files.readAllBytes(imageIdxFile.toPath()));
+            for (String label : labels) {
+                digest.update(label.getBytes(StandardCharsets.UTF_8));
+                digest.update((byte) '\n');
+            }
+            digest.update(ByteBuffer.allocate(12).putInt(imageWidth).putInt(imageHeight)
+                            .put((byte) (scaleImages ? 1 : 0)).put((byte) (invertImages ? 1 : 0)).array());
+            return digest.digest();
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IOException("SHA-256 is not available", ex);
+        }
+    }
+
+    /**
+     * Loads images from the specified cache file, if it exists and was created with the specified key.
+     *
+     * @return loaded images, or null if cache file does not exist or is not valid for the specified key
+     */
+    static List<ExampleImage> read(File cacheFile, byte[] key, int imageWidth, int imageHeight, String[] columnNames) throws IOException {
+        if (!cacheFile.isFile()) {
+            return null;
+        }
+
+        try (FileChannel channel = FileChannel.open(cacheFile.toPath(), StandardOpenOption.READ)) {
+            final ByteBuffer start = ByteBuffer.allocate(5 * Integer.BYTES + KEY_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            while (start.hasRemaining() && channel.read(start) >= 0) {
+                // read whole start of the header
+            }
+            ((Buffer) start).flip();
+            if (start.remaining() < start.capacity() || start.getInt() != MAGIC || start.getInt() != VERSION
+                    || start.getInt() != imageWidth || start.getInt() != imageHeight) {
+                return null;
+            }
+            final int dataOffset = start.getInt();
+            final byte[] fileKey = new byte[KEY_SIZE];
+            start.get(fileKey);
+            if (!Arrays.equals(key, fileKey)) {
+                return null;
+            }
+
+            final ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, dataOffset).order(ByteOrder.LITTLE_ENDIAN);
+            ((Buffer) header).position(start.capacity());
+
+            // item labels with their target outputs, shared by all images with the same label
+            final List<String> labelsList = Arrays.asList(columnNames);
+            final String[] itemLabels = new String[header.getInt()];
+            final int[] targetIdxs = new int[itemLabels.length];
+            final Tensor[] targets = new Tensor[itemLabels.length];
+            for (int i = 0; i < itemLabels.length; i++) {
+                final byte[] bytes = new byte[header.getShort() & 0xFFFF];
+                header.get(bytes);
+                itemLabels[i] = new String(bytes, StandardCharsets.UTF_8);
+                final float[] target = ImageSet.oneHotEncode(itemLabels[i], columnNames);
+                targetIdxs[i] = labelsList.indexOf(itemLabels[i]);
+                targetIdxs[i] = targetIdxs[i] >= 0 && target[targetIdxs[i]] == 1 ? targetIdxs[i] : -1;
+                targets[i] = new Tensor(target);
+            }
+
+            final int count = header.getInt();
+            final int imageSize = imageWidth * imageHeight * 3;
+            final int imagesPerChunk = Math.max(1, Integer.MAX_VALUE / imageSize); // mapped buffer can not be larger than 2GB
+            final List<ExampleImage> images = new ArrayList<>(count);
+
+            ByteBuffer chunk = null;
+            for (int i = 0; i < count; i++) {
+                if (i % imagesPerChunk == 0) {
+                    final int chunkImages = Math.min(imagesPerChunk, count - i);
+                    chunk = channel.map(FileChannel.MapMode.READ_ONLY, dataOffset + (long) i * imageSize, (long) chunkImages * imageSize);
+                }
+                final int labelId = header.getInt();
+                ((Buffer) chunk).position((i % imagesPerChunk) * imageSize);
+                final ExampleImage image = new ExampleImage(imageWidth, imageHeight, itemLabels[labelId], chunk.slice());
+                image.setTargetOutput(targetIdxs[labelId], targets[labelId]);
+                images.add(image);
+            }
+
+            return images;
+        }
+    }
+
+    /**
+     * Writes specified images into cache file, with the specified key.
+     * All images must have the specified dimensions.
+     */
+    static void write(File cacheFile, byte[] key, int imageWidth, int imageHeight, List<ExampleImage> images) throws IOException {
+        final Map<String, Integer> labelIds = new LinkedHashMap<>();
+        for (ExampleImage image : images) {
+            labelIds.putIfAbsent(image.getLabel(), labelIds.size());
+        }
+
+        int headerSize = 5 * Integer.BYTES + KEY_SIZE + Integer.BYTES;
+        for (String label : labelIds.keySet()) {
+            headerSize += Short.BYTES + label.getBytes(StandardCharsets.UTF_8).length;
+        }
+        headerSize += Integer.BYTES + images.size() * Integer.BYTES;
+        final int dataOffset = (headerSize + 7) & ~7;
+
+        final ByteBuffer header = ByteBuffer.allocate(dataOffset).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(MAGIC);
+        header.putInt(VERSION);
+        header.putInt(imageWidth);
+        header.putInt(imageHeight);
+        header.putInt(dataOffset);
+        header.put(key);
+        header.putInt(labelIds.size());
+        for (String label : labelIds.keySet()) {
+            final byte[] bytes = label.getBytes(StandardCharsets.UTF_8);
+            header.putShort((short) bytes.length);
+            header.put(bytes);
+        }
+        header.putInt(images.size());
+        for (ExampleImage image : images) {
+            header.putInt(labelIds.get(image.getLabel()));
+        }
+        ((Buffer) header).clear(); // write whole header including padding
+
+        final File tmpFile = new File(cacheFile.getPath() + ".tmp");
+        try (FileChannel channel = FileChannel.open(tmpFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            writeFully(channel, header);
+
+            final byte[] pixels = new byte[imageWidth * imageHeight * 3];
+            final ByteBuffer pixelBuffer = ByteBuffer.wrap(pixels);
+            for (ExampleImage image : images) {
+                image.copyPixelsTo(pixels, 0);
+                ((Buffer) pixelBuffer).clear();
+                writeFully(channel, pixelBuffer);
+            }
+        }
+
+        // replace previous cache only when new one is complete
+        Files.move(tmpFile.toPath(), cacheFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buf) throws IOException {
+        while (buf.hasRemaining()) {
+            channel.write(buf);
+        }
+    }
+
+}
@@ -0,0 +1,186 @@
+/**
+ *  DeepNetts is pure Java Deep Learning Library with support for Backpropagation
+ *  based learning and image recognition.
+ *
+ *  Copyright (C) 2017  Zoran Sevarac <sevarac@gmail.com>
+ *
+ * This file is part of DeepNetts.
+ *
+ * DeepNetts is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+package deepnetts.data;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.RandomAccess;
+
+/**
+ * List of data set items, which are kept in a store list and accessed through an array of store positions.
+ * Shuffling only permutes positions, and data set parts (split, folds) are lists with different positions
+ * in the same store, so items are never copied between lists and all parts share the same items (pixels or features).
+ *
+ * Items added to this list are added to the end of the store, and are not visible in other lists which share the store.
+ * Setting an item replaces it in the store, so it is visible in all lists which contain its position.
+ *
+ * @author Zoran Sevarac
+ * @param <E> type of items in the list
+ */
+final class IndexedList<E> extends AbstractList<E> implements RandomAccess {
+
+    /**
+     * All items, shared by lists with different positions.
+     */
+    private final List<E> store;
+
+    /**
+     * Store positions of the items in this list.
+     */
+    private int[] positions;
+
+    private int size;
+
+    /**
+     * Creates list with all items currently in the specified store, in store order.
+     */
+    IndexedList(List<E> store) {
+        this.store = store;
+        this.positions = new int[Math.max(16, store.size())];
+        appendStorePositions(0, store.size());
+    }
+
+    /**
+     * Creates list with items at specified store positions (positions array is not copied).
+     */
+    private IndexedList(List<E> store, int[] positions) {
+        this.store = store;
+        this.positions = positions;
+        this.size = positions.length;
+    }
+
+    @Override
+    public E get(int idx) {
+        checkIdx(idx);
+        return store.get(positions[idx]);
+    }
+
+    @Override
+    public E set(int idx, E item) {
+        checkIdx(idx);
+        return store.set(positions[idx], item);
+    }
+
+    @Override
+    public void add(int idx, E item) {
+        if (idx < 0 || idx > size) {
+            throw new IndexOutOfBoundsException("Index " + idx + " out of range [0, " + size + "]");
+        }
+        store.add(item);
+        ensureCapacity(size + 1);
+        System.arraycopy(positions, idx, positions, idx + 1, size - idx);
+        positions[idx] = store.size() - 1;
+        size++;
+        modCount++;
+    }
+
+    /**
+     * Removes item from this list, but not from the store.
+     */
+    @Override
+    public E remove(int idx) {
+        final E item = get(idx);
+        System.arraycopy(positions, idx + 1, positions, idx, size - idx - 1);
+        size--;
+        modCount++;
+        return item;
+    }
+
+    /**
+     * Removes all items from this list, but not from the store.
+     */
+    @Override
+    public void clear() {
+        size = 0;
+        modCount++;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Appends store positions in range [from, from + count) to this list,
+     * for items which are added directly to the store.
+     */
+    void appendStorePositions(int from, int count) {
+        ensureCapacity(size + count);
+        for (int i = 0; i < count; i++) {
+            positions[size++] = from + i;
+        }
+        modCount++;
+    }
+
+    /**
+     * Shuffles the order of items in this list, without changing the store.
+     * Uses the same algorithm as Collections.shuffle, so the same random generator gives the same order.
+     *
+     * @param rnd random generator
+     */
+    void shuffle(Random rnd) {
+        for (int i = size; i > 1; i--) {
+            final int j = rnd.nextInt(i);
+            final int tmp = positions[i - 1];
+            positions[i - 1] = positions[j];
+            positions[j] = tmp;
+        }
+        modCount++;
+    }
+
+    /**
+     * Returns a list with items in range [from, to) of this list, which shares the store with this list.
+     * Unlike subList, returned list is independent from this list: shuffling one does not change the other.
+     */
+    IndexedList<E> range(int from, int to) {
+        if (from < 0 || to > size || from > to) {
+            throw new IndexOutOfBoundsException("Range [" + from + ", " + to + ") out of range [0, " + size + ")");
+        }
+        return new IndexedList<>(store, Arrays.copyOfRange(positions, from, to));
+    }
+
+    /**
+     * Returns a list with items at specified positions in this list, which shares the store with this list.
+     */
+    IndexedList<E> select(int[] idxs) {
+        final int[] selected = new int[idxs.length];
+        for (int i = 0; i < idxs.length; i++) {
+            checkIdx(idxs[i]);
+            selected[i] = positions[idxs[i]];
+        }
+        return new IndexedList<>(store, selected);
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > positions.length) {
+            positions = Arrays.copyOf(positions, Math.max(capacity, positions.length + (positions.length >> 1)));
+        }
+    }
+
+    private void checkIdx(int idx) {
+        if (idx < 0 || idx >= size) {
+            throw new IndexOutOfBoundsException("Index " + idx + " out of range [0, " + size + ")");
+        }
+    }
+
+}
@@ -35,4 +35,15 @@ public interface MLDataItem {
         public Tensor getInput();
         
         public Tensor getTargetOutput();
+
+        /**
+         * Copies input values into the specified array, starting from specified position.
+         * Items which keep input in compact form override this to convert input directly into destination array.
+         *
+         * @param dest destination array (usually input buffer of a network)
+         * @param destOffset position in destination array
+         */
+        public default void copyInputTo(float[] dest, int destOffset) {
+            getInput().copyTo(dest, destOffset);
+        }
 }
@@ -0,0 +1,282 @@
+/**
+ *  DeepNetts is pure Java Deep Learning Library with support for Backpropagation
+ *  based learning and image recognition.
+ *
+ *  Copyright (C) 2017  Zoran Sevarac <sevarac@gmail.com>
+ *
+ * This file is part of DeepNetts.
+ *
+ * DeepNetts is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+package deepnetts.data;
+
+import deepnetts.util.DeepNettsException;
+import deepnetts.util.Tensor;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.RandomAccess;
+
+/**
+ * Tabular data set which keeps all values in two contiguous row-major arrays,
+ * one for inputs and one for target outputs, instead of a separate object for each row.
+ * Rows are accessed as flyweight items, whose input and target output tensors are views of these arrays,
+ * so changes made through items are stored directly in the arrays.
+ * Arrays keep rows in the order they were added, shuffling changes only the order in which items are returned.
+ *
+ * Normalizers recognize this data set and normalize columns directly in arrays.
+ * Note that items obtained before the arrays grow (when rows are added over capacity) are no longer views of this data set.
+ *
+ * @author Zoran Sevarac
+ */
+public class PackedTabularDataSet extends TabularDataSet<MLDataItem> {
+
+    private static final int DEFAULT_CAPACITY = 16;
+
+    /**
+     * Input values of all rows, row after row.
+     */
+    private float[] inputValues;
+
+    /**
+     * Target output values of all rows, row after row.
+     */
+    private float[] targetValues;
+
+    /**
+     * Number of rows in this data set.
+     */
+    private int rowCount;
+
+    /**
+     * Creates a new empty data set with specified number of inputs and outputs.
+     *
+     * @param numInputs number of input features
+     * @param numOutputs number of output features
+     */
+    public PackedTabularDataSet(int numInputs, int numOutputs) {
+        this(numInputs, numOutputs, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Creates a new empty data set with specified number of inputs and outputs, and space for specified number of rows.
+     *
+     * @param numInputs number of input features
+     * @param numOutputs number of output features
+     * @param capacity initial number of rows that can be added without growing arrays
+     */
+    public PackedTabularDataSet(int numInputs, int numOutputs, int capacity) {
+        super(numInputs, numOutputs);
+        if (capacity < 0) {
+            throw new IllegalArgumentException("Capacity cannot be negative: " + capacity);
+        }
+        inputValues = new float[checkedLength(capacity, numInputs)];
+        targetValues = new float[checkedLength(capacity, numOutputs)];
+        items = new IndexedList<>(new Rows());
+    }
+
+    /**
+     * Creates a new data set which uses specified row-major arrays with inputs and target outputs (arrays are not copied).
+     *
+     * @param numInputs number of input features
+     * @param numOutputs number of output features
+     * @param inputValues input values of all rows, row after row
+     * @param targetValues target output values of all rows, row after row
+     */
+    public PackedTabularDataSet(int numInputs, int numOutputs, float[] inputValues, float[] targetValues) {
+        super(numInputs, numOutputs);
+        if (numInputs <= 0 || inputValues.length % numInputs != 0) {
+            throw new IllegalArgumentException("Number of input values " + inputValues.length + " is not multiple of number of inputs " + numInputs);
+        }
+        final int rows = inputValues.length / numInputs;
+        if (targetValues.length != rows * numOutputs) {
+            throw new IllegalArgumentException("Number of target values " + targetValues.length + " does not match number of rows " + rows);
+        }
+        this.inputValues = inputValues;
+        this.targetValues = targetValues;
+        this.rowCount = rows;
+        items = new IndexedList<>(new Rows());
+    }
+
+    /**
+     * Creates a new data set with a copy of all values in the specified data set.
+     *
+     * @param dataSet data set to copy
+     */
+    public PackedTabularDataSet(TabularDataSet<? extends MLDataItem> dataSet) {
+        this(dataSet.getNumInputs(), dataSet.getNumOutputs(), dataSet.size());
+        setColumnNames(dataSet.getColumnNames());
+        for (MLDataItem item : dataSet) {
+            addRow(item.getInput(), item.getTargetOutput());
+        }
+    }
+
+    /**
+     * Adds a row with a copy of specified input and target values.
+     *
+     * @param input input values
+     * @param targetOutput target output values
+     */
+    public void addRow(float[] input, float[] targetOutput) {
+        addRows(input, targetOutput, 1);
+    }
+
+    /**
+     * Adds specified number of rows with a copy of the specified row-major input and target values.
+     *
+     * @param inputs input values of rows to add, row after row
+     * @param targetOutputs target output values of rows to add, row after row
+     * @param count number of rows to add
+     */
+    public void addRows(float[] inputs, float[] targetOutputs, int count) {
+        final int numInputs = getNumInputs(), numOutputs = getNumOutputs();
+        if (inputs.length < count * numInputs || targetOutputs.length < count * numOutputs) {
+            throw new IllegalArgumentException("Not enough values for " + count + " rows");
+        }
+        ensureCapacity(rowCount + count);
+        System.arraycopy(inputs, 0, inputValues, rowCount * numInputs, count * numInputs);
+        System.arraycopy(targetOutputs, 0, targetValues, rowCount * numOutputs, count * numOutputs);
+        indexedItems().appendStorePositions(rowCount, count);
+        rowCount += count;
+    }
+
+    private void addRow(Tensor input, Tensor targetOutput) {
+        appendRow(input, targetOutput);
+        indexedItems().appendStorePositions(rowCount - 1, 1);
+    }
+
+    /**
+     * Appends row to arrays, without adding it to items list.
+     */
+    private void appendRow(Tensor input, Tensor targetOutput) {
+        final int numInputs = getNumInputs(), numOutputs = getNumOutputs();
+        if (input.size() != numInputs || targetOutput.size() != numOutputs) {
+            throw new DeepNettsException("Wrong number of values in the row " + (rowCount + 1) + ": found " + input.size() + " inputs and " + targetOutput.size() + " outputs, expected " + numInputs + " and " + numOutputs);
+        }
+        ensureCapacity(rowCount + 1);
+        input.copyTo(inputValues, rowCount * numInputs);
+        targetOutput.copyTo(targetValues, rowCount * numOutputs);
+        rowCount++;
+    }
+
+    /**
+     * Returns array with input values of all rows, row after row.
+     * Only the first getRowCount() * getNumInputs() values belong to data set rows.
+     *
+     * @return array with input values
+     */
+    public float[] getInputValues() {
+        return inputValues;
+    }
+
+    /**
+     * Returns array with target output values of all rows, row after row.
+     * Only the first getRowCount() * getNumOutputs() values belong to data set rows.
+     *
+     * @return array with target output values
+     */
+    public float[] getTargetValues() {
+        return targetValues;
+    }
+
+    /**
+     * Returns number of rows in arrays, which is equal to size() unless items were removed from the items list
+     * (items removed from the list stay in arrays).
+     *
+     * @return number of rows in arrays
+     */
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    /**
+     * Removes all rows from this data set.
+     */
+    @Override
+    public void clear() {
+        items.clear();
+        rowCount = 0;
+    }
+
+    /**
+     * Shrinks arrays to the number of rows in this data set.
+     */
+    public void trimToSize() {
+        inputValues = Arrays.copyOf(inputValues, rowCount * getNumInputs());
+        targetValues = Arrays.copyOf(targetValues, rowCount * getNumOutputs());
+    }
+
+    private void ensureCapacity(int rows) {
+        final int numInputs = getNumInputs(), numOutputs = getNumOutputs();
+        final int capacity = numInputs > 0 ? inputValues.length / numInputs : targetValues.length / Math.max(1, numOutputs);
+        if (rows > capacity) {
+            final int newCapacity = (int) Math.min(Integer.MAX_VALUE, Math.max(rows, capacity + (long) (capacity >> 1)));
+            inputValues = Arrays.copyOf(inputValues, checkedLength(newCapacity, numInputs));
+            targetValues = Arrays.copyOf(targetValues, checkedLength(newCapacity, numOutputs));
+        }
+    }
+
+    private static int checkedLength(long rows, int cols) {
+        final long length = rows * cols;
+        if (length > Integer.MAX_VALUE - 8) {
+            throw new DeepNettsException("Too many values for packed data set: " + length);
+        }
+        return (int) length;
+    }
+
+    /**
+     * List of flyweight items, which are views of data set rows.
+     */
+    private final class Rows extends AbstractList<MLDataItem> implements RandomAccess {
+
+        @Override
+        public Item get(int idx) {
+            checkIdx(idx);
+            final int numInputs = getNumInputs(), numOutputs = getNumOutputs();
+            return new Item(Tensor.view(inputValues, idx * numInputs, numInputs), Tensor.view(targetValues, idx * numOutputs, numOutputs));
+        }
+
+        /**
+         * Copies values of the specified item into the row at specified position,
+         * and returns an item with a copy of the previous values in that row.
+         */
+        @Override
+        public MLDataItem set(int idx, MLDataItem item) {
+            final MLDataItem previous = get(idx);
+            final Item copy = new Item(previous.getInput().copy(), previous.getTargetOutput().copy());
+            item.getInput().copyTo(inputValues, idx * getNumInputs());
+            item.getTargetOutput().copyTo(targetValues, idx * getNumOutputs());
+            return copy;
+        }
+
+        @Override
+        public void add(int idx, MLDataItem item) {
+            if (idx != rowCount) {
+                throw new UnsupportedOperationException("Rows can only be added at the end of packed data set arrays");
+            }
+            appendRow(item.getInput(), item.getTargetOutput());
+            modCount++;
+        }
+
+        @Override
+        public int size() {
+            return rowCount;
+        }
+
+        private void checkIdx(int idx) {
+            if (idx < 0 || idx >= rowCount) {
+                throw new IndexOutOfBoundsException("Row " + idx + " out of range [0, " + rowCount + ")");
+            }
+        }
+    }
+
+}
@@ -0,0 +1,359 @@
+/**
+ *  DeepNetts is pure Java Deep Learning Library with support for Backpropagation
+ *  based learning and image recognition.
+ *
+ *  Copyright (C) 2017  Zoran Sevarac <sevarac@gmail.com>
+ *
+ * This file is part of DeepNetts.
+ *
+ * DeepNetts is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <https://www.gnu.org/licenses/>.package
+ * deepnetts.core;
+ */
+
+package deepnetts.data;
+
+import deepnetts.util.DeepNettsException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * CSV reader which memory maps the file, splits it into chunks at line ends,
+ * and parses chunks on a thread pool, directly from bytes.
+ * Rows are added to data set in the same order as in file, and the same validation
+ * and error messages are used as in sequential reading with {@link DataSets#readCsv(java.io.File, int, int, boolean, java.lang.String)}.
+ *
+ * Supports single character delimiters which are not regular expression special characters.
+ * Rows can also be parsed into a {@link PackedTabularDataSet}, without creating an object for each row.
+ *
+ * @author Zoran Sevarac
+ */
+final class ParallelCsvReader {
+
+    /**
+     * Approximate size of a chunk parsed by one task.
+     */
+    static final int CHUNK_SIZE = 8 * 1024 * 1024;
+
+    /**
+     * Powers of ten which are exactly representable as floats.
+     */
+    private static final float[] EXACT_POWERS_OF_TEN = {1e0f, 1e1f, 1e2f, 1e3f, 1e4f, 1e5f, 1e6f, 1e7f, 1e8f, 1e9f, 1e10f};
+
+    /**
+     * Max mantissa which is exactly representable as float (2^24).
+     */
+    private static final long MAX_EXACT_MANTISSA = 1L << 24;
+
+    private final int numInputs, numOutputs;
+    private final byte delimiter;
+
+    /**
+     * Parse rows into row-major arrays for packed data set, instead of an item for each row.
+     */
+    private final boolean packed;
+
+    private ParallelCsvReader(int numInputs, int numOutputs, byte delimiter, boolean packed) {
+        this.numInputs = numInputs;
+        this.numOutputs = numOutputs;
+        this.delimiter = delimiter;
+        this.packed = packed;
+    }
+
+    /**
+     * Returns true if specified delimiter can be used by this reader.
+     */
+    static boolean supportsDelimiter(String delimiter) {
+        return delimiter.length() == 1 && delimiter.charAt(0) < 128 && ".$|()[]{}^?*+\\".indexOf(delimiter.charAt(0)) < 0
+                && delimiter.charAt(0) != '\n' && delimiter.charAt(0) != '\r';
+    }
+
+    /**
+     * Reads data set from specified file, which is a packed data set if packed is true.
+     */
+    static TabularDataSet read(File csvFile, int numInputs, int numOutputs, boolean hasColumnNames, String delimiter, int threadCount, boolean packed) throws IOException {
+        final ParallelCsvReader reader = new ParallelCsvReader(numInputs, numOutputs, (byte) delimiter.charAt(0), packed);
+        final TabularDataSet dataSet = packed ? new PackedTabularDataSet(numInputs, numOutputs, 0) : new TabularDataSet(numInputs, numOutputs);
+
+        try (FileChannel channel = FileChannel.open(csvFile.toPath(), StandardOpenOption.READ)) {
+            final long fileSize = channel.size();
+            long dataStart = 0;
+
+            if (hasColumnNames) {    // get col names from the first line
+                final long headerEnd = lineEnd(channel, 0, fileSize);
+                final ByteBuffer header = ByteBuffer.allocate((int) (headerEnd - 0));
+                channel.read(header, 0);
+                final String line = new String(header.array(), Charset.defaultCharset()).trim();
+                dataSet.setColumnNames(line.split(delimiter));
+                dataStart = Math.min(fileSize, headerEnd + 1);
+            } else {
+                String[] colNames = new String[numInputs + numOutputs];
+                for (int i = 0; i < numInputs; i++)
+                    colNames[i] = "in" + (i + 1);
+
+                for (int j = 0; j < numOutputs; j++)
+                    colNames[numInputs + j] = "out" + (j + 1);
+
+                dataSet.setColumnNames(colNames);
+            }
+
+            // split file into chunks which end at line ends
+            final List<long[]> chunks = new ArrayList<>();
+            long start = dataStart;
+            while (start < fileSize) {
+                final long end = Math.min(fileSize, lineEnd(channel, Math.min(fileSize, start + CHUNK_SIZE), fileSize) + 1);
+                chunks.add(new long[] {start, end});
+                start = end;
+            }
+
+            final List<Chunk> parsed = new ArrayList<>(chunks.size());
+            if (chunks.size() <= 1 || threadCount <= 1) {
+                for (long[] chunk : chunks) {
+                    parsed.add(reader.parse(channel.map(FileChannel.MapMode.READ_ONLY, chunk[0], chunk[1] - chunk[0])));
+                }
+            } else {
+                final ExecutorService executor = Executors.newFixedThreadPool(Math.min(threadCount, chunks.size()), runnable -> {
+                    final Thread thread = new Thread(runnable, "deepnetts-csv-reader");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+                try {
+                    final List<Future<Chunk>> results = new ArrayList<>(chunks.size());
+                    for (long[] chunk : chunks) {
+                        final MappedByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY, chunk[0], chunk[1] - chunk[0]);
+                        results.add(executor.submit(() -> reader.parse(buf)));
+                    }
+                    for (Future<Chunk> result : results) {
+                        parsed.add(result.get());
+                    }
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    throw new DeepNettsException("Interrupted while reading csv file: " + csvFile, ex);
+                } catch (ExecutionException ex) {
+                    if (ex.getCause() instanceof RuntimeException) throw (RuntimeException) ex.getCause();
+                    throw new DeepNettsException("Error reading csv file: " + csvFile, ex.getCause());
+                } finally {
+                    executor.shutdownNow();
+                }
+            }
+
+            // add rows in file order, and report the first error with its row number in the whole file
+            for (Chunk chunk : parsed) {
+                if (chunk.error != null) {
+                    chunk.error.throwFor(dataSet.size() + chunk.rows + 1);
+                }
+                if (packed) {
+                    ((PackedTabularDataSet) dataSet).addRows(chunk.inputs, chunk.targets, chunk.rows);
+                } else {
+                    chunk.items.forEach(dataSet::add);
+                }
+            }
+        }
+
+        return dataSet;
+    }
+
+    /**
+     * Returns position of the first new line character at or after specified position, or file size if there is none.
+     */
+    private static long lineEnd(FileChannel channel, long pos, long fileSize) throws IOException {
+        final ByteBuffer buf = ByteBuffer.allocate(4096);
+        while (pos < fileSize) {
+            ((Buffer) buf).clear();
+            final int n = channel.read(buf, pos);
+            if (n <= 0) break;
+            for (int i = 0; i < n; i++) {
+                if (buf.get(i) == '\n') {
+                    return pos + i;
+                }
+            }
+            pos += n;
+        }
+        return fileSize;
+    }
+
+    /**
+     * Rows parsed from one chunk, and the first error in the chunk, after those rows.
+     */
+    private static final class Chunk {
+        final List<TabularDataSet.Item> items = new ArrayList<>();
+        float[] inputs = new float[0], targets = new float[0];
+        int rows;
+        RowError error;
+
+        void addRow(float[] in, float[] out) {
+            if ((rows + 1) * in.length > inputs.length || (rows + 1) * out.length > targets.length) {
+                final int capacity = Math.max(16, rows * 2);
+                inputs = Arrays.copyOf(inputs, capacity * in.length);
+                targets = Arrays.copyOf(targets, capacity * out.length);
+            }
+            System.arraycopy(in, 0, inputs, rows * in.length, in.length);
+            System.arraycopy(out, 0, targets, rows * out.length, out.length);
+            rows++;
+        }
+    }
+
+    private static final class RowError {
+        final String valuesCountMsg;
+        final NumberFormatException numberFormatEx;
+
+        RowError(String valuesCountMsg, NumberFormatException numberFormatEx) {
+            this.valuesCountMsg = valuesCountMsg;
+            this.numberFormatEx = numberFormatEx;
+        }
+
+        void throwFor(int row) {
+            if (numberFormatEx != null) {
+                throw new DeepNettsException("Error parsing csv, number expected line in " + row + ": " + numberFormatEx.getMessage(), numberFormatEx);
+            }
+            throw new DeepNettsException("Wrong number of values in the row " + row + ": " + valuesCountMsg);
+        }
+    }
+
+    /**
+     * Parses all lines in specified buffer, until the end or the first error.
+     */
+    private Chunk parse(ByteBuffer buf) {
+        final Chunk chunk = new Chunk();
+        final int limit = buf.limit();
+        final int numValues = numInputs + numOutputs;
+        final int[] fieldStart = new int[numValues + 1];
+        final int[] fieldEnd = new int[numValues + 1];
+        float[] in = new float[numInputs];
+        float[] out = new float[numOutputs];
+
+        int pos = 0;
+        while (pos < limit) {
+            // find line end and trim line as String.trim does
+            int lineEnd = pos;
+            while (lineEnd < limit && buf.get(lineEnd) != '\n' && buf.get(lineEnd) != '\r') lineEnd++;
+            final int next = lineEnd + 1;
+            int lineStart = pos;
+            while (lineStart < lineEnd && (buf.get(lineStart) & 0xFF) <= ' ') lineStart++;
+            while (lineEnd > lineStart && (buf.get(lineEnd - 1) & 0xFF) <= ' ') lineEnd--;
+            pos = next;
+
+            if (lineStart == lineEnd) {
+                continue; // skip empty lines
+            }
+
+            // split into fields, dropping trailing empty fields as String.split does
+            int count = 0;
+            int found = 0;
+            int fStart = lineStart;
+            for (int i = lineStart; i <= lineEnd; i++) {
+                if (i == lineEnd || buf.get(i) == delimiter) {
+                    if (count < fieldStart.length) {
+                        fieldStart[count] = fStart;
+                        fieldEnd[count] = i;
+                    }
+                    count++;
+                    if (i > fStart) found = count;
+                    fStart = i + 1;
+                }
+            }
+            count = found;
+
+            if (count != numValues) {
+                chunk.error = new RowError("found " + count + " expected " + numValues, null);
+                return chunk;
+            }
+
+            if (!packed) {
+                in = new float[numInputs];
+                out = new float[numOutputs];
+            }
+            try {
+                for (int i = 0; i < numInputs; i++) {
+                    in[i] = parseFloat(buf, fieldStart[i], fieldEnd[i]);
+                }
+                for (int j = 0; j < numOutputs; j++) {
+                    out[j] = parseFloat(buf, fieldStart[numInputs + j], fieldEnd[numInputs + j]);
+                }
+            } catch (NumberFormatException nex) {
+                chunk.error = new RowError(null, nex);
+                return chunk;
+            }
+
+            if (packed) {
+                chunk.addRow(in, out);
+            } else {
+                chunk.items.add(new TabularDataSet.Item(in, out));
+                chunk.rows++;
+            }
+        }
+
+        return chunk;
+    }
+
+    /**
+     * Parses float from bytes in range [start, end). Plain decimal numbers whose value is exactly
+     * representable as a quotient or product of exact floats are parsed directly, which gives the same
+     * correctly rounded result as Float.parseFloat. All other numbers are parsed with Float.parseFloat.
+     */
+    static float parseFloat(ByteBuffer buf, int start, int end) {
+        int i = start;
+        while (i < end && (buf.get(i) & 0xFF) <= ' ') i++;
+        int e = end;
+        while (e > i && (buf.get(e - 1) & 0xFF) <= ' ') e--;
+
+        boolean negative = false;
+        if (i < e && (buf.get(i) == '-' || buf.get(i) == '+')) {
+            negative = buf.get(i) == '-';
+            i++;
+        }
+
+        long mantissa = 0;
+        int digits = 0;
+        int fractionDigits = 0;
+        boolean dot = false;
+        int p = i;
+        for (; p < e; p++) {
+            final byte b = buf.get(p);
+            if (b >= '0' && b <= '9') {
+                mantissa = mantissa * 10 + (b - '0');
+                digits++;
+                if (dot) fractionDigits++;
+                if (mantissa > MAX_EXACT_MANTISSA) break;
+            } else if (b == '.' && !dot) {
+                dot = true;
+            } else {
+                break;
+            }
+        }
+
+        if (p == e && digits > 0 && mantissa <= MAX_EXACT_MANTISSA && fractionDigits < EXACT_POWERS_OF_TEN.length) {
+            final float value = fractionDigits == 0 ? (float) mantissa : (float) mantissa / EXACT_POWERS_OF_TEN[fractionDigits];
+            return negative ? -value : value;
+        }
+
+        final byte[] bytes = new byte[end - start];
+        for (int k = 0; k < bytes.length; k++) {
+            bytes[k] = buf.get(start + k);
+        }
+        return Float.parseFloat(new String(bytes, Charset.defaultCharset()));
+    }
+
+}
@@ -0,0 +1,515 @@
+/**
+ *  DeepNetts is pure Java Deep Learning Library with support for Backpropagation
+ *  based learning and image recognition.
+ *
+ *  Copyright (C) 2017  Zoran Sevarac <sevarac@gmail.com>
+ *
+ * This file is part of DeepNetts.
+ *
+ * DeepNetts is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+package deepnetts.data;
+
+import deepnetts.core.DeepNetts;
+import deepnetts.util.DeepNettsException;
+import deepnetts.util.ImageUtils;
+import deepnetts.util.RandomGenerator;
+import deepnetts.util.Tensor;
+import java.awt.image.BufferedImage;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.AbstractList;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import javax.imageio.ImageIO;
+import javax.visrec.ml.data.DataSet;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Image data set which keeps only image index in memory, and loads images while they are used.
+ * While iterating, images are read, scaled and converted on background threads into a bounded
+ * prefetch window, so only a limited number of decoded images is in memory at the same time,
+ * and data sets larger than available heap can be used for training.
+ *
+ * Images are returned in index order (or shuffled order after shuffle), same as with {@link ImageSet}.
+ * Each iteration loads images again, so this data set trades loading time for memory.
+ *
+ * <pre>
+ * StreamingImageSet imageSet = new StreamingImageSet(imageWidth, imageHeight);
+ * imageSet.loadLabels(new File("labels.txt"));
+ * imageSet.loadIndex(new File("train.txt"));
+ * neuralNet.train(imageSet);
+ * </pre>
+ *
+ * @see ImageSet
+ * @author Zoran Sevarac
+ */
+public class StreamingImageSet implements DataSet<ExampleImage>, AutoCloseable {
+
+    /**
+     * Default max number of images which are loaded in advance.
+     */
+    public static final int DEFAULT_PREFETCH_SIZE = 256;
+
+    private final int imageWidth;
+    private final int imageHeight;
+    private boolean scaleImages = true;
+    private boolean invertImages = false;
+    private String delimiter = " ";
+
+    /**
+     * Image labels, which correspond to network outputs.
+     */
+    private String[] columnNames;
+
+    /**
+     * Target outputs for each label, shared by all images with the same label.
+     */
+    private Tensor[] targetOutputs;
+
+    /**
+     * Image files and labels from the index, in the order of iteration.
+     */
+    private List<IndexEntry> index = new ArrayList<>();
+
+    private int threadCount = Runtime.getRuntime().availableProcessors();
+    private int prefetchSize = DEFAULT_PREFETCH_SIZE;
+
+    /**
+     * Thread pool used to load images, created when needed. Idle threads are stopped
+     * after a while, so image sets which are no longer used (like split parts) do not keep them.
+     */
+    private ExecutorService executor;
+
+    private static final long LOADER_KEEP_ALIVE_SECONDS = 30;
+
+    private static final Logger LOGGER = LogManager.getLogger(DeepNetts.class.getName());
+
+    public StreamingImageSet(int imageWidth, int imageHeight) {
+        this.imageWidth = imageWidth;
+        this.imageHeight = imageHeight;
+    }
+
+    /**
+     * Creates a part of the specified image set, which uses specified index entries.
+     */
+    private StreamingImageSet(StreamingImageSet imageSet, List<IndexEntry> index) {
+        this(imageSet.imageWidth, imageSet.imageHeight);
+        this.scaleImages = imageSet.scaleImages;
+        this.invertImages = imageSet.invertImages;
+        this.delimiter = imageSet.delimiter;
+        this.columnNames = imageSet.columnNames;
+        this.targetOutputs = imageSet.targetOutputs;
+        this.threadCount = imageSet.threadCount;
+        this.prefetchSize = imageSet.prefetchSize;
+        this.index = index;
+    }
+
+    /**
+     * Image file with its label.
+     */
+    private static final class IndexEntry {
+        final File file;
+        final String label;
+        final int labelIdx;
+
+        IndexEntry(File file, String label, int labelIdx) {
+            this.file = file;
+            this.label = label;
+            this.labelIdx = labelIdx;
+        }
+    }
+
+    /**
+     * Loads image labels from the specified file. These labels will be used to label network's outputs.
+     *
+     * @param file file with one label in each line
+     * @return loaded labels
+     * @throws DeepNettsException if file can not be read or has wrong format
+     */
+    public String[] loadLabels(File file) throws DeepNettsException {
+        final ImageSet labelsSet = new ImageSet(imageWidth, imageHeight);
+        columnNames = labelsSet.loadLabels(file);
+
+        targetOutputs = new Tensor[columnNames.length];
+        for (int i = 0; i < columnNames.length; i++) {
+            targetOutputs[i] = new Tensor(ImageSet.oneHotEncode(columnNames[i], columnNames));
+        }
+
+        return columnNames;
+    }
+
+    /**
+     * Loads image index from the specified file, without loading images.
+     * Each line of the index contains image path relative to index file and label,
+     * or only image path, if image is in a directory named by its label.
+     *
+     * @param imageIdxFile plain text file that contains delimited image paths and labels
+     * @throws DeepNettsException if labels are not loaded, or index can not be read
+     */
+    public void loadIndex(File imageIdxFile) throws DeepNettsException {
+        Objects.requireNonNull(imageIdxFile, "Index file cannot be null!");
+        if (columnNames == null) {
+            throw new DeepNettsException("Error: Labels are not loaded. In order to load images correctly you have to load labels first using StreamingImageSet.loadLabels method.");
+        }
+
+        final String rootPath = imageIdxFile.getPath().substring(0, imageIdxFile.getPath().lastIndexOf(File.separator));
+        final List<String> labels = Arrays.asList(columnNames);
+
+        try (BufferedReader br = new BufferedReader(new FileReader(imageIdxFile))) {
+            String line;
+            int lineCount = 0;
+            while ((line = br.readLine()) != null) {
+                lineCount++;
+                if (line.isEmpty()) { // skip empty lines
+                    continue;
+                }
+                final String[] parts = line.split(delimiter);
+                if (parts.length > 2) {
+                    throw new DeepNettsException("Bad file format: image paths and labels should not contain spaces! At line " + lineCount);
+                }
+
+                final String imgFileName = parts[0];
+                final String label;
+                if (parts.length == 2) { // use specified label if it is available
+                    label = parts[1];
+                } else {  // otherwise use name of parent folder as label
+                    label = imgFileName.substring(0, imgFileName.lastIndexOf(File.separator));
+                }
+
+                index.add(new IndexEntry(new File(rootPath + File.separator + imgFileName), label, labels.indexOf(label)));
+            }
+        } catch (FileNotFoundException ex) {
+            LOGGER.error(ex);
+            throw new DeepNettsException("Could not find image index file: " + imageIdxFile, ex);
+        } catch (IOException ex) {
+            LOGGER.error(ex);
+            throw new DeepNettsException("Error reading image index file: " + imageIdxFile, ex);
+        }
+
+        if (index.isEmpty()) {
+            throw new DeepNettsException("Zero images in index!");
+        }
+
+        LOGGER.info("Loaded index with " + index.size() + " images");
+    }
+
+    /**
+     * Reads, scales and converts image for the specified index entry.
+     */
+    private ExampleImage loadImage(IndexEntry entry) throws IOException {
+        BufferedImage img = ImageIO.read(entry.file);
+        if (img == null) {
+            throw new IOException("Unsupported image format: " + entry.file);
+        }
+        if (scaleImages) img = ImageUtils.scaleImage(img, imageWidth, imageHeight);
+
+        final ExampleImage exImg = new ExampleImage(img, entry.label);
+        exImg.setFile(entry.file);
+        exImg.setTargetOutput(entry.labelIdx >= 0 ? targetOutputs[entry.labelIdx] : new Tensor(ImageSet.oneHotEncode(entry.label, columnNames)));
+        if (invertImages) exImg.invert();
+
+        return exImg;
+    }
+
+    private synchronized ExecutorService getExecutor() {
+        if (executor == null) {
+            final ThreadPoolExecutor loader = new ThreadPoolExecutor(threadCount, threadCount, LOADER_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), runnable -> {
+                final Thread thread = new Thread(runnable, "deepnetts-image-loader");
+                thread.setDaemon(true);
+                return thread;
+            });
+            loader.allowCoreThreadTimeOut(true);
+            executor = loader;
+        }
+        return executor;
+    }
+
+    /**
+     * Returns iterator which loads images on background threads, keeping at most
+     * prefetchSize loaded images which were not returned yet.
+     *
+     * @return iterator over images in this data set
+     */
+    @Override
+    public Iterator<ExampleImage> iterator() {
+        final List<IndexEntry> entries = index;
+        final ExecutorService loader = getExecutor();
+
+        return new Iterator<ExampleImage>() {
+            private final ArrayDeque<Future<ExampleImage>> prefetched = new ArrayDeque<>(prefetchSize);
+            private int nextToLoad = 0;
+            private int nextToReturn = 0;
+
+            @Override
+            public boolean hasNext() {
+                return nextToReturn < entries.size();
+            }
+
+            @Override
+            public ExampleImage next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+
+                while (prefetched.size() < prefetchSize && nextToLoad < entries.size()) {
+                    final IndexEntry entry = entries.get(nextToLoad++);
+                    prefetched.add(loader.submit(() -> loadImage(entry)));
+                }
+
+                final IndexEntry entry = entries.get(nextToReturn++);
+                try {
+                    return prefetched.poll().get();
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    throw new DeepNettsException("Interrupted while loading image file: " + entry.file, ex);
+                } catch (ExecutionException ex) {
+                    LOGGER.error(ex.getCause());
+                    throw new DeepNettsException("Error loading image file: " + entry.file, ex.getCause());
+                }
+            }
+        };
+    }
+
+    /**
+     * Loads and returns image at the specified position.
+     *
+     * @param idx image position
+     * @return loaded image
+     */
+    @Override
+    public ExampleImage get(int idx) {
+        final IndexEntry entry = index.get(idx);
+        try {
+            return loadImage(entry);
+        } catch (IOException ex) {
+            LOGGER.error(ex);
+            throw new DeepNettsException("Error loading image file: " + entry.file, ex);
+        }
+    }
+
+    /**
+     * Returns unmodifiable list view of images in this data set.
+     * Images are not kept in memory, and each image is loaded when it is accessed
+     * (on the calling thread), so iterator should be used whenever possible.
+     *
+     * @return list view of images
+     */
+    @Override
+    public List<ExampleImage> getItems() {
+        return new AbstractList<ExampleImage>() {
+            @Override
+            public ExampleImage get(int idx) {
+                return StreamingImageSet.this.get(idx);
+            }
+
+            @Override
+            public int size() {
+                return index.size();
+            }
+        };
+    }
+
+    /**
+     * Adds file and label of the specified image to the image index.
+     * Image is loaded again from its file when it is used.
+     *
+     * @param item image loaded from file
+     * @return this data set
+     * @throws DeepNettsException if image was not loaded from file
+     */
+    @Override
+    public DataSet<ExampleImage> add(ExampleImage item) {
+        if (item.getFile() == null) {
+            throw new DeepNettsException("Only images loaded from files can be added to streaming image set.");
+        }
+        final int labelIdx = columnNames != null ? Arrays.asList(columnNames).indexOf(item.getLabel()) : -1;
+        index.add(new IndexEntry(item.getFile(), item.getLabel(), labelIdx));
+        return this;
+    }
+
+    @Override
+    public void clear() {
+        index = new ArrayList<>();
+    }
+
+    @Override
+    public int size() {
+        return index.size();
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return index.isEmpty();
+    }
+
+    /**
+     * Shuffles image index using the default random generator.
+     */
+    @Override
+    public void shuffle() {
+        shuffle(RandomGenerator.getDefault().getRandom());
+    }
+
+    @Override
+    public void shuffle(Random rnd) {
+        Collections.shuffle(index, rnd);
+    }
+
+    /**
+     * Splits image index into parts of specified sizes, which share labels
+     * and settings of this image set. Sizes are fractions, and their sum can not be larger than 1.
+     *
+     * @param partSizes sizes of the parts
+     * @return parts of this image set
+     */
+    @Override
+    public StreamingImageSet[] split(double... partSizes) {
+        if (partSizes.length < 1) {
+            throw new IllegalArgumentException("Must specify at least one part");
+        } else if (partSizes.length == 1) {
+            partSizes = new double[] {partSizes[0], 1 - partSizes[0]};
+        }
+
+        double partsSum = 0;
+        for (double partSize : partSizes) {
+            if (partSize <= 0) {
+                throw new IllegalArgumentException("Value of the part cannot be zero or negative!");
+            }
+            partsSum += partSize;
+        }
+        if (partsSum > 1) {
+            throw new IllegalArgumentException("Sum of parts cannot be larger than 1!");
+        }
+
+        LOGGER.info("Splitting data set: " + Arrays.toString(partSizes));
+
+        final StreamingImageSet[] subSets = new StreamingImageSet[partSizes.length];
+        int itemIdx = 0;
+        for (int p = 0; p < partSizes.length; p++) {
+            final int itemsCount = (int) (size() * partSizes[p]);
+            subSets[p] = new StreamingImageSet(this, new ArrayList<>(index.subList(itemIdx, itemIdx + itemsCount)));
+            itemIdx += itemsCount;
+        }
+
+        return subSets;
+    }
+
+    @Override
+    public String[] getTargetNames() {
+        return columnNames;
+    }
+
+    @Override
+    public String[] getColumnNames() {
+        return columnNames;
+    }
+
+    @Override
+    public void setColumnNames(String[] columnNames) {
+        this.columnNames = columnNames;
+    }
+
+    public int getThreadCount() {
+        return threadCount;
+    }
+
+    /**
+     * Sets number of threads used to load images. Should be set before iterating.
+     *
+     * @param threadCount number of threads
+     */
+    public void setThreadCount(int threadCount) {
+        if (threadCount < 1) {
+            throw new IllegalArgumentException("Thread count must be at least 1, but was " + threadCount);
+        }
+        this.threadCount = threadCount;
+    }
+
+    public int getPrefetchSize() {
+        return prefetchSize;
+    }
+
+    /**
+     * Sets max number of images which are loaded in advance while iterating.
+     *
+     * @param prefetchSize max number of loaded images waiting to be used
+     */
+    public void setPrefetchSize(int prefetchSize) {
+        if (prefetchSize < 1) {
+            throw new IllegalArgumentException("Prefetch size must be at least 1, but was " + prefetchSize);
+        }
+        this.prefetchSize = prefetchSize;
+    }
+
+    public int getImageWidth() {
+        return imageWidth;
+    }
+
+    public int getImageHeight() {
+        return imageHeight;
+    }
+
+    public boolean getScaleImages() {
+        return scaleImages;
+    }
+
+    public void setScaleImages(boolean scaleImages) {
+        this.scaleImages = scaleImages;
+    }
+
+    public boolean getInvertImages() {
+        return invertImages;
+    }
+
+    public void setInvertImages(boolean invertImages) {
+        this.invertImages = invertImages;
+    }
+
+    public String getDelimiter() {
+        return delimiter;
+    }
+
+    public void setDelimiter(String delimiter) {
+        this.delimiter = delimiter;
+    }
+
+    /**
+     * Stops threads used to load images.
+     */
+    @Override
+    public synchronized void close() {
+        if (executor != null) {
+            executor.shutdownNow();
+            executor = null;
+        }
+    }
+
+}
@@ -24,7 +24,7 @@ package deepnetts.data;
 import deepnetts.util.RandomGenerator;
 import deepnetts.util.Tensor;
 import java.util.ArrayList;
-import java.util.Collections;
+import java.util.List;
 import java.util.Random;
 import javax.visrec.ml.data.DataSet;
 
@@ -45,7 +45,7 @@ public class TabularDataSet<E extends MLDataItem> extends javax.visrec.ml.data.B
     // TODO: do we need constructor with vector dimensions annd capacity?
     
     protected TabularDataSet() {
-        items = new ArrayList<>();
+        items = new IndexedList<>(new ArrayList<>());
     }
 
     /**
@@ -124,21 +124,50 @@ public class TabularDataSet<E extends MLDataItem> extends javax.visrec.ml.data.B
 
         this.shuffle(); // shuffle before splting, using global random seed
         for (int p = 0; p < parts.length; p++) {
-            TabularDataSet subSet = new TabularDataSet(this.numInputs, this.numOutputs);
-            subSet.setColumnNames(this.columnNames);
             int itemsCount = (int) (size() * parts[p]);
-
-            for (int j = 0; j < itemsCount; j++) {
-                subSet.add(items.get(itemIdx));
-                itemIdx++;
-            }
-
-            subSets[p] = subSet;
+            subSets[p] = newPart(indexedItems().range(itemIdx, itemIdx + itemsCount)); // parts share items with this data set
+            itemIdx += itemsCount;
         }
 
         return subSets;
     }
 
+    /**
+     * Returns data set with items at specified positions in this data set.
+     * Returned data set shares items with this data set, without copying them,
+     * and shuffling one of them does not change the order of items in the other.
+     *
+     * @param idxs positions of items in this data set
+     * @return data set with specified items
+     */
+    public TabularDataSet<E> subset(int... idxs) {
+        return newPart(indexedItems().select(idxs));
+    }
+
+    /**
+     * Creates data set of the same type and with the same properties as this data set, with specified items.
+     * Used to create parts of this data set, subclasses override it to create parts of their own type.
+     *
+     * @param partItems items of a data set part
+     * @return data set with specified items
+     */
+    TabularDataSet<E> newPart(List<E> partItems) {
+        TabularDataSet<E> part = new TabularDataSet<>(numInputs, numOutputs);
+        part.setColumnNames(columnNames);
+        part.items = partItems;
+        return part;
+    }
+
+    /**
+     * Returns items of this data set as indexed list (wraps items list set by subclasses if needed).
+     */
+    final IndexedList<E> indexedItems() {
+        if (!(items instanceof IndexedList)) {
+            items = new IndexedList<>(items);
+        }
+        return (IndexedList<E>) items;
+    }
+
     /**
      * Shuffles the data set items using the default random generator.
      * Default rng can be initialized independently
@@ -146,7 +175,19 @@ public class TabularDataSet<E extends MLDataItem> extends javax.visrec.ml.data.B
     @Override
     public void shuffle() {
         Random rnd = RandomGenerator.getDefault().getRandom();
-        Collections.shuffle(items, rnd);
+        shuffle(rnd);
+    }
+
+    /**
+     * Shuffles the data set items using specified random generator.
+     * Only the order of items in this data set is changed, items are not moved in memory,
+     * so this does not affect other data sets which share the same items.
+     *
+     * @param rnd random generator
+     */
+    @Override
+    public void shuffle(Random rnd) {
+        indexedItems().shuffle(rnd);
     }
 
     /**
@@ -158,7 +199,7 @@ public class TabularDataSet<E extends MLDataItem> extends javax.visrec.ml.data.B
      */
     public void shuffle(int seed) {
         Random rnd = new Random(seed);
-        Collections.shuffle(items, rnd);
+        shuffle(rnd);
     }
 
     @Override
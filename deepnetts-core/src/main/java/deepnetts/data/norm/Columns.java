@@ -0,0 +1,118 @@
+/**
+ *  DeepNetts is pure Java Deep Learning Library with support for Backpropagation
+ *  based learning and image recognition.
+ *
+ *  Copyright (C) 2017  Zoran Sevarac <sevarac@gmail.com>
+ *
+ * This file is part of DeepNetts.
+ *
+ * DeepNetts is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <https://www.gnu.org/licenses/>.package
+ * deepnetts.core;
+ */
+package deepnetts.data.norm;
+
+import deepnetts.data.PackedTabularDataSet;
+import javax.visrec.ml.data.DataSet;
+
+/**
+ * Column wise operations over row-major arrays of packed data sets, used by normalizers.
+ * Each pass goes through array once, row after row, and inner loops over contiguous row values can be vectorized by JIT.
+ *
+ * @author Zoran Sevarac
+ */
+final class Columns {
+
+    private Columns() { }
+
+    /**
+     * Returns specified data set as packed data set, or null if it is not packed
+     * or if its arrays contain rows which are not in the data set.
+     */
+    static PackedTabularDataSet packedOrNull(DataSet<?> dataSet) {
+        if (dataSet instanceof PackedTabularDataSet) {
+            final PackedTabularDataSet packed = (PackedTabularDataSet) dataSet;
+            return packed.getRowCount() == packed.size() ? packed : null;
+        }
+        return null;
+    }
+
+    /**
+     * Stores max absolute value of each column into max, if it is greater than current value in max.
+     */
+    static void absMax(final float[] values, final int rows, final int cols, final float[] max, final int maxOffset) {
+        for (int r = 0, off = 0; r < rows; r++, off += cols) {
+            for (int c = 0; c < cols; c++) {
+                final float abs = Math.abs(values[off + c]);
+                if (abs > max[maxOffset + c]) max[maxOffset + c] = abs;
+            }
+        }
+    }
+
+    /**
+     * Stores min absolute value of each column into min, if it is lower than absolute value of current value in min.
+     */
+    static void absMin(final float[] values, final int rows, final int cols, final float[] min, final int minOffset) {
+        for (int r = 0, off = 0; r < rows; r++, off += cols) {
+            for (int c = 0; c < cols; c++) {
+                final float abs = Math.abs(values[off + c]);
+                if (abs < Math.abs(min[minOffset + c])) min[minOffset + c] = abs;
+            }
+        }
+    }
+
+    /**
+     * Adds values of all rows to sum.
+     */
+    static void sum(final float[] values, final int rows, final int cols, final float[] sum) {
+        for (int r = 0, off = 0; r < rows; r++, off += cols) {
+            for (int c = 0; c < cols; c++) {
+                sum[c] += values[off + c];
+            }
+        }
+    }
+
+    /**
+     * Adds squared differences of values in all rows and mean to sum.
+     */
+    static void sumSqrDiff(final float[] values, final int rows, final int cols, final float[] mean, final float[] sum) {
+        for (int r = 0, off = 0; r < rows; r++, off += cols) {
+            for (int c = 0; c < cols; c++) {
+                final float diff = values[off + c] - mean[c];
+                sum[c] += diff * diff;
+            }
+        }
+    }
+
+    /**
+     * Subtracts sub from values of each row.
+     */
+    static void sub(final float[] values, final int rows, final int cols, final float[] sub, final int subOffset) {
+        for (int r = 0, off = 0; r < rows; r++, off += cols) {
+            for (int c = 0; c < cols; c++) {
+                values[off + c] -= sub[subOffset + c];
+            }
+        }
+    }
+
+    /**
+     * Divides values of each row with divisor, element wise.
+     */
+    static void div(final float[] values, final int rows, final int cols, final float[] divisor, final int divisorOffset) {
+        for (int r = 0, off = 0; r < rows; r++, off += cols) {
+            for (int c = 0; c < cols; c++) {
+                values[off + c] /= divisor[divisorOffset + c];
+            }
+        }
+    }
+
+}
@@ -50,15 +50,15 @@ public class DecimalScaleNormalizer implements Normalizer<DataSet<MLDataItem>>,
         
         // nadji maksimume za sve kolone
         for(MLDataItem item : dataSet) {
-            inputDivisor = Tensors.absMax(item.getInput().getValues(), inputDivisor);
-            outputDivisor = Tensors.absMax(item.getTargetOutput().getValues(), outputDivisor);
+            inputDivisor = Tensors.absMax(item.getInput().getFlatValues(), inputDivisor);
+            outputDivisor = Tensors.absMax(item.getTargetOutput().getFlatValues(), outputDivisor);
         }   
         
         // onda za svaki vektor nadji decimalnu skalu, 1, 10, 100, 1000 while (x>1) { x = x / 10.0f; scale++;}        
         for(MLDataItem item : dataSet) { 
             // i za svaku komponentu ulaznog ili izlaznog vektora
-            inputDivisor = getDecimalScaleFor(item.getInput().getValues());
-            outputDivisor = getDecimalScaleFor(item.getTargetOutput().getValues());        
+            inputDivisor = getDecimalScaleFor(item.getInput().getFlatValues());
+            outputDivisor = getDecimalScaleFor(item.getTargetOutput().getFlatValues());        
         }
                 
     }
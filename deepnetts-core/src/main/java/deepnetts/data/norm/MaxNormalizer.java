@@ -28,6 +28,7 @@ import java.io.Serializable;
 import javax.visrec.ml.data.DataSet;
 import javax.visrec.ml.data.Normalizer;
 import deepnetts.data.MLDataItem;
+import deepnetts.data.PackedTabularDataSet;
 
 /**
  * Performs max normalization, rescales data to corresponding max value in each column.
@@ -49,7 +50,14 @@ public final class MaxNormalizer implements Normalizer<DataSet<MLDataItem>>, Ser
         // find max values for each component of input and output tensor/vector
         maxInputs = dataSet.get(0).getInput().copy();
         maxOutputs = dataSet.get(0).getTargetOutput().copy();
-        
+
+        final PackedTabularDataSet packed = Columns.packedOrNull(dataSet);
+        if (packed != null) { // column passes over packed values
+            Columns.absMax(packed.getInputValues(), packed.getRowCount(), packed.getNumInputs(), maxInputs.getValues(), maxInputs.getOffset());
+            Columns.absMax(packed.getTargetValues(), packed.getRowCount(), packed.getNumOutputs(), maxOutputs.getValues(), maxOutputs.getOffset());
+            return;
+        }
+
         // find max values for all components of input and output vectors
         for(MLDataItem item : dataSet) {
             maxInputs = Tensors.absMax(item.getInput(), maxInputs); 
@@ -65,6 +73,13 @@ public final class MaxNormalizer implements Normalizer<DataSet<MLDataItem>>, Ser
     @Override
     public void normalize(DataSet<MLDataItem> dataSet) {
         // todo: prevent/catch division by zero
+        final PackedTabularDataSet packed = Columns.packedOrNull(dataSet);
+        if (packed != null) {
+            Columns.div(packed.getInputValues(), packed.getRowCount(), packed.getNumInputs(), maxInputs.getValues(), maxInputs.getOffset());
+            Columns.div(packed.getTargetValues(), packed.getRowCount(), packed.getNumOutputs(), maxOutputs.getValues(), maxOutputs.getOffset());
+            return;
+        }
+
         for(MLDataItem item : dataSet) {
             item.getInput().div(maxInputs);   // kad je absMaxInput postao 1 1 1 1 posle pre iteracije!!!
             item.getTargetOutput().div(maxOutputs); 
@@ -28,6 +28,7 @@ import java.io.Serializable;
 import javax.visrec.ml.data.DataSet;
 import javax.visrec.ml.data.Normalizer;
 import deepnetts.data.MLDataItem;
+import deepnetts.data.PackedTabularDataSet;
 
 /**
  * Performs Min Max normalization on the given data set.
@@ -51,7 +52,16 @@ public class MinMaxNormalizer implements Normalizer<DataSet<MLDataItem>>, Serial
         maxInput = dataSet.get(0).getInput().copy();
         minOutput = dataSet.get(0).getTargetOutput().copy();
         maxOutput = dataSet.get(0).getTargetOutput().copy();
-        
+
+        final PackedTabularDataSet packed = Columns.packedOrNull(dataSet);
+        if (packed != null) { // column passes over packed values
+            Columns.absMin(packed.getInputValues(), packed.getRowCount(), packed.getNumInputs(), minInput.getValues(), minInput.getOffset());
+            Columns.absMax(packed.getInputValues(), packed.getRowCount(), packed.getNumInputs(), maxInput.getValues(), maxInput.getOffset());
+            Columns.absMin(packed.getTargetValues(), packed.getRowCount(), packed.getNumOutputs(), minOutput.getValues(), minOutput.getOffset());
+            Columns.absMax(packed.getTargetValues(), packed.getRowCount(), packed.getNumOutputs(), maxOutput.getValues(), maxOutput.getOffset());
+            return;
+        }
+
         for(MLDataItem item : dataSet) {
             minInput = Tensors.absMin(item.getInput(), minInput);
             maxInput = Tensors.absMax(item.getInput(), maxInput);
@@ -74,6 +84,15 @@ public class MinMaxNormalizer implements Normalizer<DataSet<MLDataItem>>, Serial
         Tensor outDivider = maxOutput.copy();
         maxOutput.sub(minOutput);
 
+        final PackedTabularDataSet packed = Columns.packedOrNull(dataSet);
+        if (packed != null) {
+            Columns.sub(packed.getInputValues(), packed.getRowCount(), packed.getNumInputs(), minInput.getValues(), minInput.getOffset());
+            Columns.div(packed.getInputValues(), packed.getRowCount(), packed.getNumInputs(), inDivider.getValues(), inDivider.getOffset());
+            Columns.sub(packed.getTargetValues(), packed.getRowCount(), packed.getNumOutputs(), minInput.getValues(), minInput.getOffset());
+            Columns.sub(packed.getTargetValues(), packed.getRowCount(), packed.getNumOutputs(), outDivider.getValues(), outDivider.getOffset());
+            return;
+        }
+
         for (MLDataItem item : dataSet) {
             item.getInput().sub(minInput);
             item.getInput().div(inDivider);
@@ -27,6 +27,7 @@ import java.io.Serializable;
 import javax.visrec.ml.data.DataSet;
 import javax.visrec.ml.data.Normalizer;
 import deepnetts.data.MLDataItem;
+import deepnetts.data.PackedTabularDataSet;
 
 /**
  * Performs standardization in order to get desired statistical properties of the data set.
@@ -47,7 +48,17 @@ public class Standardizer implements Normalizer<DataSet<MLDataItem>>, Serializab
         // int dims = t.getDimensions();
         mean = new Tensor(t.getCols());
         std = new Tensor(t.getCols());
-        
+
+        final PackedTabularDataSet packed = Columns.packedOrNull(dataSet);
+        if (packed != null) { // column passes over packed values
+            Columns.sum(packed.getInputValues(), packed.getRowCount(), packed.getNumInputs(), mean.getValues());
+            mean.div((float)dataSet.size());
+            Columns.sumSqrDiff(packed.getInputValues(), packed.getRowCount(), packed.getNumInputs(), mean.getValues(), std.getValues());
+            std.div(dataSet.size()-1);
+            std.sqrt();
+            return;
+        }
+
         for(MLDataItem item : dataSet) {
             mean.add(item.getInput());
         }         
@@ -68,6 +79,13 @@ public class Standardizer implements Normalizer<DataSet<MLDataItem>>, Serializab
         
     @Override
     public void normalize(DataSet<MLDataItem> dataSet) {
+        final PackedTabularDataSet packed = Columns.packedOrNull(dataSet);
+        if (packed != null) {
+            Columns.sub(packed.getInputValues(), packed.getRowCount(), packed.getNumInputs(), mean.getValues(), 0);
+            Columns.div(packed.getInputValues(), packed.getRowCount(), packed.getNumInputs(), std.getValues(), 0);
+            return;
+        }
+
         for (MLDataItem item : dataSet) {
             item.getInput().sub(mean);
             item.getInput().div(std);
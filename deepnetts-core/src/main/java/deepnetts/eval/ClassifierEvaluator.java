@@ -95,10 +95,11 @@ public class ClassifierEvaluator implements Evaluator<NeuralNetwork, DataSet<? e
         // if class labels are empty create class1, class2, classk ....
         init();
 
+        final float[] target = new float[neuralNet.getOutputLayer().getWidth()];
         for (MLDataItem item : testSet) {
-            neuralNet.setInput(item.getInput());
+            neuralNet.setInput(item);
             final float[] predictedOut = neuralNet.getOutput();
-            processResult(item.getTargetOutput().getValues(), predictedOut);
+            processResult(item.getTargetOutput().getFlatValues(target), predictedOut);
         }
 
         if (classLabels.size() == 2) {  // for binary classification
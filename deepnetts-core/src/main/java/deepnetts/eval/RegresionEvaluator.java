@@ -46,12 +46,13 @@ public class RegresionEvaluator implements Evaluator<NeuralNetwork, DataSet<MLDa
         int numInputs = testSet.get(0).getInput().size();
         int numItems= testSet.size();
         float targetMean = mean(testSet);
+        final float[] target = new float[neuralNet.getOutputLayer().getWidth()];
 
         for (MLDataItem item : testSet) {
-            neuralNet.setInput(item.getInput());
+            neuralNet.setInput(item);
             float[] predicted = neuralNet.getOutput();
-            mse.add(predicted, item.getTargetOutput().getValues());
-            tss += (item.getTargetOutput().getValues()[0] - targetMean)*(item.getTargetOutput().getValues()[0] - targetMean);
+            mse.add(predicted, item.getTargetOutput().getFlatValues(target));
+            tss += (item.getTargetOutput().get(0) - targetMean)*(item.getTargetOutput().get(0) - targetMean);
         }
 
         final float rss = mse.getSquaredSum();
@@ -0,0 +1,138 @@
+/**
+ *  DeepNetts is pure Java Deep Learning Library with support for Backpropagation
+ *  based learning and image recognition.
+ *
+ *  Copyright (C) 2017  Zoran Sevarac <sevarac@gmail.com>
+ *
+ * This file is part of DeepNetts.
+ *
+ * DeepNetts is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <https://www.gnu.org/licenses/>.package
+ * deepnetts.core;
+ */
+
+package deepnetts.net;
+
+import deepnetts.util.DeepNettsException;
+import deepnetts.net.layers.AbstractLayer;
+import deepnetts.util.Tensor;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.Serializable;
+import org.apache.commons.lang3.SerializationUtils;
+
+/**
+ * Immutable, trained neural network which can be used for prediction from many threads at the same time.
+ * Holds only weights and layer structure, while activations of each prediction are kept
+ * in an {@link InferenceContext}, which should be created once for each thread and reused,
+ * so that prediction does not allocate any memory.
+ *
+ * <pre>
+ * FrozenNetwork frozenNet = neuralNet.freeze();
+ * InferenceContext ctx = frozenNet.createContext(); // once per thread
+ * float[] output = frozenNet.predict(ctx, input);
+ * </pre>
+ *
+ * All contexts share the single copy of weights in this network.
+ * Changes of the original network after it is frozen (for example further training) do not affect frozen network.
+ *
+ * @see InferenceContext
+ * @author Zoran Sevarac <zoran.sevarac@deepnetts.com>
+ */
+public final class FrozenNetwork implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Private copy of the frozen network, without training state. Never changed after construction.
+     */
+    private final NeuralNetwork<?> neuralNet;
+
+    /**
+     * Context for each thread that calls predict without own context.
+     */
+    private transient ThreadLocal<InferenceContext> threadContext;
+
+    /**
+     * Creates frozen copy of the specified network.
+     *
+     * @param neuralNet trained network to freeze
+     */
+    public FrozenNetwork(NeuralNetwork<?> neuralNet) {
+        this.neuralNet = SerializationUtils.clone(neuralNet);
+        this.neuralNet.setTrainer(null);
+        this.neuralNet.getLayers().forEach(AbstractLayer::clearTrainingState);
+        threadContext = ThreadLocal.withInitial(this::createContext);
+    }
+
+    /**
+     * Creates new context with activation buffers for this network.
+     * Context can be used by only one thread at a time, and should be reused for many predictions.
+     *
+     * @return new inference context
+     */
+    public InferenceContext createContext() {
+        final NeuralNetwork<?> replica = SerializationUtils.clone(neuralNet);
+        replica.shareWeightsWith(neuralNet);
+        return new InferenceContext(this, replica);
+    }
+
+    /**
+     * Calculates network output for the specified input, using activation buffers of the specified context.
+     * Returned array belongs to the context, and is overwritten by the next prediction with the same context.
+     *
+     * @param ctx context created by this network
+     * @param input network input
+     * @return network output
+     */
+    public float[] predict(InferenceContext ctx, Tensor input) {
+        if (ctx.getFrozenNetwork() != this) {
+            throw new DeepNettsException("Inference context was not created by this network!");
+        }
+        return ctx.predict(input);
+    }
+
+    /**
+     * Calculates network output for the specified input, using context of the current thread.
+     * Returned array is overwritten by the next prediction in the same thread.
+     *
+     * @param input network input
+     * @return network output
+     */
+    public float[] predict(Tensor input) {
+        return threadContext.get().predict(input);
+    }
+
+    public String[] getOutputLabels() {
+        final String[] outputLabels = neuralNet.getOutputLabels();
+        return outputLabels != null ? outputLabels.clone() : null;
+    }
+
+    public String getOutputLabel(int i) {
+        return neuralNet.getOutputLabel(i);
+    }
+
+    public String getLabel() {
+        return neuralNet.getLabel();
+    }
+
+    @Override
+    public String toString() {
+        return neuralNet.toString();
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        threadContext = ThreadLocal.withInitial(this::createContext);
+    }
+
+}
@@ -0,0 +1,58 @@
+/**
+ *  DeepNetts is pure Java Deep Learning Library with support for Backpropagation
+ *  based learning and image recognition.
+ *
+ *  Copyright (C) 2017  Zoran Sevarac <sevarac@gmail.com>
+ *
+ * This file is part of DeepNetts.
+ *
+ * DeepNetts is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <https://www.gnu.org/licenses/>.package
+ * deepnetts.core;
+ */
+
+package deepnetts.net;
+
+import deepnetts.util.Tensor;
+
+/**
+ * Activation buffers for prediction with a {@link FrozenNetwork}.
+ * Each thread should use its own context, and reuse it for all predictions,
+ * since context is not thread safe and creating it allocates outputs of all layers.
+ *
+ * @see FrozenNetwork#createContext()
+ * @author Zoran Sevarac <zoran.sevarac@deepnetts.com>
+ */
+public final class InferenceContext {
+
+    private final FrozenNetwork frozenNet;
+
+    /**
+     * Network replica which shares weights with frozen network, and has its own layer outputs.
+     */
+    private final NeuralNetwork<?> replica;
+
+    InferenceContext(FrozenNetwork frozenNet, NeuralNetwork<?> replica) {
+        this.frozenNet = frozenNet;
+        this.replica = replica;
+    }
+
+    float[] predict(Tensor input) {
+        replica.setInput(input);
+        return replica.getOutput();
+    }
+
+    FrozenNetwork getFrozenNetwork() {
+        return frozenNet;
+    }
+
+}
@@ -23,6 +23,7 @@ package deepnetts.net;
 
 import deepnetts.eval.Evaluators;
 import deepnetts.net.layers.AbstractLayer;
+import deepnetts.net.layers.FullyConnectedLayer;
 import deepnetts.net.layers.InputLayer;
 import deepnetts.net.layers.OutputLayer;
 import deepnetts.net.loss.BinaryCrossEntropyLoss;
@@ -32,6 +33,7 @@ import deepnetts.net.loss.LossType;
 import deepnetts.net.loss.MeanSquaredErrorLoss;
 import deepnetts.net.train.Trainer;
 import deepnetts.net.train.TrainerProvider;
+import deepnetts.net.weights.PrecisionType;
 import deepnetts.util.Tensor;
 import java.io.Serializable;
 import java.util.ArrayList;
@@ -39,6 +41,7 @@ import java.util.List;
 import javax.visrec.ml.data.DataSet;
 import javax.visrec.ml.eval.EvaluationMetrics;
 import deepnetts.data.MLDataItem;
+import org.apache.commons.lang3.SerializationUtils;
 
 /**
  * Base class for all neural networks in DeepNetts.
@@ -111,6 +114,16 @@ public class NeuralNetwork<T extends Trainer> implements TrainerProvider<T>, Ser
         forward();
     }
 
+    /**
+     * Sets network input from the specified data item and triggers forward pass.
+     *
+     * @param item data item with network input
+     */
+    public void setInput(MLDataItem item) {
+        inputLayer.setInput(item);
+        forward();
+    }
+
 //    public void setInput(float[] inputs) {
 ////        inputWrapper.setValues(inputs); // also set size / diemnsions / shape of this vector - da li ova metoda da bude ovde??? mozda samo ff ne i zconv!
 //        setInput(inputWrapper);
@@ -162,6 +175,163 @@ public class NeuralNetwork<T extends Trainer> implements TrainerProvider<T>, Ser
         }
     }
 
+    /**
+     * Sets if this network is trained. While training, forward pass also calculates derivatives of activation
+     * functions used in backward pass, so trainers set it only for passes which are followed by backward pass.
+     *
+     * @param training true while network is trained
+     */
+    public void setTraining(boolean training) {
+        for (AbstractLayer layer : layers) {
+            layer.setTraining(training);
+        }
+    }
+
+    /**
+     * Prepares all layers for forward and backward pass of a batch with up to the specified number of samples.
+     *
+     * @param capacity max number of samples in a batch
+     */
+    public void initBatch(int capacity) {
+        layers.forEach((layer) -> layer.initBatch(capacity));
+    }
+
+    /**
+     * Returns max number of samples in a batch, set with initBatch.
+     *
+     * @return max number of samples in a batch
+     */
+    public int getBatchCapacity() {
+        return inputLayer.getBatchCapacity();
+    }
+
+    /**
+     * Sets input for the sample at specified position in a batch.
+     *
+     * @param idx position of the sample in a batch
+     * @param input input tensor
+     */
+    public void setBatchInput(int idx, Tensor input) {
+        inputLayer.setBatchInput(idx, input);
+    }
+
+    /**
+     * Sets input for the sample at specified position in a batch, from the specified data item.
+     *
+     * @param idx position of the sample in a batch
+     * @param item data item with network input
+     */
+    public void setBatchInput(int idx, MLDataItem item) {
+        inputLayer.setBatchInput(idx, item);
+    }
+
+    /**
+     * Performs forward pass for the first n samples in a batch.
+     *
+     * @param n number of samples in current batch
+     */
+    public void forwardBatch(int n) {
+        for (int i = 1; i < layers.size(); i++) {   // starts from 1 to skip input layer
+            layers.get(i).forwardBatch(n);
+        }
+    }
+
+    /**
+     * Performs backward pass for the first n samples in a batch.
+     *
+     * @param n number of samples in current batch
+     */
+    public void backwardBatch(int n) {
+        for (int i = layers.size() - 1; i > 0; i--) {
+            layers.get(i).backwardBatch(n);
+        }
+    }
+
+    /**
+     * Returns network's outputs for a batch, one sample after another.
+     *
+     * @return batch outputs
+     */
+    public Tensor getBatchOutput() {
+        return outputLayer.getBatchOutputs();
+    }
+
+    public void setBatchOutputError(int idx, float[] outputErrors) {
+        outputLayer.setBatchOutputErrors(idx, outputErrors);
+    }
+
+    /**
+     * Makes all layers of this network use weights and biases of the corresponding
+     * layers in the specified network, which must be a copy of this network.
+     * Weight changes are still calculated separately in each network.
+     *
+     * @param neuralNet network to share weights with
+     * @see #mergeDeltaWeights(deepnetts.net.NeuralNetwork)
+     */
+    public void shareWeightsWith(NeuralNetwork<?> neuralNet) {
+        for (int i = 1; i < layers.size(); i++) {
+            layers.get(i).shareWeightsWith(neuralNet.getLayers().get(i));
+        }
+    }
+
+    /**
+     * Adds weight changes calculated in the specified network replica to weight
+     * changes of this network, and resets them in replica.
+     *
+     * @param replica network which shares weights with this network
+     */
+    public void mergeDeltaWeights(NeuralNetwork<?> replica) {
+        for (int i = 1; i < layers.size(); i++) {
+            layers.get(i).mergeDeltaWeights(replica.getLayers().get(i));
+        }
+    }
+
+    /**
+     * Creates copy of this network which shares weights with this network.
+     * Trainer is not copied, and replica has no trainer.
+     *
+     * @return network replica
+     * @see #shareWeightsWith(deepnetts.net.NeuralNetwork)
+     */
+    public NeuralNetwork<?> createReplica() {
+        final T detachedTrainer = trainer; // trainer references this network and its training state, which replica does not need
+        trainer = null;
+        try {
+            final NeuralNetwork<?> replica = SerializationUtils.clone(this);
+            replica.shareWeightsWith(this);
+            return replica;
+        } finally {
+            trainer = detachedTrainer;
+        }
+    }
+
+    /**
+     * Creates immutable copy of this network, which can be used for prediction from many threads.
+     *
+     * @return frozen copy of this network
+     * @see FrozenNetwork
+     */
+    public FrozenNetwork freeze() {
+        return new FrozenNetwork(this);
+    }
+
+    /**
+     * Sets precision of weights used for prediction for all fully connected layers.
+     * With BFLOAT16 float weights and training state of fully connected layers are released, so weights
+     * of these layers take half of the memory, but network can only be used for prediction after this.
+     * It does not make single sample prediction faster: it is about 15% slower, because weights are converted while they are read.
+     *
+     * @param precision precision of weights used for prediction
+     * @see FullyConnectedLayer#setInferencePrecision(deepnetts.net.weights.PrecisionType)
+     */
+    public void setInferencePrecision(PrecisionType precision) {
+        for (AbstractLayer layer : layers) {
+            if (layer instanceof FullyConnectedLayer) {
+                ((FullyConnectedLayer) layer).setInferencePrecision(precision);
+            }
+        }
+    }
+
     protected void addLayer(AbstractLayer layer) {
         layers.add(layer);
     }
@@ -28,6 +28,10 @@ import java.io.Serializable;
 import deepnetts.net.layers.activation.ActivationFunction;
 import deepnetts.net.train.opt.Optimizer;
 import deepnetts.net.weights.RandomWeightsType;
+import deepnetts.util.Blas;
+import deepnetts.util.Tensors;
+import java.io.IOException;
+import java.io.ObjectInputStream;
 
 /**
  * Base class for different types of layers (except data/input layer) Provides
@@ -37,7 +41,7 @@ import deepnetts.net.weights.RandomWeightsType;
  */
 public abstract class AbstractLayer implements Layer, Serializable {
 
-    private static final long serialVersionUid = 1L;
+    private static final long serialVersionUID = 4172662870441249554L;
 
     /**
      * Previous layer in network
@@ -70,16 +74,32 @@ public abstract class AbstractLayer implements Layer, Serializable {
      */
     protected Tensor deltas;
 
+    /**
+     * First derivatives of activation function for layer outputs, calculated in forward pass
+     * together with outputs while training, and used in backward pass. Only layers which are trained have them.
+     */
+    protected Tensor derivatives;
+
+    /**
+     * True while layer is trained, so forward pass also calculates derivatives.
+     */
+    protected transient boolean training;
+
     /**
      * Previous delta sums used by AdaGrad and AdaDelta
      */
     protected Tensor prevGradSqrSum, prevBiasSqrSum, prevDeltaWeightSqrSum, prevDeltaBiasSqrSum;
 
     /**
-     * Weight changes for current and previous iteration
+     * Weight changes for current and previous iteration.
+     * Layers create them as the same tensor: weight changes applied in one iteration
+     * are previous weight changes in the next one, so they are not copied after each update.
      */
     protected Tensor deltaWeights, prevDeltaWeights;
 
+    /**
+     * Weight gradients summed over samples since weight changes were last applied
+     */
     protected Tensor gradients;
     
     protected ActivationFunction activation;
@@ -109,11 +129,39 @@ public abstract class AbstractLayer implements Layer, Serializable {
     protected float[] biases;
     protected float[] deltaBiases; 
     protected float[] prevDeltaBiases;
+    protected float[] biasGradients;
     
     protected Optimizer optim;
     
     protected RandomWeightsType randomWeightsType = RandomWeightsType.XAVIER;
 
+    /**
+     * Inputs for a batch of samples (a reference to batch outputs of previous layer)
+     */
+    protected transient Tensor batchInputs;
+
+    /**
+     * Layer outputs for a batch of samples, stored one sample after another,
+     * each with the same layout as outputs tensor.
+     */
+    protected transient Tensor batchOutputs;
+
+    /**
+     * Layer deltas for a batch of samples, same layout as batch outputs.
+     */
+    protected transient Tensor batchDeltas;
+
+    /**
+     * First derivatives of activation function for batch outputs, same layout as batch outputs.
+     * Created only if layer has derivatives.
+     */
+    protected transient Tensor batchDerivatives;
+
+    /**
+     * Max number of samples that can be processed in a single batch forward/backward pass.
+     */
+    protected transient int batchCapacity;
+
     /**
      * This method should implement layer initialization when layer is added to
      * network (create weights, outputs, deltas, randomization etc.)
@@ -140,6 +188,261 @@ public abstract class AbstractLayer implements Layer, Serializable {
      */
     public abstract void applyWeightChanges();
 
+    /**
+     * Creates batch outputs and deltas for the specified max number of samples.
+     * This method is called for all layers in network order, before batch
+     * forward and backward passes, so batch outputs of previous layer are already created.
+     *
+     * @param capacity max number of samples in a batch
+     */
+    public void initBatch(int capacity) {
+        this.batchCapacity = capacity;
+        if (prevLayer != null) {
+            batchInputs = prevLayer.batchOutputs;
+        }
+
+        if (height == 1 && depth == 1) {
+            batchOutputs = new Tensor(capacity, width);
+            batchDeltas = new Tensor(capacity, width);
+        } else {
+            batchOutputs = new Tensor(height, width, depth, capacity);
+            batchDeltas = new Tensor(height, width, depth, capacity);
+        }
+
+        if (derivatives != null) {
+            batchDerivatives = new Tensor(batchOutputs.getValues().length);
+        }
+    }
+
+    /**
+     * This method should implement forward pass for the first n samples in batch inputs.
+     *
+     * @param n number of samples in current batch
+     */
+    public abstract void forwardBatch(int n);
+
+    /**
+     * This method should implement backward pass for the first n samples in batch.
+     * Weight changes are summed over samples, just like in batch mode for single samples.
+     *
+     * @param n number of samples in current batch
+     */
+    public abstract void backwardBatch(int n);
+
+    /**
+     * Makes this layer use weights, biases and previous weight changes of the specified layer,
+     * which must be a layer of the same type and dimensions in a copy of the same network.
+     * Used for replicas of a network in parallel training, which calculate weight changes
+     * independently but all use the same weights.
+     *
+     * @param layer layer to share weights with
+     */
+    public void shareWeightsWith(AbstractLayer layer) {
+        weights = layer.weights;
+        biases = layer.biases;
+        prevDeltaWeights = layer.prevDeltaWeights;
+        prevDeltaBiases = layer.prevDeltaBiases;
+        if (optim != null) {
+            setOptimizerType(optimizerType); // optimizer may keep references to previous weight changes
+        }
+    }
+
+    /**
+     * Releases everything this layer needs only for training (deltas, weight changes,
+     * optimizer state and batch buffers), keeping only what is needed for forward pass.
+     * Layer can not be trained after this.
+     */
+    public void clearTrainingState() {
+        deltas = null;
+        derivatives = null;
+        gradients = null;
+        deltaWeights = null;
+        prevDeltaWeights = null;
+        deltaBiases = null;
+        prevDeltaBiases = null;
+        biasGradients = null;
+        prevGradSqrSum = null;
+        prevBiasSqrSum = null;
+        prevDeltaWeightSqrSum = null;
+        prevDeltaBiasSqrSum = null;
+        optim = null;
+        batchInputs = null;
+        batchOutputs = null;
+        batchDeltas = null;
+        batchDerivatives = null;
+        batchCapacity = 0;
+    }
+
+    /**
+     * Adds gradients summed in the specified replica layer to gradients
+     * of this layer, and resets gradients in replica layer.
+     *
+     * @param replica layer of a network replica which shares weights with this layer
+     */
+    public void mergeDeltaWeights(AbstractLayer replica) {
+        if (gradients == null) {
+            return;
+        }
+
+        gradients.add(replica.gradients);
+        Tensors.add(biasGradients, replica.biasGradients);
+
+        replica.gradients.fill(0);
+        Tensor.fill(replica.biasGradients, 0);
+    }
+
+    /**
+     * Applies weight changes for layers which sum gradients in gradients tensor and bias gradients:
+     * gradients are averaged over samples in batch, optimizer calculates weight changes
+     * for all weights and biases, which are then added to weights and biases.
+     * Gradients are reset for the next iteration.
+     */
+    protected final void applyGradients() {
+        if (batchMode) {
+            gradients.div(batchSize);
+            Tensors.div(biasGradients, batchSize);
+        }
+
+        optim.calculateDeltaWeights(gradients.getValues(), deltaWeights.getValues());
+        optim.calculateDeltaBiases(biasGradients, deltaBiases);
+
+        // save as prev delta weights, only needed if they are not the same tensor (set with setter, or networks saved with older versions)
+        if (prevDeltaWeights != deltaWeights) {
+            Tensor.copy(deltaWeights, prevDeltaWeights);
+        }
+        if (prevDeltaBiases != deltaBiases) {
+            Tensor.copy(deltaBiases, prevDeltaBiases);
+        }
+
+        weights.add(deltaWeights);
+        Tensors.add(biases, deltaBiases);
+
+        gradients.fill(0);
+        Tensor.fill(biasGradients, 0);
+    }
+
+    /**
+     * Applies activation function to outputs in the specified range, in place.
+     * While training, derivatives are calculated in the same pass.
+     *
+     * @param from index of the first output
+     * @param to index after the last output
+     */
+    protected final void activate(final int from, final int to) {
+        activation.apply(outputs.getValues(), from, to, training && derivatives != null ? derivatives.getValues() : null);
+    }
+
+    /**
+     * Applies activation function to batch outputs in the specified range, in place.
+     * While training, batch derivatives are calculated in the same pass.
+     *
+     * @param from index of the first output
+     * @param to index after the last output
+     */
+    protected final void activateBatch(final int from, final int to) {
+        activation.apply(batchOutputs.getValues(), from, to, training && batchDerivatives != null ? batchDerivatives.getValues() : null);
+    }
+
+    /**
+     * Prepares derivatives for backward pass. While training they are already calculated in forward pass,
+     * otherwise (when backward pass is called directly) they are calculated here from outputs.
+     */
+    protected final void prepareDerivatives() {
+        if (!training && derivatives != null) {
+            calculateDerivatives(outputs.getValues(), derivatives.getValues(), derivatives.size());
+        }
+    }
+
+    /**
+     * Prepares batch derivatives for backward pass of the first n samples in batch, like {@link #prepareDerivatives()}.
+     *
+     * @param n number of samples in current batch
+     */
+    protected final void prepareBatchDerivatives(final int n) {
+        if (!training && batchDerivatives != null) {
+            calculateDerivatives(batchOutputs.getValues(), batchDerivatives.getValues(), n * width * height * depth);
+        }
+    }
+
+    private void calculateDerivatives(final float[] outputValues, final float[] derivativeValues, final int count) {
+        for (int i = 0; i < count; i++) {
+            derivativeValues[i] = activation.getPrime(outputValues[i]);
+        }
+    }
+
+    public final boolean isTraining() {
+        return training;
+    }
+
+    /**
+     * Sets if this layer is trained. Derivatives of activation function are calculated in forward pass
+     * only while training, so forward pass used only for prediction does not calculate them.
+     *
+     * @param training true while layer is trained
+     */
+    public final void setTraining(boolean training) {
+        this.training = training;
+    }
+
+    public int getBatchCapacity() {
+        return batchCapacity;
+    }
+
+    public final Tensor getBatchOutputs() {
+        return batchOutputs;
+    }
+
+    public final Tensor getBatchDeltas() {
+        return batchDeltas;
+    }
+
+    /**
+     * Batch forward pass for layers with 2D weights and a single row of units:
+     * batch outputs = activation(batch inputs * weights + biases)
+     *
+     * @param n number of samples in current batch
+     */
+    protected final void forwardBatchDense(int n) {
+        final int inWidth = weights.getRows();
+        final float[] outValues = batchOutputs.getValues();
+
+        for (int s = 0; s < n; s++) {
+            System.arraycopy(biases, 0, outValues, s * width, width);
+        }
+        Blas.sgemm(n, width, inWidth, batchInputs.getValues(), 0, inWidth, weights.getValues(), 0, width, outValues, 0, width);
+    }
+
+    /**
+     * Adds gradients for layers with 2D weights, from batch deltas
+     * which are already calculated: gradients += transpose(batch inputs) * batch deltas
+     *
+     * @param n number of samples in current batch
+     */
+    protected final void calculateDeltaWeightsDense(int n) {
+        final int inWidth = weights.getRows();
+
+        Blas.sgemmTransA(inWidth, width, n, batchInputs.getValues(), 0, inWidth, batchDeltas.getValues(), 0, width, gradients.getValues(), 0, width);
+
+        calculateDeltaBiasesBatch(n);
+    }
+
+    /**
+     * Adds bias gradients for layers with a single row of units, as sums
+     * of batch deltas for each unit.
+     *
+     * @param n number of samples in current batch
+     */
+    protected final void calculateDeltaBiasesBatch(int n) {
+        final float[] deltaValues = batchDeltas.getValues();
+
+        for (int s = 0; s < n; s++) {
+            final int offset = s * width;
+            for (int deltaCol = 0; deltaCol < width; deltaCol++) {
+                biasGradients[deltaCol] += deltaValues[offset + deltaCol];
+            }
+        }
+    }
+
     public int getWidth() {
         return width;
     }
@@ -194,6 +497,10 @@ public abstract class AbstractLayer implements Layer, Serializable {
         return gradients;
     }
 
+    public final float[] getBiasGradients() {
+        return biasGradients;
+    }
+
     public Tensor getDeltaWeights() {
         return deltaWeights;
     }
@@ -214,6 +521,22 @@ public abstract class AbstractLayer implements Layer, Serializable {
         return deltaBiases;
     }
 
+    public Tensor getPrevGradSqrSum() {
+        return prevGradSqrSum;
+    }
+
+    public Tensor getPrevBiasSqrSum() {
+        return prevBiasSqrSum;
+    }
+
+    public Tensor getPrevDeltaWeightSqrSum() {
+        return prevDeltaWeightSqrSum;
+    }
+
+    public Tensor getPrevDeltaBiasSqrSum() {
+        return prevDeltaBiasSqrSum;
+    }
+
     public final void setOutputs(Tensor outputs) {
         this.outputs = outputs;
     }
@@ -289,15 +612,44 @@ public abstract class AbstractLayer implements Layer, Serializable {
     }
 
     public float getL1() {
-        return weights.sumAbs();
+        return weights != null ? weights.sumAbs() : 0;
     }
 
     public float getL2() {
-        return weights.sumSqr();
+        return weights != null ? weights.sumSqr() : 0;
     }
 
     public void setRegularization(float reg) {
         this.regularization = reg;
     }
 
+    /**
+     * Creates gradient sums for layers serialized before gradients were kept separately from weight changes.
+     */
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        if (gradients == null && deltaWeights != null) {
+            gradients = zerosLike(deltaWeights);
+        }
+        if (biasGradients == null && deltaBiases != null) {
+            biasGradients = new float[deltaBiases.length];
+        }
+    }
+
+    /**
+     * Returns new tensor with the same dimensions as the specified tensor, filled with zeros.
+     */
+    protected static Tensor zerosLike(Tensor t) {
+        switch (t.getDimensions()) {
+            case 1:
+                return new Tensor(t.getCols());
+            case 2:
+                return new Tensor(t.getRows(), t.getCols());
+            case 3:
+                return new Tensor(t.getRows(), t.getCols(), t.getDepth());
+            default:
+                return new Tensor(t.getRows(), t.getCols(), t.getDepth(), t.getFourthDim());
+        }
+    }
+
 }
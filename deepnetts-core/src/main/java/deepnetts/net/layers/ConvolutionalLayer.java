@@ -26,9 +26,14 @@ import deepnetts.core.DeepNetts;
 import deepnetts.util.DeepNettsException;
 import deepnetts.net.weights.RandomWeights;
 import deepnetts.util.Tensor;
+import java.util.Arrays;
 import java.util.logging.Logger;
 import deepnetts.net.layers.activation.ActivationFunction;
+import deepnetts.util.Blas;
+import deepnetts.util.ChannelParallelism;
 import deepnetts.util.Tensors;
+import java.io.IOException;
+import java.io.ObjectInputStream;
 
 
 /**
@@ -41,10 +46,12 @@ import deepnetts.util.Tensors;
  */
 public final class ConvolutionalLayer extends AbstractLayer {
 
+    private static final long serialVersionUID = -5493937840506733362L;
+
     Tensor[] filters;           // each filter corresponds to a single channel. Each filter can be 3D, where 3rd dimension coreesponds to depth in previous layer. TODO: the depth pf th efilter should be tunable
-    Tensor[] deltaWeights;      
+    Tensor[] deltaWeights;      // delta weights for each filter, slices of layer's deltaWeights for all filters
     Tensor[] prevDeltaWeights;  // delta weights from previous iteration (used for momentum)
-    Tensor[] prevGradSums;  // delta weights from previous iteration (used for momentum)
+    Tensor[] prevGradSums;  // sums of squared gradients from previous iterations (used by AdaGrad, RMSProp, AdaDelta and Adam)
 
     /**
      * Convolutional filter width
@@ -82,6 +89,35 @@ public final class ConvolutionalLayer extends AbstractLayer {
 
     int[][][][] maxIdx;
 
+    /**
+     * Use direct convolution loops instead of im2col and matrix multiplication.
+     * Direct convolution is much slower and it is kept as a reference
+     * implementation, to check the results of the faster one.
+     */
+    private boolean directConvolution = false;
+
+    /**
+     * Input values rearranged (im2col) into a matrix with one row for each filter
+     * weight and one column for each output position: [filterDepth*filterHeight*filterWidth x height*width]
+     */
+    private transient float[] inputCols;
+
+    /**
+     * All filters packed into a single matrix, one row for each channel: [depth x filterDepth*filterHeight*filterWidth]
+     */
+    private transient float[] filterMatrix;
+
+    /**
+     * Deltas for previous layer in im2col layout, used to propagate deltas to previous layer.
+     * Not used if previous layer is input layer.
+     */
+    private transient float[] colDeltas;
+
+
+    /**
+     * Number of channels in a group calculated by a single task, when channels are calculated in parallel.
+     */
+    private static final int CHANNEL_BLOCK = 4;
 
     private static final Logger LOG = Logger.getLogger(DeepNetts.class.getName());
 
@@ -146,6 +182,7 @@ public final class ConvolutionalLayer extends AbstractLayer {
         // init output cells, deltas and derivative buffer
         outputs = new Tensor(height, width, depth);
         deltas = new Tensor(height, width, depth);
+        derivatives = new Tensor(height, width, depth);
 
         // init filters(weights)
         filterDepth = prevLayer.getDepth();
@@ -154,6 +191,15 @@ public final class ConvolutionalLayer extends AbstractLayer {
         prevDeltaWeights = new Tensor[depth];
         prevGradSums = new Tensor[depth];
 
+        // gradients, weight changes and optimizer state for all filters are kept in single tensors, one filter after another,
+        // so optimizer can update all filters in one pass. Tensors for each filter are slices of these.
+        // Weight changes are also used as previous weight changes in the next iteration.
+        gradients = new Tensor(filterHeight, filterWidth, filterDepth, depth);
+        super.deltaWeights = new Tensor(filterHeight, filterWidth, filterDepth, depth);
+        super.prevDeltaWeights = super.deltaWeights;
+        prevGradSqrSum = new Tensor(filterHeight, filterWidth, filterDepth, depth);
+        prevDeltaWeightSqrSum = new Tensor(filterHeight, filterWidth, filterDepth, depth);
+
         int inputCount = (filterWidth * filterHeight + 1) * filterDepth;
 
         for (int ch = 0; ch < filters.length; ch++) {
@@ -161,18 +207,36 @@ public final class ConvolutionalLayer extends AbstractLayer {
             RandomWeights.uniform(filters[ch].getValues(), inputCount); 
             //RandomWeights.normal(filters[ch].getValues()); 
 
-            deltaWeights[ch] = new Tensor(filterHeight, filterWidth, filterDepth);
-            prevDeltaWeights[ch] = new Tensor(filterHeight, filterWidth, filterDepth);
-            prevGradSums[ch] = new Tensor(filterHeight, filterWidth, filterDepth);
+            deltaWeights[ch] = super.deltaWeights.slice(ch);
+            prevDeltaWeights[ch] = deltaWeights[ch];
+            prevGradSums[ch] = prevGradSqrSum.slice(ch);
         }
 
         // and biases              
         biases = new float[depth]; 
         deltaBiases = new float[depth];
-        prevDeltaBiases = new float[depth];
+        prevDeltaBiases = deltaBiases;
+        biasGradients = new float[depth];
         prevBiasSqrSum = new Tensor(depth);
+        prevDeltaBiasSqrSum = new Tensor(depth);
         //RandomWeights.randomize(biases);        // sometimes the init to 0 for relu 0.1
         Tensor.fill(biases, 0.1f);        
+
+        initBuffers();
+    }
+
+    /**
+     * Creates scratch buffers used for im2col convolution.
+     * Buffers are not serialized, so this is also called after network is loaded from file.
+     */
+    private void initBuffers() {
+        final int filterSize = filterWidth * filterHeight * filterDepth;
+        inputCols = new float[filterSize * width * height];
+        filterMatrix = new float[depth * filterSize];
+
+        if (!(prevLayer instanceof InputLayer)) {
+            colDeltas = new float[filterSize * width * height];
+        }
     }
 
     /**
@@ -181,8 +245,131 @@ public final class ConvolutionalLayer extends AbstractLayer {
      */
     @Override
     public void forward() {
-        for (int ch = 0; ch < this.depth; ch++) {
-            forwardForChannel(ch);
+        if (directConvolution) {
+            final long work = (long) depth * width * height * filterWidth * filterHeight * filterDepth;
+            ChannelParallelism.forEach(depth, work, this::forwardForChannel);
+        } else {
+            forwardIm2Col();
+        }
+    }
+
+    /**
+     * Performs forward pass for all channels at once, as a single matrix multiplication
+     * of filters matrix and im2col matrix of inputs: outputs = filters * im2col(inputs)
+     */
+    private void forwardIm2Col() {
+        if (inputCols == null) {
+            initBuffers();
+        }
+
+        final int filterSize = filterWidth * filterHeight * filterDepth;
+        final int outSize = width * height;
+        final float[] outValues = outputs.getValues();
+
+        im2col(inputs.getValues(), 0, inputCols);
+        packFilters();
+
+        // when calculated in parallel, each task multiplies a group of filter rows, otherwise all at once
+        final long work = (long) depth * outSize * filterSize;
+        final int blockSize = ChannelParallelism.isParallel(depth, work) ? CHANNEL_BLOCK : depth;
+        final int blockCount = (depth + blockSize - 1) / blockSize;
+
+        ChannelParallelism.forEach(blockCount, work, block -> {
+            final int fromCh = block * blockSize;
+            final int toCh = Math.min(depth, fromCh + blockSize);
+
+            for (int ch = fromCh; ch < toCh; ch++) {
+                Arrays.fill(outValues, ch * outSize, (ch + 1) * outSize, biases[ch]);
+            }
+
+            Blas.sgemm(toCh - fromCh, outSize, filterSize, filterMatrix, fromCh * filterSize, filterSize, inputCols, 0, outSize, outValues, fromCh * outSize, outSize);
+
+            activate(fromCh * outSize, toCh * outSize);
+        });
+    }
+
+    /**
+     * Copies all filters into filters matrix, one filter per row.
+     */
+    private void packFilters() {
+        final int filterSize = filterWidth * filterHeight * filterDepth;
+        for (int ch = 0; ch < depth; ch++) {
+            System.arraycopy(filters[ch].getValues(), 0, filterMatrix, ch * filterSize, filterSize);
+        }
+    }
+
+    /**
+     * Forward pass for a batch of samples. Each sample is calculated as
+     * a matrix multiplication of filters matrix and im2col matrix of sample's inputs.
+     *
+     * @param n number of samples in current batch
+     */
+    @Override
+    public void forwardBatch(int n) {
+        if (inputCols == null) {
+            initBuffers();
+        }
+
+        final int filterSize = filterWidth * filterHeight * filterDepth;
+        final int outSize = width * height;
+        final int inputSize = inputs.size();
+        final float[] inValues = batchInputs.getValues();
+        final float[] outValues = batchOutputs.getValues();
+
+        packFilters();
+
+        for (int s = 0; s < n; s++) {
+            final int outOffset = s * depth * outSize;
+
+            im2col(inValues, s * inputSize, inputCols);
+            for (int ch = 0; ch < depth; ch++) {
+                Arrays.fill(outValues, outOffset + ch * outSize, outOffset + (ch + 1) * outSize, biases[ch]);
+            }
+            Blas.sgemm(depth, outSize, filterSize, filterMatrix, 0, filterSize, inputCols, 0, outSize, outValues, outOffset, outSize);
+        }
+
+        activateBatch(0, n * depth * outSize);
+    }
+
+    /**
+     * Rearranges input values into a matrix where each column contains all input
+     * values covered by filter at corresponding output position. Row order
+     * is the same as order of values in filter tensor (depth, row, col).
+     * Positions outside of input (padding) are filled with zeros.
+     *
+     * @param in input values
+     * @param inOffset offset of the first input value in array
+     * @param cols destination matrix [filterDepth*filterHeight*filterWidth x height*width]
+     */
+    private void im2col(final float[] in, final int inOffset, final float[] cols) {
+        final int inRows = inputs.getRows();
+        final int inCols = inputs.getCols();
+        final int outSize = width * height;
+        int colsRow = 0;
+
+        for (int fz = 0; fz < filterDepth; fz++) {
+            for (int fr = 0; fr < filterHeight; fr++) {
+                for (int fc = 0; fc < filterWidth; fc++) {
+                    final int rowOffset = colsRow * outSize;
+
+                    for (int outRow = 0; outRow < height; outRow++) {
+                        final int inRow = outRow * stride + fr - fCenterY;
+                        final int idx = rowOffset + outRow * width;
+
+                        if (inRow < 0 || inRow >= inRows) {
+                            Arrays.fill(cols, idx, idx + width, 0);
+                            continue;
+                        }
+
+                        final int inRowOffset = inOffset + (fz * inRows + inRow) * inCols;
+                        for (int outCol = 0; outCol < width; outCol++) {
+                            final int inCol = outCol * stride + fc - fCenterX;
+                            cols[idx + outCol] = (inCol < 0 || inCol >= inCols) ? 0 : in[inRowOffset + inCol];
+                        }
+                    }
+                    colsRow++;
+                }
+            }
         }
     }
 
@@ -216,13 +403,13 @@ public final class ConvolutionalLayer extends AbstractLayer {
                     }
                 }
 
-                // apply activation function
-                final float out = activation.getValue(outputs.get(outRow, outCol, ch));
-                outputs.set(outRow, outCol, ch, out);
                 outCol++; 
             }
             outRow++; 
         }
+
+        // apply activation function to all outputs of this channel
+        activate(ch * width * height, (ch + 1) * width * height);
     }
 
     /**
@@ -231,6 +418,8 @@ public final class ConvolutionalLayer extends AbstractLayer {
      */
     @Override
     public void backward() {
+        prepareDerivatives();
+
         if (nextLayer instanceof FullyConnectedLayer) {
             backwardFromFullyConnected();
         }
@@ -242,41 +431,80 @@ public final class ConvolutionalLayer extends AbstractLayer {
         if (nextLayer instanceof ConvolutionalLayer) {
             backwardFromConvolutional();
         }
+
+        calculateDeltaWeights();
     }
 
-    /**
-     * Backward pass when next layer is fully connected.
-     */
-    private void backwardFromFullyConnected() {
-        deltas.fill(0); 
-        for (int ch = 0; ch < this.depth; ch++) {
-            backwardFromFullyConnectedForChannel(ch);
+    @Override
+    public void initBatch(int capacity) {
+        super.initBatch(capacity);
+        if (inputCols == null) {
+            initBuffers();
         }
     }
-    
 
-    private void backwardFromFullyConnectedForChannel(int ch) {
-        for (int row = 0; row < this.height; row++) {
-            for (int col = 0; col < this.width; col++) {
-                final float actDerivative = activation.getPrime(outputs.get(row, col, ch)); // dy/ds
-                for (int ndC = 0; ndC < nextLayer.deltas.getCols(); ndC++) {
-                    final float delta = nextLayer.deltas.get(ndC) * nextLayer.weights.get(col, row, ch, ndC) * actDerivative;
-                    deltas.add(row, col, ch, delta);
+    /**
+     * Backward pass for a batch of samples. Always uses im2col convolution.
+     *
+     * @param n number of samples in current batch
+     */
+    @Override
+    public void backwardBatch(int n) {
+        final int size = width * height * depth;
+        final float[] deltaValues = batchDeltas.getValues();
+        prepareBatchDerivatives(n);
+        final float[] derivativeValues = batchDerivatives.getValues();
+
+        if (nextLayer instanceof FullyConnectedLayer) {
+            ((FullyConnectedLayer) nextLayer).backpropagateBatchDeltas(n, deltaValues);
+            for (int i = 0; i < n * size; i++) {
+                deltaValues[i] *= derivativeValues[i];
+            }
+        } else if (nextLayer instanceof MaxPoolingLayer) {
+            final MaxPoolingLayer nextPoolLayer = (MaxPoolingLayer) nextLayer;
+            final int nextSize = nextLayer.width * nextLayer.height * nextLayer.depth;
+            final float[] nextDeltaValues = nextLayer.batchDeltas.getValues();
+
+            Arrays.fill(deltaValues, 0, n * size, 0);
+            for (int s = 0; s < n; s++) {
+                for (int i = 0; i < nextSize; i++) {
+                    final int idx = s * size + nextPoolLayer.batchMaxIdx[s * nextSize + i];
+                    deltaValues[idx] = nextDeltaValues[s * nextSize + i] * derivativeValues[idx];
                 }
             }
-        } 
+        } else if (nextLayer instanceof ConvolutionalLayer) {
+            final ConvolutionalLayer nextConvLayer = (ConvolutionalLayer) nextLayer;
+            nextConvLayer.backpropagateBatchDeltas(n, batchDeltas);
+
+            final float divisor = nextConvLayer.filterWidth * nextConvLayer.filterHeight * nextConvLayer.filterDepth;
+            for (int i = 0; i < n * size; i++) {
+                deltaValues[i] = deltaValues[i] * derivativeValues[i] / divisor;
+            }
+        }
 
-        calculateDeltaWeightsForChannel(ch); 
-    }  
+        calculateDeltaWeightsBatch(n);
+    }
+
+    /**
+     * Backward pass when next layer is fully connected.
+     */
+    private void backwardFromFullyConnected() {
+        ((FullyConnectedLayer) nextLayer).backpropagateDeltas(deltas);
+
+        final float[] deltaValues = deltas.getValues();
+        final float[] derivativeValues = derivatives.getValues();
+        for (int i = 0; i < deltaValues.length; i++) {
+            deltaValues[i] *= derivativeValues[i]; // dy/ds
+        }
+    }
 
     private void backwardFromMaxPooling() {
         final MaxPoolingLayer nextPoolLayer = (MaxPoolingLayer) nextLayer;
         maxIdx = nextPoolLayer.maxIdx; 
         deltas.fill(0);
 
-        for (int ch = 0; ch < this.depth; ch++) {
-            backwardFromMaxPoolingForChannel(ch);
-        }
+        final long work = (long) depth * nextLayer.width * nextLayer.height;
+        ChannelParallelism.forEach(depth, work, this::backwardFromMaxPoolingForChannel);
     }
 
 
@@ -293,19 +521,37 @@ public final class ConvolutionalLayer extends AbstractLayer {
                 final int maxR = maxIdx[ch][dr][dc][0];
                 final int maxC = maxIdx[ch][dr][dc][1];
 
-                final float derivative = activation.getPrime(outputs.get(maxR, maxC, ch));
+                final float derivative = derivatives.get(maxR, maxC, ch);
                 deltas.set(maxR, maxC, ch, nextLayerDelta * derivative);
             }
         } 
-
-        calculateDeltaWeightsForChannel(ch);
     }
 
+    /**
+     * Backward pass when next layer is convolutional.
+     * Deltas from the next layer are propagated through its filters
+     * (as filters transposed * next layer deltas, followed by col2im),
+     * multiplied with derivative of activation function, and divided by next layer's filter size.
+     */
     private void backwardFromConvolutional() {
-        deltas.fill(0);
+        final ConvolutionalLayer nextConvLayer = (ConvolutionalLayer) nextLayer;
 
-        for (int ch = 0; ch < this.depth; ch++) {
-            backwardFromConvolutionalForChannel(ch);
+        if (nextConvLayer.directConvolution) {
+            deltas.fill(0);
+            for (int ch = 0; ch < this.depth; ch++) {
+                backwardFromConvolutionalForChannel(ch);
+            }
+            return;
+        }
+
+        nextConvLayer.backpropagateDeltas(deltas);
+
+        final float divisor = nextConvLayer.filterWidth * nextConvLayer.filterHeight * nextConvLayer.filterDepth;
+        final float[] deltaValues = deltas.getValues();
+        final float[] derivativeValues = derivatives.getValues();
+
+        for (int i = 0; i < deltaValues.length; i++) {
+            deltaValues[i] = deltaValues[i] * derivativeValues[i] / divisor;
         }
     }
     
@@ -328,19 +574,173 @@ public final class ConvolutionalLayer extends AbstractLayer {
                                     continue;
                                 }
 
-                                final float derivative = activation.getPrime(outputs.get(row, col, fz)); 
+                                final float derivative = derivatives.get(row, col, fz); 
                                 deltas.add(row, col, fz, nextLayerDelta * nextConvLayer.filters[ndZ].get(fr, fc, fz) * derivative);
                             }
                         }
-                   deltas.div(nextConvLayer.filterWidth*nextConvLayer.filterHeight*nextConvLayer.filterDepth);
                 }
             }
         }    
-        
-        calculateDeltaWeightsForChannel(fz);
+
+        // divide by next layer's filter size once, after all deltas for this channel are summed
+        final float divisor = nextConvLayer.filterWidth * nextConvLayer.filterHeight * nextConvLayer.filterDepth;
+        for (int row = 0; row < height; row++) {
+            for (int col = 0; col < width; col++) {
+                deltas.set(row, col, fz, deltas.get(row, col, fz) / divisor);
+            }
+        }
     }    
 
-    
+    /**
+     * Propagates deltas of this layer to the outputs of previous layer, and
+     * stores them in the given tensor: prevDeltas = col2im(transpose(filters) * deltas)
+     * Uses filters matrix and buffers from the last forward pass.
+     *
+     * @param prevDeltas tensor to store deltas for previous layer outputs
+     */
+    void backpropagateDeltas(final Tensor prevDeltas) {
+        final int filterSize = filterWidth * filterHeight * filterDepth;
+        final int outSize = width * height;
+
+        Arrays.fill(colDeltas, 0);
+        Blas.sgemmTransA(filterSize, outSize, depth, filterMatrix, 0, filterSize, deltas.getValues(), 0, outSize, colDeltas, 0, outSize);
+
+        prevDeltas.fill(0);
+        col2im(colDeltas, prevDeltas.getValues(), 0);
+    }
+
+    /**
+     * Propagates batch deltas of this layer to the batch outputs of previous layer,
+     * sample by sample, and stores them in the given tensor.
+     *
+     * @param n number of samples in current batch
+     * @param prevDeltas tensor to store batch deltas for previous layer
+     */
+    void backpropagateBatchDeltas(final int n, final Tensor prevDeltas) {
+        final int filterSize = filterWidth * filterHeight * filterDepth;
+        final int outSize = width * height;
+        final int inputSize = inputs.size();
+        final float[] deltaValues = batchDeltas.getValues();
+        final float[] prevDeltaValues = prevDeltas.getValues();
+
+        Arrays.fill(prevDeltaValues, 0, n * inputSize, 0);
+        for (int s = 0; s < n; s++) {
+            Arrays.fill(colDeltas, 0);
+            Blas.sgemmTransA(filterSize, outSize, depth, filterMatrix, 0, filterSize, deltaValues, s * depth * outSize, outSize, colDeltas, 0, outSize);
+            col2im(colDeltas, prevDeltaValues, s * inputSize);
+        }
+    }
+
+    /**
+     * Reverse of im2col operation: adds values from columns matrix to
+     * corresponding positions in input shaped tensor.
+     *
+     * @param cols columns matrix [filterDepth*filterHeight*filterWidth x height*width]
+     * @param in input shaped values to add to
+     * @param inOffset offset of the first input value in array
+     */
+    private void col2im(final float[] cols, final float[] in, final int inOffset) {
+        final int inRows = inputs.getRows();
+        final int inCols = inputs.getCols();
+        final int outSize = width * height;
+        int colsRow = 0;
+
+        for (int fz = 0; fz < filterDepth; fz++) {
+            for (int fr = 0; fr < filterHeight; fr++) {
+                for (int fc = 0; fc < filterWidth; fc++) {
+                    final int rowOffset = colsRow * outSize;
+
+                    for (int outRow = 0; outRow < height; outRow++) {
+                        final int inRow = outRow * stride + fr - fCenterY;
+                        if (inRow < 0 || inRow >= inRows) {
+                            continue;
+                        }
+
+                        final int idx = rowOffset + outRow * width;
+                        final int inRowOffset = inOffset + (fz * inRows + inRow) * inCols;
+                        for (int outCol = 0; outCol < width; outCol++) {
+                            final int inCol = outCol * stride + fc - fCenterX;
+                            if (inCol >= 0 && inCol < inCols) {
+                                in[inRowOffset + inCol] += cols[idx + outCol];
+                            }
+                        }
+                    }
+                    colsRow++;
+                }
+            }
+        }
+    }
+
+    /**
+     * Calculates delta weights for all filters, after deltas for this layer are calculated.
+     */
+    private void calculateDeltaWeights() {
+        if (directConvolution) {
+            for (int ch = 0; ch < this.depth; ch++) {
+                calculateDeltaWeightsForChannel(ch);
+            }
+        } else {
+            calculateDeltaWeightsIm2Col();
+        }
+    }
+
+    /**
+     * Adds gradients for all filters at once, as a matrix multiplication
+     * of deltas and transposed im2col matrix of inputs from the forward pass:
+     * gradients += deltas * transpose(im2col(inputs))
+     */
+    private void calculateDeltaWeightsIm2Col() {
+        final int filterSize = filterWidth * filterHeight * filterDepth;
+        final int outSize = width * height;
+        final float[] deltaValues = deltas.getValues();
+
+        Blas.sgemmTransB(depth, filterSize, outSize, deltaValues, 0, outSize, inputCols, 0, outSize, gradients.getValues(), 0, filterSize);
+
+        addBiasGradients(deltaValues, 1);
+    }
+
+    /**
+     * Adds gradients for all filters for a batch of samples, using im2col matrix of each sample.
+     *
+     * @param n number of samples in current batch
+     */
+    private void calculateDeltaWeightsBatch(int n) {
+        final int filterSize = filterWidth * filterHeight * filterDepth;
+        final int outSize = width * height;
+        final int inputSize = inputs.size();
+        final float[] inValues = batchInputs.getValues();
+        final float[] deltaValues = batchDeltas.getValues();
+        final float[] gradValues = gradients.getValues();
+
+        for (int s = 0; s < n; s++) {
+            im2col(inValues, s * inputSize, inputCols);
+            Blas.sgemmTransB(depth, filterSize, outSize, deltaValues, s * depth * outSize, outSize, inputCols, 0, outSize, gradValues, 0, filterSize);
+        }
+
+        addBiasGradients(deltaValues, n);
+    }
+
+    /**
+     * Adds bias gradients for deltas of n samples, as sums of deltas for each channel.
+     *
+     * @param deltaValues deltas for n samples
+     * @param n number of samples
+     */
+    private void addBiasGradients(final float[] deltaValues, final int n) {
+        final int outSize = width * height;
+
+        for (int ch = 0; ch < depth; ch++) {
+            float deltaSum = 0;
+            for (int s = 0; s < n; s++) {
+                final int offset = (s * depth + ch) * outSize;
+                for (int i = offset; i < offset + outSize; i++) {
+                    deltaSum += deltaValues[i];
+                }
+            }
+            biasGradients[ch] += deltaSum;
+        }
+    }
+
     /**
      * Calculates delta weights for the specified channel ch in this
      * convolutional layer.
@@ -348,13 +748,6 @@ public final class ConvolutionalLayer extends AbstractLayer {
      * @param ch channel/depth index
      */
     private void calculateDeltaWeightsForChannel(int ch) {
-        if (!batchMode) {
-            deltaWeights[ch].fill(0); 
-            deltaBiases[ch] = 0;
-        }
-
-         final float divisor = width * height; 
-
         // assumes that deltas from the next layer are allready propagated
         // calculate weight changes in filters
         for (int deltaRow = 0; deltaRow < deltas.getRows(); deltaRow++) {
@@ -373,66 +766,61 @@ public final class ConvolutionalLayer extends AbstractLayer {
 
                             final float input = inputs.get(inRow, inCol, fz); // get input for this output and weight; padding?  da li ovde imam kanal?
                             final float grad = deltas.get(deltaRow, deltaCol, ch) * input;
-                            
-                            
-                            float deltaWeight = 0;  
-                            switch (optimizerType) {
-                                case SGD:
-                                      deltaWeight = optim.calculateDeltaWeight(grad);
-                                    break;
-                                default:
-                                    throw new DeepNettsException("Optimizer not supported!");
-                            }
-                            deltaWeight /= divisor;  // da li je ovo matematicki tacno? momentum baca nana ako ovog nema
-                            deltaWeights[ch].add(fr, fc, fz, deltaWeight);
+                            gradients.add(fr, fc, fz, ch, grad);
                         }
                     }
                 }
-                float deltaBias = 0;
-                switch (optimizerType) {
-                    case SGD:
-                         deltaBias = optim.calculateDeltaBias(deltas.get(deltaRow, deltaCol, ch), deltaCol);
-                        break;
-                    default:
-                         throw new DeepNettsException("Optimizer not supported!");
-                }
-                deltaBiases[ch] /= divisor;
-                deltaBiases[ch] += deltaBias;
+                biasGradients[ch] += deltas.get(deltaRow, deltaCol, ch);
             }
         }
     }
 
     /**
-     * Apply weight changes calculated in backward pass
+     * Calculates weight changes for all filters from gradients summed in backward pass, and applies them.
+     * Gradients are averaged over samples and over output positions of each channel.
      */
     @Override
     public void applyWeightChanges() {
+        final float divisor = width * height * (batchMode ? batchSize : 1);
+        gradients.div(divisor);
+        Tensors.div(biasGradients, divisor);
 
-        if (batchMode) {
-            Tensors.div(deltaBiases, batchSize);
-        }
+        optim.calculateDeltaWeights(gradients.getValues(), super.deltaWeights.getValues());
+        optim.calculateDeltaBiases(biasGradients, deltaBiases);
 
-        Tensor.copy(deltaBiases, prevDeltaBiases);  // save this for momentum
+        // save this for momentum, if weight changes are not already used as previous ones
+        if (super.prevDeltaWeights != super.deltaWeights) {
+            Tensor.copy(super.deltaWeights, super.prevDeltaWeights);
+        }
+        if (prevDeltaBiases != deltaBiases) {
+            Tensor.copy(deltaBiases, prevDeltaBiases);
+        }
 
         for (int ch = 0; ch < depth; ch++) {
-            if (batchMode) { 
-                deltaWeights[ch].div(batchSize);
-            }
-
-            Tensor.copy(deltaWeights[ch], prevDeltaWeights[ch]); 
-
             filters[ch].add(deltaWeights[ch]);
-            biases[ch] += deltaBiases[ch];
-
-            if (batchMode) {    // reset delta weights for next batch
-                deltaWeights[ch].fill(0);
-            }
         }
+        Tensors.add(biases, deltaBiases);
 
-        if (batchMode) { // reset delta biases for next batch
-            Tensor.fill(deltaBiases, 0);
-        }
+        // reset gradients for next iteration
+        gradients.fill(0);
+        Tensor.fill(biasGradients, 0);
+    }
 
+    @Override
+    public void shareWeightsWith(AbstractLayer layer) {
+        final ConvolutionalLayer convLayer = (ConvolutionalLayer) layer;
+        filters = convLayer.filters;
+        prevDeltaWeights = convLayer.prevDeltaWeights;
+        super.shareWeightsWith(layer);
+    }
+
+    @Override
+    public void clearTrainingState() {
+        super.clearTrainingState();
+        deltaWeights = null;
+        prevDeltaWeights = null;
+        prevGradSums = null;
+        colDeltas = null;
     }
 
     public Tensor[] getFilters() {
@@ -479,6 +867,57 @@ public final class ConvolutionalLayer extends AbstractLayer {
         return deltaWeights;
     }
 
+    public boolean isDirectConvolution() {
+        return directConvolution;
+    }
+
+    /**
+     * Switches between fast im2col convolution (default) and reference direct convolution.
+     *
+     * @param directConvolution true to use direct convolution loops
+     */
+    public void setDirectConvolution(boolean directConvolution) {
+        this.directConvolution = directConvolution;
+    }
+
+    /**
+     * Restores training state of layers serialized before derivatives were kept, and before
+     * weight changes and optimizer state of all filters were kept in single tensors.
+     */
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        if (deltas == null) {
+            return; // training state was released
+        }
+
+        if (derivatives == null) {
+            derivatives = new Tensor(height, width, depth);
+        }
+
+        if (super.deltaWeights == null) {
+            gradients = new Tensor(filterHeight, filterWidth, filterDepth, depth);
+            super.deltaWeights = new Tensor(filterHeight, filterWidth, filterDepth, depth);
+            super.prevDeltaWeights = super.deltaWeights;
+            prevGradSqrSum = new Tensor(filterHeight, filterWidth, filterDepth, depth);
+            prevDeltaWeightSqrSum = new Tensor(filterHeight, filterWidth, filterDepth, depth);
+
+            for (int ch = 0; ch < depth; ch++) { // keep previous weight changes and gradient sums
+                final Tensor filterDeltaWeights = super.deltaWeights.slice(ch);
+                final Tensor filterGradSums = prevGradSqrSum.slice(ch);
+                Tensor.copy(prevDeltaWeights[ch], filterDeltaWeights);
+                Tensor.copy(prevGradSums[ch], filterGradSums);
+                deltaWeights[ch] = filterDeltaWeights;
+                prevDeltaWeights[ch] = filterDeltaWeights;
+                prevGradSums[ch] = filterGradSums;
+            }
+
+            System.arraycopy(prevDeltaBiases, 0, deltaBiases, 0, depth);
+            prevDeltaBiases = deltaBiases;
+            biasGradients = new float[depth];
+            prevDeltaBiasSqrSum = new Tensor(depth);
+        }
+    }
+
     @Override
     public String toString() {
         return "Convolutional Layer { filter width:" + filterWidth + ", filter height: " + filterHeight + ", channels: " + depth + ", stride: " + stride + ", activation: " + activationType.name() + "}";
@@ -24,12 +24,17 @@ package deepnetts.net.layers;
 import deepnetts.net.layers.activation.ActivationType;
 import deepnetts.core.DeepNetts;
 import deepnetts.net.layers.activation.ActivationFunction;
+import deepnetts.net.weights.PrecisionType;
 import deepnetts.net.weights.RandomWeights;
+import deepnetts.util.BFloat16;
+import deepnetts.util.Blas;
 import deepnetts.util.Tensor;
+import deepnetts.util.Tensors;
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.util.Arrays;
 import java.util.logging.Logger;
 import deepnetts.util.DeepNettsException;
-import deepnetts.util.Tensors;
 
 /**
  * Fully connected layer is used as hidden layer in the neural network, and it
@@ -42,8 +47,38 @@ import deepnetts.util.Tensors;
  */
 public final class FullyConnectedLayer extends AbstractLayer {
 
+    private static final long serialVersionUID = -8383673021557469094L;
+
     private static final Logger LOG = Logger.getLogger(DeepNetts.class.getName());
 
+    /**
+     * Batch inputs from 3D previous layer, rearranged so that each sample has
+     * the same order of values as weights for a single output: [depth][col][row].
+     * Used only when previous layer is 3D.
+     */
+    private transient float[] flatBatchInputs;
+
+    /**
+     * Inputs of a single sample from 3D previous layer, in the same order as flatBatchInputs.
+     */
+    private transient float[] flatInputs;
+
+    /**
+     * Deltas for 3D previous layer of a single sample, in the same order as flatInputs.
+     */
+    private transient float[] flatDeltas;
+
+    /**
+     * Deltas for 3D previous layer in the same order as flatBatchInputs.
+     */
+    private transient float[] flatBatchDeltas;
+
+    /**
+     * Weights converted to bfloat16, used in forward pass instead of float weights if inference precision is BFLOAT16.
+     * Float weights are released when they are converted, so layer with bfloat16 weights can only be used for prediction.
+     */
+    private short[] bf16Weights;
+
     /**
      * Creates an instance of fully connected layer with specified width (number
      * of neurons) and sigmoid activation function.
@@ -94,12 +129,13 @@ public final class FullyConnectedLayer extends AbstractLayer {
         inputs = prevLayer.outputs;
         outputs = new Tensor(width);
         deltas = new Tensor(width);
+        derivatives = new Tensor(width);
 
         if (prevLayer instanceof FullyConnectedLayer || (prevLayer instanceof InputLayer && prevLayer.height == 1 && prevLayer.depth == 1)) { // ovo ako je prethodni 1d layer, odnosno ako je prethodni fully connected
             weights = new Tensor(prevLayer.width, width);
             deltaWeights = new Tensor(prevLayer.width, width);
             gradients = new Tensor(prevLayer.width, width);
-            prevDeltaWeights = new Tensor(prevLayer.width, width);
+            prevDeltaWeights = deltaWeights;
 
             prevGradSqrSum = new Tensor(prevLayer.width, width);
             prevDeltaWeightSqrSum = new Tensor(prevLayer.width, width);
@@ -116,7 +152,7 @@ public final class FullyConnectedLayer extends AbstractLayer {
             weights = new Tensor(prevLayer.width, prevLayer.height, prevLayer.depth, width);
             deltaWeights = new Tensor(prevLayer.width, prevLayer.height, prevLayer.depth, width);
             gradients = new Tensor(prevLayer.width, prevLayer.height, prevLayer.depth, width);
-            prevDeltaWeights = new Tensor(prevLayer.width, prevLayer.height, prevLayer.depth, width);
+            prevDeltaWeights = deltaWeights;
 
             prevGradSqrSum = new Tensor(prevLayer.width, prevLayer.height, prevLayer.depth, width);
             prevBiasSqrSum = new Tensor(width);
@@ -135,7 +171,8 @@ public final class FullyConnectedLayer extends AbstractLayer {
 
         biases = new float[width];
         deltaBiases = new float[width];
-        prevDeltaBiases = new float[width];
+        prevDeltaBiases = deltaBiases;
+        biasGradients = new float[width];
 
         if (activationType == ActivationType.RELU || activationType == ActivationType.LEAKY_RELU) {
             Tensor.fill(biases, 0.1f);
@@ -145,123 +182,351 @@ public final class FullyConnectedLayer extends AbstractLayer {
 
     }
 
+    /**
+     * Forward pass as a matrix vector multiplication of inputs and weights.
+     * Weights for 1D inputs are stored input by input, so they are read row by row
+     * and used as transposed matrix. Weights for 3D inputs are stored output by output.
+     */
     @Override
     public void forward() {
         outputs.copyFrom(biases);
         
-        if (prevLayer instanceof FullyConnectedLayer || (prevLayer instanceof InputLayer && prevLayer.height == 1 && prevLayer.depth == 1)) {
-            for (int outCol = 0; outCol < outputs.getCols(); outCol++) {
-                for (int inCol = 0; inCol < inputs.getCols(); inCol++) {
-                    outputs.add(outCol, inputs.get(inCol) * weights.get(inCol, outCol));
-                }
-                outputs.set(outCol, activation.getValue(outputs.get(outCol)));
+        if (hasFlatInputs()) {
+            if (bf16Weights != null) {
+                Blas.sgemvTransBf16(inputs.size(), width, bf16Weights, 0, width, inputs.getValues(), 0, outputs.getValues(), 0);
+            } else {
+                Blas.sgemvTrans(inputs.size(), width, weights.getValues(), 0, width, inputs.getValues(), 0, outputs.getValues(), 0);
             }
-            // outputs.apply(activation::getValue);
         } else if ((prevLayer instanceof MaxPoolingLayer) || (prevLayer instanceof ConvolutionalLayer) || (prevLayer instanceof InputLayer)) { // povezi sve na sve
             forwardFrom3DLayer();
         }
 
+        activate(0, width);
     }
 
     private void forwardFrom3DLayer() {
-        for (int outCol = 0; outCol < outputs.getCols(); outCol++) {
-            forwardFrom3DLayerForCell(outCol);
+        final int inputSize = prevLayer.width * prevLayer.height * prevLayer.depth;
+        if (flatInputs == null) {
+            flatInputs = new float[inputSize];
+            flatDeltas = new float[inputSize];
         }
-    }
 
-    private void forwardFrom3DLayerForCell(int outCol) {
-        for (int inDepth = 0; inDepth < inputs.getDepth(); inDepth++) {
-            for (int inRow = 0; inRow < inputs.getRows(); inRow++) {
-                for (int inCol = 0; inCol < inputs.getCols(); inCol++) {
-                    outputs.add(outCol, inputs.get(inRow, inCol, inDepth) * weights.get(inCol, inRow, inDepth, outCol));
-                }
-            }
+        flatten(inputs.getValues(), flatInputs, 1);
+        if (bf16Weights != null) {
+            Blas.sgemvBf16(width, inputSize, bf16Weights, 0, inputSize, flatInputs, 0, outputs.getValues(), 0);
+        } else {
+            Blas.sgemv(width, inputSize, weights.getValues(), 0, inputSize, flatInputs, 0, outputs.getValues(), 0);
         }
-        outputs.set(outCol, activation.getValue(outputs.get(outCol)));
     }
 
+    /**
+     * Backward pass: deltas are calculated from next layer's deltas and weights as
+     * deltas = next weights * next deltas, and gradients are incremented by outer product of inputs and deltas.
+     */
     @Override
     public void backward() {
-        if (!batchMode) {
-            deltaWeights.fill(0);
-            Arrays.fill(deltaBiases, 0);
-        }
+        final float[] deltaValues = deltas.getValues();
+        prepareDerivatives();
+        final float[] derivativeValues = derivatives.getValues();
 
+        // next layer's weights are stored input by input, so each row holds weights of a single unit in this layer
         deltas.fill(0);
+        Blas.sgemv(width, nextLayer.width, nextLayer.weights.getValues(), 0, nextLayer.width, nextLayer.deltas.getValues(), 0, deltaValues, 0);
 
-        for (int deltaCol = 0; deltaCol < deltas.getCols(); deltaCol++) {
-            for (int ndCol = 0; ndCol < nextLayer.deltas.getCols(); ndCol++) {
-                deltas.add(deltaCol, nextLayer.deltas.get(ndCol) * nextLayer.weights.get(deltaCol, ndCol));
-            }
+        for (int deltaCol = 0; deltaCol < width; deltaCol++) {
+            deltaValues[deltaCol] *= derivativeValues[deltaCol];
+        }
 
-            final float delta = deltas.get(deltaCol) * activation.getPrime(outputs.get(deltaCol));
-            deltas.set(deltaCol, delta);
+        if (hasFlatInputs()) {
+            Blas.sger(inputs.size(), width, inputs.getValues(), 0, deltaValues, 0, gradients.getValues(), 0, width);
+        } else {
+            // flat inputs are still there from forward pass of the same sample
+            Blas.sger(width, flatInputs.length, deltaValues, 0, flatInputs, 0, gradients.getValues(), 0, flatInputs.length);
         }
 
-        if ((prevLayer instanceof FullyConnectedLayer)
-                || ((prevLayer instanceof InputLayer) && (prevLayer.height == 1 && prevLayer.depth == 1))) { 
+        Tensors.add(biasGradients, deltaValues);
+    }
+
+    /**
+     * Propagates deltas of this layer to 3D previous layer, and stores them
+     * in the given tensor: prevDeltas = transpose(weights) * deltas
+     * Derivative of previous layer's activation function is not applied.
+     *
+     * @param prevDeltas tensor to store deltas for previous layer outputs
+     */
+    void backpropagateDeltas(final Tensor prevDeltas) {
+        Arrays.fill(flatDeltas, 0);
+        Blas.sgemvTrans(width, flatDeltas.length, weights.getValues(), 0, flatDeltas.length, deltas.getValues(), 0, flatDeltas, 0);
 
-            for (int deltaCol = 0; deltaCol < deltas.getCols(); deltaCol++) { 
-                for (int inCol = 0; inCol < inputs.getCols(); inCol++) {
-                    final float grad = deltas.get(deltaCol) * inputs.get(inCol);
-                    gradients.set(inCol, deltaCol, grad);
+        unflatten(flatDeltas, prevDeltas.getValues(), 1);
+    }
 
-                    final float deltaWeight = optim.calculateDeltaWeight(grad, inCol, deltaCol);
-                    deltaWeights.add(inCol, deltaCol, deltaWeight);
-                }
+    @Override
+    public void initBatch(int capacity) {
+        super.initBatch(capacity);
 
-                final float deltaBias = optim.calculateDeltaBias(deltas.get(deltaCol), deltaCol);
-                deltaBiases[deltaCol] += deltaBias;
+        if (!hasFlatInputs()) {
+            final int inputSize = prevLayer.width * prevLayer.height * prevLayer.depth;
+            flatBatchInputs = new float[capacity * inputSize];
+            flatBatchDeltas = new float[capacity * inputSize];
+        }
+    }
+
+    /**
+     * Returns true if previous layer is a single row of units, false if it is a 3D layer.
+     */
+    private boolean hasFlatInputs() {
+        return prevLayer instanceof FullyConnectedLayer || (prevLayer instanceof InputLayer && prevLayer.height == 1 && prevLayer.depth == 1);
+    }
+
+    /**
+     * Forward pass for a batch of samples, as a single matrix multiplication
+     * of batch inputs and weights.
+     *
+     * @param n number of samples in current batch
+     */
+    @Override
+    public void forwardBatch(int n) {
+        if (hasFlatInputs() && bf16Weights == null) {
+            forwardBatchDense(n);
+        } else {
+            final int inputSize = prevLayer.width * prevLayer.height * prevLayer.depth;
+            final float[] outValues = batchOutputs.getValues();
+
+            for (int s = 0; s < n; s++) {
+                System.arraycopy(biases, 0, outValues, s * width, width);
             }
-        } else if ((prevLayer instanceof InputLayer)
-                || (prevLayer instanceof ConvolutionalLayer)
-                || (prevLayer instanceof MaxPoolingLayer)) {
 
-            backwardTo3DLayer();
+            if (hasFlatInputs()) {
+                Blas.sgemmBf16(n, width, inputSize, batchInputs.getValues(), 0, inputSize, bf16Weights, 0, width, outValues, 0, width);
+            } else {
+                flatten(batchInputs.getValues(), flatBatchInputs, n);
+                // weights for 3D inputs are stored output by output, so they are used as transposed matrix
+                if (bf16Weights != null) {
+                    Blas.sgemmTransBBf16(n, width, inputSize, flatBatchInputs, 0, inputSize, bf16Weights, 0, inputSize, outValues, 0, width);
+                } else {
+                    Blas.sgemmTransB(n, width, inputSize, flatBatchInputs, 0, inputSize, weights.getValues(), 0, inputSize, outValues, 0, width);
+                }
+            }
         }
+
+        activateBatch(0, n * width);
     }
 
-    private void backwardTo3DLayer() {
-        for (int deltaCol = 0; deltaCol < deltas.getCols(); deltaCol++) {
-            backwardTo3DLayerForCell(deltaCol);
+    /**
+     * Backward pass for a batch of samples. Deltas are calculated from
+     * next layer's deltas and weights as batch deltas = next deltas * transpose(next weights).
+     *
+     * @param n number of samples in current batch
+     */
+    @Override
+    public void backwardBatch(int n) {
+        final int nextWidth = nextLayer.width;
+        final float[] deltaValues = batchDeltas.getValues();
+        prepareBatchDerivatives(n);
+        final float[] derivativeValues = batchDerivatives.getValues();
+
+        Arrays.fill(deltaValues, 0, n * width, 0);
+        Blas.sgemmTransB(n, width, nextWidth, nextLayer.batchDeltas.getValues(), 0, nextWidth, nextLayer.weights.getValues(), 0, nextWidth, deltaValues, 0, width);
+
+        for (int i = 0; i < n * width; i++) {
+            deltaValues[i] *= derivativeValues[i];
+        }
+
+        if (hasFlatInputs()) {
+            calculateDeltaWeightsDense(n);
+        } else {
+            calculateDeltaWeightsFrom3DBatch(n);
         }
     }
 
-    private void backwardTo3DLayerForCell(int deltaCol) {
+    /**
+     * Adds gradients for 3D previous layer: gradients += transpose(batch deltas) * flat batch inputs
+     * Flat batch inputs are in the same order as weights tensor.
+     */
+    private void calculateDeltaWeightsFrom3DBatch(int n) {
+        final int inputSize = prevLayer.width * prevLayer.height * prevLayer.depth;
+
+        Blas.sgemmTransA(width, inputSize, n, batchDeltas.getValues(), 0, width, flatBatchInputs, 0, inputSize, gradients.getValues(), 0, inputSize);
+
+        calculateDeltaBiasesBatch(n);
+    }
+
+    /**
+     * Propagates batch deltas of this layer to 3D previous layer, and stores
+     * them in the given array in the layout of previous layer's batch outputs:
+     * prevDeltas = batch deltas * weights
+     * Derivative of previous layer's activation function is not applied.
+     *
+     * @param n number of samples in current batch
+     * @param prevDeltas array to store deltas for previous layer
+     */
+    void backpropagateBatchDeltas(final int n, final float[] prevDeltas) {
+        final int inputSize = prevLayer.width * prevLayer.height * prevLayer.depth;
 
-        for (int inDepth = 0; inDepth < inputs.getDepth(); inDepth++) {
-            for (int inCol = 0; inCol < inputs.getCols(); inCol++) {
-                for (int inRow = 0; inRow < inputs.getRows(); inRow++) {
-                    final float grad = deltas.get(deltaCol) * inputs.get(inRow, inCol, inDepth);
-                    gradients.set(inCol, inRow, inDepth, deltaCol, grad);
-                    final float deltaWeight = optim.calculateDeltaWeight(grad, inCol, inRow, inDepth, deltaCol);
-                    deltaWeights.add(inCol, inRow, inDepth, deltaCol, deltaWeight);
+        Arrays.fill(flatBatchDeltas, 0, n * inputSize, 0);
+        Blas.sgemm(n, inputSize, width, batchDeltas.getValues(), 0, width, weights.getValues(), 0, inputSize, flatBatchDeltas, 0, inputSize);
+
+        unflatten(flatBatchDeltas, prevDeltas, n);
+    }
+
+    /**
+     * Rearranges values of 3D previous layer's samples from [depth][row][col] to [depth][col][row] order.
+     */
+    private void flatten(final float[] src, final float[] dest, final int n) {
+        final int prevWidth = prevLayer.width, prevHeight = prevLayer.height;
+        final int sliceSize = prevWidth * prevHeight;
+        final int inputSize = sliceSize * prevLayer.depth;
+
+        for (int s = 0; s < n; s++) {
+            for (int z = 0; z < prevLayer.depth; z++) {
+                final int offset = s * inputSize + z * sliceSize;
+                for (int row = 0; row < prevHeight; row++) {
+                    for (int col = 0; col < prevWidth; col++) {
+                        dest[offset + col * prevHeight + row] = src[offset + row * prevWidth + col];
+                    }
                 }
             }
         }
+    }
 
-        final float deltaBias = optim.calculateDeltaBias(deltas.get(deltaCol), deltaCol);
-        deltaBiases[deltaCol] += deltaBias;
+    /**
+     * Reverse of flatten: rearranges values from [depth][col][row] to [depth][row][col] order.
+     */
+    private void unflatten(final float[] src, final float[] dest, final int n) {
+        final int prevWidth = prevLayer.width, prevHeight = prevLayer.height;
+        final int sliceSize = prevWidth * prevHeight;
+        final int inputSize = sliceSize * prevLayer.depth;
+
+        for (int s = 0; s < n; s++) {
+            for (int z = 0; z < prevLayer.depth; z++) {
+                final int offset = s * inputSize + z * sliceSize;
+                for (int row = 0; row < prevHeight; row++) {
+                    for (int col = 0; col < prevWidth; col++) {
+                        dest[offset + row * prevWidth + col] = src[offset + col * prevHeight + row];
+                    }
+                }
+            }
+        }
     }
 
     @Override
     public void applyWeightChanges() {
-        if (batchMode) {
-            deltaWeights.div(batchSize);
-            Tensors.div(deltaBiases, batchSize);
+        applyGradients();
+    }
+
+    /**
+     * Sets precision of weights used for prediction. With BFLOAT16, weights are converted to bfloat16
+     * values which take half of the memory, and forward pass reads them instead of float weights.
+     * Float weights and training state are released, so layer can not be trained after this,
+     * and batch buffers have to be created again with initBatch. Precision can not be changed back to FLOAT32.
+     * After this getWeights returns null, and values of weights can be read with copyWeights.
+     *
+     * @param precision precision of weights used for prediction
+     */
+    public void setInferencePrecision(PrecisionType precision) {
+        if (precision == PrecisionType.BFLOAT16) {
+            if (bf16Weights == null) {
+                bf16Weights = BFloat16.pack(weights.getValues());
+                weights = null;
+                clearTrainingState();
+            }
+        } else if (bf16Weights != null) {
+            throw new DeepNettsException("Float weights were released when inference precision was set to BFLOAT16!");
         }
+    }
 
-        Tensor.copy(deltaWeights, prevDeltaWeights); // save as prev delta weight
-        Tensor.copy(deltaBiases, prevDeltaBiases);
+    public PrecisionType getInferencePrecision() {
+        return bf16Weights != null ? PrecisionType.BFLOAT16 : PrecisionType.FLOAT32;
+    }
 
-        weights.add(deltaWeights);
-        Tensors.add(biases, deltaBiases);
+    /**
+     * Returns a copy of weights of this layer, with float values of bfloat16 weights if they are used.
+     * Changes of the returned tensor do not change weights of this layer.
+     * Unlike getWeights, which returns null after float weights are released, this works with both precisions.
+     *
+     * @return new tensor with values of weights of this layer
+     */
+    public Tensor copyWeights() {
+        final Tensor floatWeights = hasFlatInputs() ? new Tensor(prevLayer.width, width) : new Tensor(prevLayer.width, prevLayer.height, prevLayer.depth, width);
+        if (bf16Weights != null) {
+            BFloat16.unpack(bf16Weights, 0, floatWeights.getValues(), 0, bf16Weights.length);
+        } else {
+            Tensor.copy(weights, floatWeights);
+        }
+        return floatWeights;
+    }
+
+    /**
+     * Sum of absolute values of weights, read directly from bfloat16 weights if they are used.
+     */
+    @Override
+    public float getL1() {
+        if (bf16Weights == null) {
+            return super.getL1();
+        }
+        float sum = 0;
+        for (final short w : bf16Weights) {
+            sum += Math.abs(BFloat16.toFloat(w));
+        }
+        return sum;
+    }
+
+    /**
+     * Sum of squared weights, read directly from bfloat16 weights if they are used.
+     */
+    @Override
+    public float getL2() {
+        if (bf16Weights == null) {
+            return super.getL2();
+        }
+        float sum = 0;
+        for (final short w : bf16Weights) {
+            final float value = BFloat16.toFloat(w);
+            sum += value * value;
+        }
+        return sum;
+    }
+
+    /**
+     * Sets weights of this layer. If bfloat16 weights are used, specified weights are converted to bfloat16.
+     *
+     * @param weights new weights
+     */
+    @Override
+    public void setWeights(Tensor weights) {
+        if (bf16Weights != null) {
+            BFloat16.pack(weights.getValues(), bf16Weights);
+        } else {
+            super.setWeights(weights);
+        }
+    }
 
-        if (batchMode) {
-            deltaWeights.fill(0);
-            Tensor.fill(deltaBiases, 0);
+    @Override
+    public void setWeights(String weightStr) {
+        if (bf16Weights != null) {
+            final Tensor floatWeights = copyWeights();
+            floatWeights.setValuesFromString(weightStr);
+            setWeights(floatWeights);
+        } else {
+            super.setWeights(weightStr);
         }
+    }
+
+    @Override
+    public void shareWeightsWith(AbstractLayer layer) {
+        super.shareWeightsWith(layer);
+        bf16Weights = ((FullyConnectedLayer) layer).bf16Weights;
+    }
 
+    /**
+     * Creates derivatives for layers serialized before they were kept.
+     */
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        if (deltas != null && derivatives == null) {
+            derivatives = new Tensor(width);
+        }
     }
 
     @Override
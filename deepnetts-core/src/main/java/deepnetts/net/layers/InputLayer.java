@@ -21,6 +21,7 @@
  */
 package deepnetts.net.layers;
 
+import deepnetts.data.MLDataItem;
 import deepnetts.util.Tensor;
 
 /**
@@ -31,6 +32,13 @@ import deepnetts.util.Tensor;
  */
 public class InputLayer extends AbstractLayer {
 
+    private static final long serialVersionUID = 4852747073698145422L;
+
+    /**
+     * Values of input tensor views and data items (which can not be used directly as input values).
+     */
+    private transient float[] inputBuffer;
+
     /**
      * Creates input layer with specified width, height, and depth (number of
      * channels).
@@ -87,7 +95,62 @@ public class InputLayer extends AbstractLayer {
      */
     public void setInput(Tensor in) {
         // TODO: check input tensor dimensions and throw exception if they dont match
-        inputs.setValues(in.getValues());
+        if (!in.isView()) {
+            inputs.setValues(in.getValues());
+        } else { // views share array with other tensor, so copy their values into own buffer
+            if (inputBuffer == null) {
+                inputBuffer = new float[width * height * depth];
+            }
+            in.copyTo(inputBuffer, 0);
+            inputs.setValues(inputBuffer);
+        }
+    }
+
+    /**
+     * Sets network input from the specified data item, which copies
+     * (and converts, if needed) its input values into input buffer of this layer.
+     *
+     * @param item data item with network input
+     */
+    public void setInput(MLDataItem item) {
+        if (inputBuffer == null) {
+            inputBuffer = new float[width * height * depth];
+        }
+        item.copyInputTo(inputBuffer, 0);
+        inputs.setValues(inputBuffer);
+    }
+
+    /**
+     * Creates batch inputs for specified max number of samples.
+     *
+     * @param capacity max number of samples in a batch
+     */
+    @Override
+    public void initBatch(int capacity) {
+        super.initBatch(capacity);
+        batchInputs = batchOutputs;
+        batchDeltas = null;
+    }
+
+    /**
+     * Sets input for the sample at specified position in a batch.
+     * Input values are copied into batch inputs.
+     *
+     * @param idx position of the sample in a batch
+     * @param in input tensor
+     */
+    public void setBatchInput(int idx, Tensor in) {
+        in.copyTo(batchInputs.getValues(), idx * width * height * depth);
+    }
+
+    /**
+     * Sets input for the sample at specified position in a batch, from the specified data item.
+     *
+     * @param idx position of the sample in a batch
+     * @param item data item with network input
+     */
+    public void setBatchInput(int idx, MLDataItem item) {
+        item.copyInputTo(batchInputs.getValues(), idx * width * height * depth);
     }
 
     /**
@@ -106,6 +169,22 @@ public class InputLayer extends AbstractLayer {
         throw new IllegalStateException("This method does nothing and should never be called");
     }
 
+    /**
+     * This method does nothing in input layer
+     */
+    @Override
+    public void forwardBatch(int n) {
+        throw new IllegalStateException("This method does nothing and should never be called");
+    }
+
+    /**
+     * This method does nothing in input layer
+     */
+    @Override
+    public void backwardBatch(int n) {
+        throw new IllegalStateException("This method does nothing and should never be called");
+    }
+
     /**
      * This method does nothing in input layer
      */
@@ -23,6 +23,7 @@ package deepnetts.net.layers;
 
 import deepnetts.core.DeepNetts;
 import deepnetts.net.ConvolutionalNetwork;
+import deepnetts.util.ChannelParallelism;
 import deepnetts.util.Tensor;
 import java.util.concurrent.Callable;
 import java.util.concurrent.CyclicBarrier;
@@ -37,6 +38,8 @@ import java.util.logging.Logger;
  */
 public final class MaxPoolingLayer extends AbstractLayer {
 
+    private static final long serialVersionUID = -5187033033631855969L;
+
     /**
      * Filter dimensions.
      *
@@ -58,6 +61,13 @@ public final class MaxPoolingLayer extends AbstractLayer {
      */
     int maxIdx[][][][];
 
+    /**
+     * Max activation idxs for a batch of samples.
+     *
+     * For each output of each sample, remember idx of max input within the sample (channel*rows*cols + row*cols + col).
+     */
+    transient int[] batchMaxIdx;
+
     private static final Logger LOG = Logger.getLogger(DeepNetts.class.getName());
     
     /**
@@ -98,9 +108,8 @@ public final class MaxPoolingLayer extends AbstractLayer {
      */
     @Override
     public void forward() {
-        for (int ch = 0; ch < this.depth; ch++) {  
-            forwardForChannel(ch);
-        }
+        final long work = (long) depth * width * height * filterWidth * filterHeight;
+        ChannelParallelism.forEach(depth, work, this::forwardForChannel);
     }
 
     private void forwardForChannel(int ch) {
@@ -156,30 +165,19 @@ public final class MaxPoolingLayer extends AbstractLayer {
     }
 
     private void backwardFromFullyConnected() {
-        deltas.fill(0); 
-
-        for (int ch = 0; ch < deltas.getDepth(); ch++) {
-            backwardFromFullyConnectedForChannel(ch);
-        }
-    }
-    
-    private void backwardFromFullyConnectedForChannel(int ch) {
-        for (int row = 0; row < deltas.getRows(); row++) {
-            for (int col = 0; col < deltas.getCols(); col++) {
-                for (int ndC = 0; ndC < nextLayer.deltas.getCols(); ndC++) {
-                    final float nextLayerDelta = nextLayer.deltas.get(ndC);
-                    final float weight = nextLayer.weights.get(col, row, ch, ndC);
-                    deltas.add(row, col, ch, nextLayerDelta * weight);
-                }
-            }
-        }
+        ((FullyConnectedLayer) nextLayer).backpropagateDeltas(deltas);
     }
     
     private void backwardFromConvolutional() {
-        deltas.fill(0);
+        final ConvolutionalLayer nextConvLayer = (ConvolutionalLayer) nextLayer;
 
-        for (int ch = 0; ch < depth; ch++) {
-            backwardFromConvolutionalForChannel(ch);
+        if (nextConvLayer.isDirectConvolution()) {
+            deltas.fill(0);
+            for (int ch = 0; ch < depth; ch++) {
+                backwardFromConvolutionalForChannel(ch);
+            }
+        } else {
+            nextConvLayer.backpropagateDeltas(deltas);
         }
     }
     
@@ -212,6 +210,73 @@ public final class MaxPoolingLayer extends AbstractLayer {
     }
 
 
+    @Override
+    public void initBatch(int capacity) {
+        super.initBatch(capacity);
+        batchMaxIdx = new int[capacity * width * height * depth];
+    }
+
+    /**
+     * Max pooling forward pass for a batch of samples.
+     *
+     * @param n number of samples in current batch
+     */
+    @Override
+    public void forwardBatch(int n) {
+        final int inRows = inputs.getRows();
+        final int inCols = inputs.getCols();
+        final int inSize = inRows * inCols * depth;
+        final int outSize = width * height * depth;
+        final float[] inValues = batchInputs.getValues();
+        final float[] outValues = batchOutputs.getValues();
+
+        for (int s = 0; s < n; s++) {
+            final int inOffset = s * inSize;
+            int outIdx = s * outSize;
+
+            for (int ch = 0; ch < depth; ch++) {
+                final int chOffset = ch * inRows * inCols;
+
+                for (int outRow = 0; outRow < height; outRow++) {
+                    for (int outCol = 0; outCol < width; outCol++) {
+                        final int inRow = outRow * stride;
+                        final int inCol = outCol * stride;
+
+                        int maxPos = chOffset + inRow * inCols + inCol;
+                        float max = inValues[inOffset + maxPos];
+                        for (int fr = 0; fr < filterHeight; fr++) {
+                            for (int fc = 0; fc < filterWidth; fc++) {
+                                final int pos = chOffset + (inRow + fr) * inCols + inCol + fc;
+                                if (max < inValues[inOffset + pos]) {
+                                    max = inValues[inOffset + pos];
+                                    maxPos = pos;
+                                }
+                            }
+                        }
+
+                        batchMaxIdx[outIdx] = maxPos;
+                        outValues[outIdx] = max;
+                        outIdx++;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Backward pass for a batch of samples, propagates deltas from the next layer.
+     *
+     * @param n number of samples in current batch
+     */
+    @Override
+    public void backwardBatch(int n) {
+        if (nextLayer instanceof FullyConnectedLayer) {
+            ((FullyConnectedLayer) nextLayer).backpropagateBatchDeltas(n, batchDeltas.getValues());
+        } else if (nextLayer instanceof ConvolutionalLayer) {
+            ((ConvolutionalLayer) nextLayer).backpropagateBatchDeltas(n, batchDeltas);
+        }
+    }
+
     /**
      * Does nothing for pooling layer since it does not have weights
      * It just propagates deltas from next layer to previous through connections that had max activation in forward pass
@@ -24,9 +24,11 @@ package deepnetts.net.layers;
 import deepnetts.net.layers.activation.ActivationType;
 import deepnetts.net.loss.LossType;
 import deepnetts.net.weights.RandomWeights;
+import deepnetts.util.Blas;
 import deepnetts.util.Tensor;
 import deepnetts.util.Tensors;
-import java.util.Arrays;
+import java.io.IOException;
+import java.io.ObjectInputStream;
 
 /**
  * Output layer of a neural network, which gives the final output of a network.
@@ -36,7 +38,14 @@ import java.util.Arrays;
  */
 public class OutputLayer extends AbstractLayer {
 
+    private static final long serialVersionUID = 537944573867996766L;
+
     protected float[] outputErrors;
+
+    /**
+     * Output errors for a batch of samples, one sample after another
+     */
+    protected transient float[] batchOutputErrors;
     protected final String[] labels;
     protected LossType lossType;
 
@@ -111,6 +120,16 @@ public class OutputLayer extends AbstractLayer {
         return outputErrors;
     }
 
+    /**
+     * Sets output errors for the sample at specified position in a batch.
+     *
+     * @param idx position of the sample in a batch
+     * @param outputErrors output errors for the sample
+     */
+    public final void setBatchOutputErrors(final int idx, final float[] outputErrors) {
+        System.arraycopy(outputErrors, 0, batchOutputErrors, idx * width, width);
+    }
+
     public final LossType getLossType() {
         return lossType;
     }
@@ -125,17 +144,23 @@ public class OutputLayer extends AbstractLayer {
         outputs = new Tensor(width);
         outputErrors = new float[width];
         deltas = new Tensor(width);
+        derivatives = new Tensor(width);
 
         int prevLayerWidth = prevLayer.getWidth();
         weights = new Tensor(prevLayerWidth, width);
         gradients = new Tensor(prevLayerWidth, width);
         deltaWeights = new Tensor(prevLayerWidth, width);
-        prevDeltaWeights = new Tensor(prevLayerWidth, width);
+        prevDeltaWeights = deltaWeights;
+        prevGradSqrSum = new Tensor(prevLayerWidth, width);
+        prevDeltaWeightSqrSum = new Tensor(prevLayerWidth, width);
+        prevBiasSqrSum = new Tensor(width);
+        prevDeltaBiasSqrSum = new Tensor(width);
         RandomWeights.xavier(weights.getValues(), prevLayerWidth, width);
 
         biases = new float[width];
         deltaBiases = new float[width];
-        prevDeltaBiases = new float[width];
+        prevDeltaBiases = deltaBiases;
+        biasGradients = new float[width];
         RandomWeights.randomize(biases);
 
     }
@@ -149,13 +174,10 @@ public class OutputLayer extends AbstractLayer {
     public void forward() {
         outputs.copyFrom(biases);  
 
-        for (int outCol = 0; outCol < outputs.getCols(); outCol++) {  
-            for (int inCol = 0; inCol < inputs.getCols(); inCol++) {
-                outputs.add(outCol, inputs.get(inCol) * weights.get(inCol, outCol));
-            }
-        }
+        // weights are stored input by input, so they are read row by row and used as transposed matrix
+        Blas.sgemvTrans(inputs.size(), width, weights.getValues(), 0, width, inputs.getValues(), 0, outputs.getValues(), 0);
 
-        outputs.apply(activation::getValue); 
+        activate(0, width);
     }
 
     /**
@@ -163,30 +185,58 @@ public class OutputLayer extends AbstractLayer {
      */
     @Override
     public void backward() {
-        if (!batchMode) {   
-            deltaWeights.fill(0);
-            Arrays.fill(deltaBiases, 0);
-        }
-
+        prepareDerivatives();
         for (int deltaCol = 0; deltaCol < deltas.getCols(); deltaCol++) { 
             if (lossType == LossType.MEAN_SQUARED_ERROR) {
-                final float delta = outputErrors[deltaCol] * activation.getPrime(outputs.get(deltaCol)); 
+                final float delta = outputErrors[deltaCol] * derivatives.get(deltaCol); 
                 deltas.set(deltaCol, delta);
             } else if (activationType == ActivationType.SIGMOID && lossType == LossType.CROSS_ENTROPY) { 
                 deltas.set(deltaCol, outputErrors[deltaCol]); 
             } 
+        }
 
-            for (int inCol = 0; inCol < inputs.getCols(); inCol++) {
-               final float grad = deltas.get(deltaCol) * inputs.get(inCol);
-               gradients.set(inCol, deltaCol, grad);
+        // sum gradients for batch mode: gradients += inputs * transpose(deltas)
+        Blas.sger(inputs.size(), width, inputs.getValues(), 0, deltas.getValues(), 0, gradients.getValues(), 0, width);
+        Tensors.add(biasGradients, deltas.getValues());
+    }
 
-               final float deltaWeight = optim.calculateDeltaWeight(grad, inCol, deltaCol);
-               deltaWeights.add(inCol, deltaCol, deltaWeight); // sum deltaWeight for batch mode
-            }
+    @Override
+    public void initBatch(int capacity) {
+        super.initBatch(capacity);
+        batchOutputErrors = new float[capacity * width];
+    }
 
-            final float deltaBias = optim.calculateDeltaBias(deltas.get(deltaCol), deltaCol);
-            deltaBiases[deltaCol] += deltaBias;
+    /**
+     * Forward pass for a batch of samples, as a single matrix multiplication.
+     *
+     * @param n number of samples in current batch
+     */
+    @Override
+    public void forwardBatch(int n) {
+        forwardBatchDense(n);
+        activateBatch(0, n * width);
+    }
+
+    /**
+     * Backward pass for a batch of samples, using output errors set for each sample in batch.
+     *
+     * @param n number of samples in current batch
+     */
+    @Override
+    public void backwardBatch(int n) {
+        final float[] deltaValues = batchDeltas.getValues();
+        prepareBatchDerivatives(n);
+        final float[] derivativeValues = batchDerivatives.getValues();
+
+        if (lossType == LossType.MEAN_SQUARED_ERROR) {
+            for (int i = 0; i < n * width; i++) {
+                deltaValues[i] = batchOutputErrors[i] * derivativeValues[i];
+            }
+        } else if (activationType == ActivationType.SIGMOID && lossType == LossType.CROSS_ENTROPY) {
+            System.arraycopy(batchOutputErrors, 0, deltaValues, 0, n * width);
         }
+
+        calculateDeltaWeightsDense(n);
     }
 
     /**
@@ -194,23 +244,28 @@ public class OutputLayer extends AbstractLayer {
      */
     @Override
     public void applyWeightChanges() {
-        if (batchMode) { 
-            deltaWeights.div(batchSize);
-            Tensors.div(deltaBiases, batchSize);
+        applyGradients();
+    }
+    
+    /**
+     * Creates derivatives (not used by softmax layer) and optimizer state for layers serialized before they were kept.
+     */
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        if (deltas == null) {
+            return; // training state was released
         }
-
-        Tensor.copy(deltaWeights, prevDeltaWeights);
-        weights.add(deltaWeights);
-
-        Tensor.copy(deltaBiases, prevDeltaBiases);
-        Tensors.add(biases, deltaBiases);
-
-        if (batchMode) {   
-            deltaWeights.fill(0);
-            Tensor.fill(deltaBiases, 0);
+        if (derivatives == null && activationType != ActivationType.SOFTMAX) {
+            derivatives = new Tensor(width);
+        }
+        if (prevGradSqrSum == null) {
+            prevGradSqrSum = zerosLike(weights);
+            prevDeltaWeightSqrSum = zerosLike(weights);
+            prevBiasSqrSum = new Tensor(width);
+            prevDeltaBiasSqrSum = new Tensor(width);
         }
     }
-    
+
     @Override
     public String toString() {
         return "Output Layer { width:"+width+", activation:"+activationType.name()+"}";
@@ -23,8 +23,9 @@ package deepnetts.net.layers;
 
 import deepnetts.net.layers.activation.ActivationType;
 import deepnetts.net.weights.RandomWeights;
+import deepnetts.util.Blas;
 import deepnetts.util.Tensor;
-import java.util.Arrays;
+import deepnetts.util.Tensors;
 
 /**
  * Output layer with softmax activation function.
@@ -33,6 +34,8 @@ import java.util.Arrays;
  */
 public class SoftmaxOutputLayer extends OutputLayer {
 
+    private static final long serialVersionUID = -5557183169491335524L;
+
     public SoftmaxOutputLayer(int width) {
         super(width);
         setActivationType(ActivationType.SOFTMAX);
@@ -54,12 +57,17 @@ public class SoftmaxOutputLayer extends OutputLayer {
         weights = new Tensor(prevLayerWidth, width);
         deltaWeights = new Tensor(prevLayerWidth, width);
         gradients = new Tensor(prevLayerWidth, width);
-        prevDeltaWeights = new Tensor(prevLayerWidth, width);
+        prevDeltaWeights = deltaWeights;
+        prevGradSqrSum = new Tensor(prevLayerWidth, width);
+        prevDeltaWeightSqrSum = new Tensor(prevLayerWidth, width);
+        prevBiasSqrSum = new Tensor(width);
+        prevDeltaBiasSqrSum = new Tensor(width);
         RandomWeights.xavier(weights.getValues(), prevLayerWidth, width);
 
         biases = new float[width];
         deltaBiases = new float[width];
-        prevDeltaBiases = new float[width];
+        prevDeltaBiases = deltaBiases;
+        biasGradients = new float[width];
         //RandomWeights.randomize(biases);
         //Tensor.fill(biases, 0.1f);
         RandomWeights.gaussian(biases, 0.1f, 0.05f);
@@ -75,12 +83,10 @@ public class SoftmaxOutputLayer extends OutputLayer {
     public void forward() {
         float maxWs = Float.NEGATIVE_INFINITY;
 
-        for (int outCol = 0; outCol < outputs.getCols(); outCol++) {                    
-            outputs.set(outCol, biases[outCol]);                                        
-            for (int inCol = 0; inCol < inputs.getCols(); inCol++) {                    
-                outputs.add(outCol, inputs.get(inCol) * weights.get(inCol, outCol));    
-            }
+        outputs.copyFrom(biases);
+        Blas.sgemvTrans(inputs.size(), width, weights.getValues(), 0, width, inputs.getValues(), 0, outputs.getValues(), 0);
 
+        for (int outCol = 0; outCol < outputs.getCols(); outCol++) {
             if (outputs.get(outCol) > maxWs) { 
                 maxWs = outputs.get(outCol);
             }
@@ -98,24 +104,48 @@ public class SoftmaxOutputLayer extends OutputLayer {
 
     @Override
     public void backward() {
-        if (!batchMode) {
-            deltaWeights.fill(0);
-            Arrays.fill(deltaBiases, 0);
-        }
-
         deltas.copyFrom(outputErrors);
 
-        for (int outCol = 0; outCol < outputs.getCols(); outCol++) { 
-            for (int inCol = 0; inCol < inputs.getCols(); inCol++) { 
-                final float grad = deltas.get(outCol) * inputs.get(inCol); 
-                gradients.set(inCol, outCol, grad); 
-                final float deltaWeight = optim.calculateDeltaWeight(grad, inCol, outCol);   
-                deltaWeights.add(inCol, outCol, deltaWeight); 
+        Blas.sger(inputs.size(), width, inputs.getValues(), 0, deltas.getValues(), 0, gradients.getValues(), 0, width);
+        Tensors.add(biasGradients, deltas.getValues());
+    }
+
+    /**
+     * Forward pass for a batch of samples. Calculates weighted inputs for all
+     * samples as a single matrix multiplication, and then softmax for each sample.
+     *
+     * @param n number of samples in current batch
+     */
+    @Override
+    public void forwardBatch(int n) {
+        forwardBatchDense(n);
+
+        final float[] outValues = batchOutputs.getValues();
+        for (int s = 0; s < n; s++) {
+            final int offset = s * width;
+            float maxWs = Float.NEGATIVE_INFINITY;
+            for (int col = 0; col < width; col++) {
+                if (outValues[offset + col] > maxWs) {
+                    maxWs = outValues[offset + col];
+                }
+            }
+
+            float denSum = 0;
+            for (int col = 0; col < width; col++) {
+                outValues[offset + col] = (float) Math.exp(outValues[offset + col] - maxWs);
+                denSum += outValues[offset + col];
+            }
+
+            for (int col = 0; col < width; col++) {
+                outValues[offset + col] /= denSum;
             }
-            
-            final float deltaBias = optim.calculateDeltaBias(deltas.get(outCol), outCol); 
-            deltaBiases[outCol] += deltaBias;
         }
     }
 
+    @Override
+    public void backwardBatch(int n) {
+        System.arraycopy(batchOutputErrors, 0, batchDeltas.getValues(), 0, n * width);
+        calculateDeltaWeightsDense(n);
+    }
+
 }
@@ -55,6 +55,30 @@ public interface ActivationFunction {
      */
     public float getPrime(float y);
 
+    /**
+     * Applies activation function to values in the specified range of array,
+     * and if derivatives array is not null, stores first derivatives for calculated outputs
+     * at the same positions in derivatives array, so they can be used in backward pass.
+     * Implementations override this method with plain loops, to avoid calling getValue and getPrime
+     * through this interface for each value.
+     *
+     * @param values values to apply activation function to, replaced with outputs of activation function
+     * @param from index of the first value
+     * @param to index after the last value
+     * @param derivatives array to store first derivatives in, or null if they are not needed
+     */
+    public default void apply(final float[] values, final int from, final int to, final float[] derivatives) {
+        for (int i = from; i < to; i++) {
+            values[i] = getValue(values[i]);
+        }
+
+        if (derivatives != null) {
+            for (int i = from; i < to; i++) {
+                derivatives[i] = getPrime(values[i]);
+            }
+        }
+    }
+
 
     /**
      * Creates and returns specified type of activation function.
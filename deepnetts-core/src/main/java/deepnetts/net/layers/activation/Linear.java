@@ -1,6 +1,7 @@
 package deepnetts.net.layers.activation;
 
 import java.io.Serializable;
+import java.util.Arrays;
 
 /**
  * Linear activation function and its derivative
@@ -12,6 +13,8 @@ import java.io.Serializable;
  */
 public final class Linear implements ActivationFunction, Serializable {
 
+    private static final long serialVersionUID = -7410249082021613987L;
+
     @Override
     public float getValue(final float x) {
         return x;
@@ -21,5 +24,12 @@ public final class Linear implements ActivationFunction, Serializable {
     public float getPrime(final float y) {
         return 1;
     }
+
+    @Override
+    public void apply(final float[] values, final int from, final int to, final float[] derivatives) {
+        if (derivatives != null) {
+            Arrays.fill(derivatives, from, to, 1);
+        }
+    }
     
 }
\ No newline at end of file
@@ -16,6 +16,8 @@ import java.io.Serializable;
  */
 public final class Relu implements ActivationFunction, Serializable {
 
+    private static final long serialVersionUID = -3129806138101056951L;
+
     @Override
     public float getValue(final float x) {
         return Math.max(0, x);  
@@ -25,5 +27,18 @@ public final class Relu implements ActivationFunction, Serializable {
     public float getPrime(final float y) {
          return ( y > 0 ? 1 : 0);
     }
+
+    @Override
+    public void apply(final float[] values, final int from, final int to, final float[] derivatives) {
+        for (int i = from; i < to; i++) {
+            values[i] = Math.max(0, values[i]);
+        }
+
+        if (derivatives != null) {
+            for (int i = from; i < to; i++) {
+                derivatives[i] = (values[i] > 0 ? 1 : 0);
+            }
+        }
+    }
     
 }
@@ -12,6 +12,8 @@ import java.io.Serializable;
  */
 public final class  Sigmoid implements ActivationFunction, Serializable {
 
+    private static final long serialVersionUID = 3674376871553412026L;
+
     @Override
     public float getValue(final float x) {
         return 1 / (1 + (float) Math.exp(-x));
@@ -21,5 +23,18 @@ public final class  Sigmoid implements ActivationFunction, Serializable {
     public float getPrime(final float y) {
         return y*(1-y);
     }
+
+    @Override
+    public void apply(final float[] values, final int from, final int to, final float[] derivatives) {
+        for (int i = from; i < to; i++) {
+            values[i] = 1 / (1 + (float) Math.exp(-values[i]));
+        }
+
+        if (derivatives != null) {
+            for (int i = from; i < to; i++) {
+                derivatives[i] = values[i] * (1 - values[i]);
+            }
+        }
+    }
        
 }
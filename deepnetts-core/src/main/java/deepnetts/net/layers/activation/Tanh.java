@@ -9,6 +9,8 @@ import java.io.Serializable;
  */
 public final class Tanh implements ActivationFunction, Serializable {
 
+    private static final long serialVersionUID = 4357486222598362856L;
+
     @Override
     public float getValue(final float x) {
        final float e2x = (float)Math.exp(2*x);   
@@ -19,5 +21,19 @@ public final class Tanh implements ActivationFunction, Serializable {
     public float getPrime(final float y) {
         return (1-y*y);
     }
+
+    @Override
+    public void apply(final float[] values, final int from, final int to, final float[] derivatives) {
+        for (int i = from; i < to; i++) {
+            final float e2x = (float) Math.exp(2 * values[i]);
+            values[i] = (e2x - 1) / (e2x + 1);
+        }
+
+        if (derivatives != null) {
+            for (int i = from; i < to; i++) {
+                derivatives[i] = 1 - values[i] * values[i];
+            }
+        }
+    }
     
 }
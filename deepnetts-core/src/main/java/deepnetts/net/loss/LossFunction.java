@@ -75,10 +75,11 @@ public interface LossFunction {
      * @return
      */
     default public float valueFor(NeuralNetwork nnet, DataSet<? extends MLDataItem> testSet) {
+        final float[] target = new float[nnet.getOutputLayer().getWidth()];
         for(MLDataItem tsItem : testSet) {
-            nnet.setInput(tsItem.getInput());
+            nnet.setInput(tsItem);
             float[] output = nnet.getOutput();
-            addPatternError(output, tsItem.getTargetOutput().getValues());
+            addPatternError(output, tsItem.getTargetOutput().getFlatValues(target));
         }
         return getTotal();
     }
@@ -26,6 +26,7 @@ import deepnetts.net.train.opt.OptimizerType;
 import deepnetts.core.DeepNetts;
 import deepnetts.net.NeuralNetwork;
 import deepnetts.net.layers.AbstractLayer;
+import deepnetts.net.layers.FullyConnectedLayer;
 
 import deepnetts.eval.ClassifierEvaluator;
 import javax.visrec.ml.eval.Evaluator;
@@ -33,13 +34,22 @@ import javax.visrec.ml.eval.EvaluationMetrics;
 import deepnetts.net.ConvolutionalNetwork;
 import deepnetts.net.FeedForwardNetwork;
 import deepnetts.net.loss.LossFunction;
+import deepnetts.net.weights.PrecisionType;
+import deepnetts.util.DeepNettsException;
 import deepnetts.util.FileIO;
 import java.io.IOException;
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Objects;
 import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.IntConsumer;
 import javax.visrec.ml.data.DataSet;
 import org.apache.logging.log4j.LogManager;
 import java.io.ObjectInputStream;
@@ -58,6 +68,8 @@ import deepnetts.data.MLDataItem;
  */
 public class BackpropagationTrainer implements Trainer, Serializable {
 
+    private static final long serialVersionUID = -2074106047858300199L;
+
     /**
      * Maximum training epochs. Training will stop when this number of epochs is
      * reached regardless the total network error.
@@ -96,6 +108,20 @@ public class BackpropagationTrainer implements Trainer, Serializable {
      */
     private int batchSize;
 
+    /**
+     * Number of threads used for training in batch mode. Each mini batch is split
+     * between threads, and each thread uses its own replica of the network.
+     */
+    private int threadCount = defaultThreadCount();
+
+    /**
+     * Networks used by training threads in batch mode. The first one is the network being trained,
+     * others are its replicas which share weights with it.
+     */
+    private transient List<NeuralNetwork<?>> workers;
+
+    private transient ExecutorService executor;
+
     /**
      * Flag to stop training
      */
@@ -172,6 +198,12 @@ public class BackpropagationTrainer implements Trainer, Serializable {
 
     private static final org.apache.logging.log4j.Logger LOGGER = LogManager.getLogger(DeepNetts.class.getName());
 
+    /**
+     * Max number of samples processed in a single batch forward/backward pass.
+     * Larger mini batches are processed in several passes before weights are updated.
+     */
+    private static final int MAX_BATCH_CAPACITY = 128;
+
 
     /**
      * Creates and instance of Backpropagation Trainer for the specified neural network.
@@ -240,6 +272,12 @@ public class BackpropagationTrainer implements Trainer, Serializable {
             batchSize = trainingSamplesCount;
         }
 
+        for (AbstractLayer layer : neuralNet.getLayers()) {
+            if (layer instanceof FullyConnectedLayer && ((FullyConnectedLayer) layer).getInferencePrecision() == PrecisionType.BFLOAT16) {
+                throw new DeepNettsException("Network with bfloat16 weights can only be used for prediction, and can not be trained!");
+            }
+        }
+
         // set same lr to all layers!
         for (AbstractLayer layer : neuralNet.getLayers()) {
             layer.setLearningRate(learningRate);
@@ -264,99 +302,101 @@ public class BackpropagationTrainer implements Trainer, Serializable {
 
         fireTrainingEvent(TrainingEvent.Type.STARTED);
 
-        startTraining = System.currentTimeMillis();
-        do {
-            epoch++;
-            lossFunction.reset();
-            valLoss=0;
-            trainAccuracy=0;
-            valAccuracy=0;
-
-            if (shuffle) {  
-                trainingSet.shuffle(); 
-            }
-            int sampleCounter = 0;
+        if (batchMode) {
+            initWorkers();
+        }
 
-            startEpoch = System.currentTimeMillis();
+        startTraining = System.currentTimeMillis();
+        try {
+            do {
+                epoch++;
+                lossFunction.reset();
+                valLoss=0;
+                trainAccuracy=0;
+                valAccuracy=0;
+
+                if (shuffle) {  
+                    trainingSet.shuffle(); 
+                }
+                startEpoch = System.currentTimeMillis();
 
-            for (MLDataItem dataSetItem : trainingSet) { // for all items in trainng set
-                sampleCounter++;
-                neuralNet.setInput(dataSetItem.getInput()); 
-                outputError = lossFunction.addPatternError(neuralNet.getOutput(), dataSetItem.getTargetOutput().getValues());
-                neuralNet.setOutputError(outputError); 
-                neuralNet.backward(); 
+                setTraining(true);
+                if (isBatchMode()) {
+                    trainEpochInBatches();
+                } else {
+                    final float[] target = new float[neuralNet.getOutputLayer().getWidth()]; // buffer for targets which are views
+                    for (MLDataItem dataSetItem : trainingSet) { // for all items in trainng set
+                        neuralNet.setInput(dataSetItem);
+                        outputError = lossFunction.addPatternError(neuralNet.getOutput(), dataSetItem.getTargetOutput().getFlatValues(target));
+                        neuralNet.setOutputError(outputError); 
+                        neuralNet.backward(); 
+                        neuralNet.applyWeightChanges();
 
-                if (!isBatchMode()) {
-                    neuralNet.applyWeightChanges();
-                } else if (sampleCounter % batchSize == 0) {
-                    neuralNet.applyWeightChanges();
+                        fireTrainingEvent(TrainingEvent.Type.ITERATION_FINISHED);
 
-                    float miniBatchError = lossFunction.getTotal();
-                    LOGGER.info("Epoch:" + epoch + ", Mini Batch:" + sampleCounter / batchSize + ", Batch Loss:" + miniBatchError);
+                        if (stopTraining) break; // if training was stoped externaly by calling stop() method
+                    }
                 }
-                fireTrainingEvent(TrainingEvent.Type.ITERATION_FINISHED); // BATCH_FINISHED?
-
-                if (stopTraining) break; // if training was stoped externaly by calling stop() method
-            }
-
-           if (regL2!=0) lossFunction.addRegularizationSum(regL2 * neuralNet.getL2Reg()); // 0.00001f
+                setTraining(false); // loss and accuracy below need only outputs
 
-            endEpoch = System.currentTimeMillis();
+               if (regL2!=0) lossFunction.addRegularizationSum(regL2 * neuralNet.getL2Reg()); // 0.00001f
 
-            if (isBatchMode() && (trainingSamplesCount % batchSize != 0)) {
-                neuralNet.applyWeightChanges();
-            }
+                endEpoch = System.currentTimeMillis();
 
-            totalTrainingLoss = lossFunction.getTotal(); 
-            totalLossChange = totalTrainingLoss - prevTotalLoss; 
-            prevTotalLoss = totalTrainingLoss;
-            trainAccuracy = calculateAccuracy(this.trainingSet); 
+                totalTrainingLoss = lossFunction.getTotal(); 
+                totalLossChange = totalTrainingLoss - prevTotalLoss; 
+                prevTotalLoss = totalTrainingLoss;
+                trainAccuracy = calculateAccuracy(this.trainingSet); 
             
-            if (validationSet != null) {    
-                prevValLoss = valLoss;
-                valLoss = validationLoss(validationSet);  
-                valAccuracy = calculateAccuracy(validationSet);
-            }
+                if (validationSet != null) {    
+                    prevValLoss = valLoss;
+                    valLoss = validationLoss(validationSet);  
+                    valAccuracy = calculateAccuracy(validationSet);
+                }
 
-            epochTime = endEpoch - startEpoch;
+                epochTime = endEpoch - startEpoch;
 
-            if (validationSet != null)
-                LOGGER.info("Epoch:" + epoch + ", Time:" + epochTime + "ms, TrainError:" + totalTrainingLoss + ", TrainErrorChange:" + totalLossChange + ", TrainAccuracy: " + trainAccuracy + ", ValError:" + valLoss + ", ValAccuracy: "+valAccuracy);
-            else
-                LOGGER.info( "Epoch:" + epoch + ", Time:" + epochTime + "ms, TrainError:" + totalTrainingLoss + ", TrainErrorChange:" + totalLossChange + ", TrainAccuracy: "+trainAccuracy);
+                if (validationSet != null)
+                    LOGGER.info("Epoch:" + epoch + ", Time:" + epochTime + "ms, TrainError:" + totalTrainingLoss + ", TrainErrorChange:" + totalLossChange + ", TrainAccuracy: " + trainAccuracy + ", ValError:" + valLoss + ", ValAccuracy: "+valAccuracy);
+                else
+                    LOGGER.info( "Epoch:" + epoch + ", Time:" + epochTime + "ms, TrainError:" + totalTrainingLoss + ", TrainErrorChange:" + totalLossChange + ", TrainAccuracy: "+trainAccuracy);
 
 
-            if (Float.isNaN(totalTrainingLoss)) stopTraining = true;
+                if (Float.isNaN(totalTrainingLoss)) stopTraining = true;
 
-            fireTrainingEvent(TrainingEvent.Type.EPOCH_FINISHED);
+                fireTrainingEvent(TrainingEvent.Type.EPOCH_FINISHED);
 
-            // EARLY STOPPING
-            if (earlyStopping && (epoch > 0 && epoch % checkpointEpochs == 0)) {
-                if (prevCheckpointTestLoss - valLoss < earlyStoppingMinDelta) {
-                    if (earlyStoppingCheckpointCount == earlyStoppingPatience) {
-                        stop(); 
+                // EARLY STOPPING
+                if (earlyStopping && (epoch > 0 && epoch % checkpointEpochs == 0)) {
+                    if (prevCheckpointTestLoss - valLoss < earlyStoppingMinDelta) {
+                        if (earlyStoppingCheckpointCount == earlyStoppingPatience) {
+                            stop(); 
+                        } else {
+                            earlyStoppingCheckpointCount++;    
+                        }
                     } else {
-                        earlyStoppingCheckpointCount++;    
+                        earlyStoppingCheckpointCount = 0; 
                     }
-                } else {
-                    earlyStoppingCheckpointCount = 0; 
-                }
 
-                // save network at this checkpoint since loss if going down
-                prevCheckpointTestLoss = valLoss;
-            }
+                    // save network at this checkpoint since loss if going down
+                    prevCheckpointTestLoss = valLoss;
+                }
 
-            if (trainingSnapshots && (epoch > 0 && epoch % snapshotEpochs == 0)) {
-                try { 
-                    FileIO.writeToFile(neuralNet, snapshotPath + "_epoch_" + epoch + ".dnet");
-                } catch (IOException ex) { 
-                    LOGGER.catching(ex);
-                }                
-            }
+                if (trainingSnapshots && (epoch > 0 && epoch % snapshotEpochs == 0)) {
+                    try { 
+                        FileIO.serializeToFile(neuralNet, snapshotPath + "_epoch_" + epoch + ".dnet"); // with training state, so training can be resumed
+                    } catch (IOException ex) { 
+                        LOGGER.catching(ex);
+                    }                
+                }
             
-            stopTraining = stopTraining || ((epoch == maxEpochs) || (totalTrainingLoss <= maxError));          
+                stopTraining = stopTraining || ((epoch == maxEpochs) || (totalTrainingLoss <= maxError));          
             
-        } while (!stopTraining); 
+            } while (!stopTraining); 
+        } finally {
+            setTraining(false);
+            shutdownWorkers();
+        }
 
         endTraining = System.currentTimeMillis();
         trainingTime = endTraining - startTraining;
@@ -368,6 +408,169 @@ public class BackpropagationTrainer implements Trainer, Serializable {
         fireTrainingEvent(TrainingEvent.Type.STOPPED);
     }
 
+    /**
+     * Sets training mode of the trained network and its replicas used in batch mode.
+     */
+    private void setTraining(boolean training) {
+        if (workers != null) {
+            workers.forEach(worker -> worker.setTraining(training));
+        } else {
+            neuralNet.setTraining(training);
+        }
+    }
+
+    /**
+     * Creates network replicas and thread pool used for training in batch mode.
+     * Each replica shares weights with the trained network, but has its own batch
+     * outputs, deltas and weight changes.
+     */
+    private void initWorkers() {
+        final int capacity = Math.min(MAX_BATCH_CAPACITY, (batchSize + threadCount - 1) / threadCount);
+
+        workers = new ArrayList<>(threadCount);
+        workers.add(neuralNet);
+        neuralNet.initBatch(capacity);
+
+        for (int i = 1; i < threadCount; i++) {
+            final NeuralNetwork<?> replica = neuralNet.createReplica();
+            replica.initBatch(capacity);
+            workers.add(replica);
+        }
+
+        if (threadCount > 1) {
+            executor = Executors.newFixedThreadPool(threadCount, runnable -> {
+                final Thread thread = new Thread(runnable, "deepnetts-trainer");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    private static int defaultThreadCount() {
+        return DeepNetts.getInstance().isMultithreaded() ? Runtime.getRuntime().availableProcessors() : 1;
+    }
+
+    private void shutdownWorkers() {
+        if (executor != null) {
+            executor.shutdown();
+            executor = null;
+        }
+        workers = null;
+    }
+
+    /**
+     * Runs the specified task for each worker, in parallel if there is more than one worker,
+     * and waits until all of them are done.
+     *
+     * @param task task which accepts worker index
+     */
+    private void runOnWorkers(final IntConsumer task) {
+        if (executor == null) {
+            task.accept(0);
+            return;
+        }
+
+        final List<Callable<Void>> tasks = new ArrayList<>(workers.size());
+        for (int i = 0; i < workers.size(); i++) {
+            final int workerIdx = i;
+            tasks.add(() -> {
+                task.accept(workerIdx);
+                return null;
+            });
+        }
+
+        try {
+            for (Future<Void> result : executor.invokeAll(tasks)) {
+                result.get();
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new DeepNettsException("Training interrupted!", ex);
+        } catch (ExecutionException ex) {
+            throw new DeepNettsException("Error in training thread!", ex.getCause());
+        }
+    }
+
+    /**
+     * Performs one training epoch in batch mode. All samples in a mini batch go through
+     * forward and backward pass together, layer by layer, and weights are updated
+     * once for each mini batch. Last mini batch may be smaller than batch size.
+     *
+     * When several threads are used, mini batch is split into contiguous parts, one for each
+     * thread, and weight changes from all threads are summed in the same order after backward pass.
+     * Loss is calculated in sample order, so results are the same in each run with the same number of threads.
+     */
+    private void trainEpochInBatches() {
+        final int workerCount = workers.size();
+        final int capacity = neuralNet.getBatchCapacity();
+        final float[] output = new float[neuralNet.getOutputLayer().getWidth()];
+        final float[] target = new float[output.length];
+        final List<MLDataItem> batch = new ArrayList<>(Math.min(batchSize, trainingSet.size()));
+        final Iterator<? extends MLDataItem> iterator = trainingSet.iterator();
+        final int[] workerFrom = new int[workerCount];
+        final int[] workerSize = new int[workerCount];
+        int batchCounter = 0;
+
+        while (iterator.hasNext() && !stopTraining) {
+            batch.clear();
+            while (iterator.hasNext() && batch.size() < batchSize) {
+                batch.add(iterator.next());
+            }
+
+            // mini batch larger than capacity of all workers is processed in several passes, weight changes are summed
+            for (int from = 0; from < batch.size(); from += capacity * workerCount) {
+                final int count = Math.min(capacity * workerCount, batch.size() - from);
+                for (int w = 0, wFrom = from; w < workerCount; w++) {
+                    workerFrom[w] = wFrom;
+                    workerSize[w] = count / workerCount + (w < count % workerCount ? 1 : 0);
+                    wFrom += workerSize[w];
+                }
+
+                runOnWorkers(w -> {
+                    final NeuralNetwork<?> worker = workers.get(w);
+                    for (int i = 0; i < workerSize[w]; i++) {
+                        worker.setBatchInput(i, batch.get(workerFrom[w] + i));
+                    }
+                    if (workerSize[w] > 0) {
+                        worker.forwardBatch(workerSize[w]);
+                    }
+                });
+
+                for (int w = 0; w < workerCount; w++) {
+                    final NeuralNetwork<?> worker = workers.get(w);
+                    final float[] batchOutput = worker.getBatchOutput().getValues();
+                    for (int i = 0; i < workerSize[w]; i++) {
+                        System.arraycopy(batchOutput, i * output.length, output, 0, output.length);
+                        final float[] outputError = lossFunction.addPatternError(output, batch.get(workerFrom[w] + i).getTargetOutput().getFlatValues(target));
+                        worker.setBatchOutputError(i, outputError);
+                    }
+                }
+
+                runOnWorkers(w -> {
+                    if (workerSize[w] > 0) {
+                        workers.get(w).backwardBatch(workerSize[w]);
+                    }
+                });
+            }
+
+            for (int w = 1; w < workerCount; w++) {
+                neuralNet.mergeDeltaWeights(workers.get(w));
+            }
+
+            if (batch.size() < batchSize) { // average weight changes over actual number of samples in last mini batch
+                neuralNet.getLayers().forEach(layer -> layer.setBatchSize(batch.size()));
+                neuralNet.applyWeightChanges();
+                neuralNet.getLayers().forEach(layer -> layer.setBatchSize(batchSize));
+            } else {
+                neuralNet.applyWeightChanges();
+            }
+
+            batchCounter++;
+            LOGGER.info("Epoch:" + epoch + ", Mini Batch:" + batchCounter + ", Batch Loss:" + lossFunction.getTotal());
+            fireTrainingEvent(TrainingEvent.Type.ITERATION_FINISHED);
+        }
+    }
+
     public long getMaxEpochs() {
         return maxEpochs;
     }
@@ -464,6 +667,25 @@ public class BackpropagationTrainer implements Trainer, Serializable {
         return this;
     }
 
+    public int getThreadCount() {
+        return threadCount;
+    }
+
+    /**
+     * Sets number of threads used for training in batch mode (online training always uses a single thread).
+     * By default all available processors are used if DeepNetts is multithreaded, otherwise one.
+     *
+     * @param threadCount number of training threads
+     * @return this trainer
+     */
+    public BackpropagationTrainer setThreadCount(int threadCount) {
+        if (threadCount < 1) {
+            throw new IllegalArgumentException("Thread count should be at least one : " + threadCount);
+        }
+        this.threadCount = threadCount;
+        return this;
+    }
+
     public BackpropagationTrainer setMomentum(float momentum) {
         this.momentum = momentum;
         return this;
@@ -550,6 +772,14 @@ public class BackpropagationTrainer implements Trainer, Serializable {
         return trainingSnapshots;
     }
 
+    /**
+     * Enables saving of network snapshots every few epochs during training.
+     * Snapshots are serialized with training state (including optimizer state), so training can be resumed from them.
+     *
+     * @param trainingSnapshots true to save snapshots
+     * @see #setSnapshotEpochs(int)
+     * @see #setSnapshotPath(java.lang.String)
+     */
     public void setTrainingSnapshots(boolean trainingSnapshots) {
         this.trainingSnapshots = trainingSnapshots;
     }   
@@ -604,6 +834,9 @@ public class BackpropagationTrainer implements Trainer, Serializable {
         if (prop.getProperty(PROP_LEARNING_RATE) != null)
             this.learningRate = Float.parseFloat(prop.getProperty(PROP_LEARNING_RATE));
 
+        if (prop.getProperty(PROP_THREAD_COUNT) != null)
+            setThreadCount(Integer.parseInt(prop.getProperty(PROP_THREAD_COUNT)));
+
 //        this.momentum = Float.parseFloat(prop.getProperty(PROP_MOMENTUM));
 //        this.batchMode = Boolean.parseBoolean(prop.getProperty(PROP_BATCH_MODE));
 //        this.batchSize = Integer.parseInt(prop.getProperty(PROP_BATCH_SIZE));
@@ -618,6 +851,7 @@ public class BackpropagationTrainer implements Trainer, Serializable {
     public static final String PROP_BATCH_MODE = "batchMode";
     public static final String PROP_BATCH_SIZE = "batchSize";      // for mini batch
     public static final String PROP_OPTIMIZER_TYPE = "optimizer";  // for mini batch
+    public static final String PROP_THREAD_COUNT = "threadCount";  // for batch mode
 
 
     private float validationLoss(DataSet<? extends MLDataItem> validationSet) {
@@ -635,7 +869,12 @@ public class BackpropagationTrainer implements Trainer, Serializable {
 
     private void readObject(ObjectInputStream aInputStream) throws ClassNotFoundException, IOException 
     {       
+         aInputStream.defaultReadObject();
          listeners = new ArrayList<>(); 
+         eval = new ClassifierEvaluator();
+         if (threadCount < 1) { // trainers saved before thread count was introduced
+             threadCount = defaultThreadCount();
+         }
     }    
     
 }
\ No newline at end of file
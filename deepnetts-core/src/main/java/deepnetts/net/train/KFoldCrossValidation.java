@@ -53,16 +53,25 @@ public class KFoldCrossValidation {
 
     public EvaluationMetrics runCrossValidation() {
         List<EvaluationMetrics> measures = new ArrayList<>();
-        DataSet[] folds = (DataSet[]) dataSet.split(splitsNum);
+        TabularDataSet<MLDataItem> tabularSet = (TabularDataSet<MLDataItem>) dataSet;
+        tabularSet.shuffle(); // shuffle once, folds are consecutive parts of shuffled data set
+        final int size = tabularSet.size();
 
         for (int testFoldIdx = 0; testFoldIdx < splitsNum; testFoldIdx++) {
-            DataSet testSet = folds[testFoldIdx];
-            TabularDataSet trainingSet = new TabularDataSet(((TabularDataSet)dataSet).getNumInputs(), ((TabularDataSet)dataSet).getNumOutputs());
-            trainingSet.setColumnNames(((TabularDataSet)dataSet).getColumnNames());
-            for (int trainFoldIdx = 0; trainFoldIdx < splitsNum; trainFoldIdx++) {
-                if (trainFoldIdx == testFoldIdx) continue;
-                trainingSet.addAll(folds[trainFoldIdx]);
+            // test and training sets are views of the data set, which share its items
+            final int testFrom = (int) ((long) size * testFoldIdx / splitsNum);
+            final int testTo = (int) ((long) size * (testFoldIdx + 1) / splitsNum);
+            final int[] testIdxs = new int[testTo - testFrom];
+            final int[] trainIdxs = new int[size - testIdxs.length];
+            for (int i = 0, t = 0; i < size; i++) {
+                if (i >= testFrom && i < testTo) {
+                    testIdxs[i - testFrom] = i;
+                } else {
+                    trainIdxs[t++] = i;
+                }
             }
+            DataSet testSet = tabularSet.subset(testIdxs);
+            TabularDataSet trainingSet = tabularSet.subset(trainIdxs);
 
             // clone the original network each time before training - create a new instace that will be added to trainedNetworks
             NeuralNetwork neuralNet = SerializationUtils.clone(this.neuralNetwork); // ovde bi morao traineru da prosledjuje kloniranu mrezu
@@ -0,0 +1,79 @@
+/**
+ *  DeepNetts is pure Java Deep Learning Library with support for Backpropagation
+ *  based learning and image recognition.
+ *
+ *  Copyright (C) 2017  Zoran Sevarac <sevarac@gmail.com>
+ *
+ * This file is part of DeepNetts.
+ *
+ * DeepNetts is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <https://www.gnu.org/licenses/>.package
+ * deepnetts.core;
+ */
+
+package deepnetts.net.train.opt;
+
+import deepnetts.net.layers.AbstractLayer;
+import java.io.Serializable;
+
+/**
+ * AdaDelta optimizer, which uses ratio of decaying averages of squared weight changes and squared gradients
+ * as learning rate for each weight, so it does not use learning rate set for the layer.
+ * Averages are kept in layer's prevGradSqrSum, prevDeltaWeightSqrSum, prevBiasSqrSum and prevDeltaBiasSqrSum tensors.
+ *
+ * @author Zoran Sevarac
+ */
+public final class AdaDeltaOptimizer implements Optimizer, Serializable {
+
+    private static final long serialVersionUID = -5704317277381649734L;
+
+    /**
+     * Decay rate of the averages.
+     */
+    public static final float DECAY_RATE = 0.95f;
+
+    /**
+     * Small value which prevents division by zero, and gives initial weight change size.
+     */
+    public static final float EPSILON = 1e-6f;
+
+    private final float[] gradSqrSum, deltaWeightSqrSum;
+    private final float[] biasSqrSum, deltaBiasSqrSum;
+
+    public AdaDeltaOptimizer(AbstractLayer layer) {
+        this.gradSqrSum = layer.getPrevGradSqrSum() != null ? layer.getPrevGradSqrSum().getValues() : null;
+        this.deltaWeightSqrSum = layer.getPrevDeltaWeightSqrSum() != null ? layer.getPrevDeltaWeightSqrSum().getValues() : null;
+        this.biasSqrSum = layer.getPrevBiasSqrSum() != null ? layer.getPrevBiasSqrSum().getValues() : null;
+        this.deltaBiasSqrSum = layer.getPrevDeltaBiasSqrSum() != null ? layer.getPrevDeltaBiasSqrSum().getValues() : null;
+    }
+
+    @Override
+    public void calculateDeltaWeights(final float[] gradients, final float[] deltaWeights) {
+        deltaFor(gradients, deltaWeights, gradSqrSum, deltaWeightSqrSum);
+    }
+
+    @Override
+    public void calculateDeltaBiases(final float[] gradients, final float[] deltaBiases) {
+        deltaFor(gradients, deltaBiases, biasSqrSum, deltaBiasSqrSum);
+    }
+
+    private static void deltaFor(final float[] gradients, final float[] deltas, final float[] gradSqr, final float[] deltaSqr) {
+        for (int i = 0; i < gradients.length; i++) {
+            final float gradient = gradients[i];
+            gradSqr[i] = DECAY_RATE * gradSqr[i] + (1 - DECAY_RATE) * gradient * gradient;
+            final float delta = -(float) (Math.sqrt(deltaSqr[i] + EPSILON) / Math.sqrt(gradSqr[i] + EPSILON)) * gradient;
+            deltaSqr[i] = DECAY_RATE * deltaSqr[i] + (1 - DECAY_RATE) * delta * delta;
+            deltas[i] = delta;
+        }
+    }
+
+}
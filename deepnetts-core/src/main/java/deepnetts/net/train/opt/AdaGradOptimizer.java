@@ -0,0 +1,72 @@
+/**
+ *  DeepNetts is pure Java Deep Learning Library with support for Backpropagation
+ *  based learning and image recognition.
+ *
+ *  Copyright (C) 2017  Zoran Sevarac <sevarac@gmail.com>
+ *
+ * This file is part of DeepNetts.
+ *
+ * DeepNetts is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <https://www.gnu.org/licenses/>.package
+ * deepnetts.core;
+ */
+
+package deepnetts.net.train.opt;
+
+import deepnetts.net.layers.AbstractLayer;
+import java.io.Serializable;
+
+/**
+ * AdaGrad optimizer, which scales learning rate for each weight with the square root
+ * of the sum of all its previous squared gradients, so weights with frequent large gradients learn slower.
+ * Sums are kept in layer's prevGradSqrSum and prevBiasSqrSum tensors.
+ *
+ * @author Zoran Sevarac
+ */
+public final class AdaGradOptimizer implements Optimizer, Serializable {
+
+    private static final long serialVersionUID = 7603268251298665508L;
+
+    /**
+     * Small value which prevents division by zero.
+     */
+    static final float EPSILON = 1e-8f;
+
+    private final float learningRate;
+    private final float[] gradSqrSum;
+    private final float[] biasSqrSum;
+
+    public AdaGradOptimizer(AbstractLayer layer) {
+        this.learningRate = layer.getLearningRate();
+        this.gradSqrSum = layer.getPrevGradSqrSum() != null ? layer.getPrevGradSqrSum().getValues() : null;
+        this.biasSqrSum = layer.getPrevBiasSqrSum() != null ? layer.getPrevBiasSqrSum().getValues() : null;
+    }
+
+    @Override
+    public void calculateDeltaWeights(final float[] gradients, final float[] deltaWeights) {
+        deltaFor(gradients, deltaWeights, gradSqrSum);
+    }
+
+    @Override
+    public void calculateDeltaBiases(final float[] gradients, final float[] deltaBiases) {
+        deltaFor(gradients, deltaBiases, biasSqrSum);
+    }
+
+    private void deltaFor(final float[] gradients, final float[] deltas, final float[] sqrSum) {
+        for (int i = 0; i < gradients.length; i++) {
+            final float gradient = gradients[i];
+            sqrSum[i] += gradient * gradient;
+            deltas[i] = -learningRate * gradient / ((float) Math.sqrt(sqrSum[i]) + EPSILON);
+        }
+    }
+
+}
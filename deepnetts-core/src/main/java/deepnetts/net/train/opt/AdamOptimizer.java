@@ -0,0 +1,94 @@
+/**
+ *  DeepNetts is pure Java Deep Learning Library with support for Backpropagation
+ *  based learning and image recognition.
+ *
+ *  Copyright (C) 2017  Zoran Sevarac <sevarac@gmail.com>
+ *
+ * This file is part of DeepNetts.
+ *
+ * DeepNetts is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <https://www.gnu.org/licenses/>.package
+ * deepnetts.core;
+ */
+
+package deepnetts.net.train.opt;
+
+import deepnetts.net.layers.AbstractLayer;
+import java.io.Serializable;
+
+/**
+ * Adam optimizer, which uses decaying averages of gradients (first moment, like momentum)
+ * and squared gradients (second moment, like RMSProp) for each weight, corrected for their initial bias towards zero.
+ * Second moments are kept in layer's prevGradSqrSum and prevBiasSqrSum tensors.
+ *
+ * @author Zoran Sevarac
+ */
+public final class AdamOptimizer implements Optimizer, Serializable {
+
+    private static final long serialVersionUID = 2872904336582790356L;
+
+    /**
+     * Decay rate of the first moment (average gradient).
+     */
+    public static final float BETA1 = 0.9f;
+
+    /**
+     * Decay rate of the second moment (average squared gradient).
+     */
+    public static final float BETA2 = 0.999f;
+
+    private final float learningRate;
+    private final float[] gradSum, gradSqrSum;
+    private final float[] biasSum, biasSqrSum;
+
+    /**
+     * Number of moment updates, and bias corrections for that number of updates.
+     */
+    private int iteration;
+    private float correction1 = 1, correction2 = 1;
+
+    public AdamOptimizer(AbstractLayer layer) {
+        this.learningRate = layer.getLearningRate();
+        this.gradSum = layer.getGradients() != null ? new float[layer.getGradients().size()] : null;
+        this.gradSqrSum = layer.getPrevGradSqrSum() != null ? layer.getPrevGradSqrSum().getValues() : null;
+        this.biasSum = layer.getBiases() != null ? new float[layer.getBiases().length] : null;
+        this.biasSqrSum = layer.getPrevBiasSqrSum() != null ? layer.getPrevBiasSqrSum().getValues() : null;
+    }
+
+    /**
+     * Starts the next update, and calculates weight changes for it.
+     */
+    @Override
+    public void calculateDeltaWeights(final float[] gradients, final float[] deltaWeights) {
+        iteration++;
+        correction1 = 1 - (float) Math.pow(BETA1, iteration);
+        correction2 = 1 - (float) Math.pow(BETA2, iteration);
+        deltaFor(gradients, deltaWeights, gradSum, gradSqrSum);
+    }
+
+    @Override
+    public void calculateDeltaBiases(final float[] gradients, final float[] deltaBiases) {
+        deltaFor(gradients, deltaBiases, biasSum, biasSqrSum);
+    }
+
+    private void deltaFor(final float[] gradients, final float[] deltas, final float[] sum, final float[] sqrSum) {
+        for (int i = 0; i < gradients.length; i++) {
+            final float gradient = gradients[i];
+            sum[i] = BETA1 * sum[i] + (1 - BETA1) * gradient;
+            sqrSum[i] = BETA2 * sqrSum[i] + (1 - BETA2) * gradient * gradient;
+            final float firstMoment = sum[i] / correction1;
+            final float secondMoment = sqrSum[i] / correction2;
+            deltas[i] = -learningRate * firstMoment / ((float) Math.sqrt(secondMoment) + AdaGradOptimizer.EPSILON);
+        }
+    }
+
+}
@@ -23,24 +23,19 @@
 package deepnetts.net.train.opt;
 
 import deepnetts.net.layers.AbstractLayer;
-import deepnetts.util.DeepNettsException;
 import deepnetts.util.Tensor;
 import java.io.Serializable;
 
 public final class MomentumOptimizer implements Optimizer, Serializable {
 
-    public final static int ROW_IDX=0;
-    public final static int COL_IDX=1;
-    
+    private static final long serialVersionUID = 6454649742610393236L;
+
     private float momentum;
     private float learningRate;        
-    private final Tensor prevDeltaWeights;  
+    private final Tensor prevDeltaWeights; // kept as tensor, like in networks serialized before
     private final float[] prevDeltaBiases;
     
-    AbstractLayer layer;
-    
     public MomentumOptimizer(AbstractLayer layer) {
-        this.layer = layer;
         this.learningRate = layer.getLearningRate();
         this.momentum = layer.getMomentum();
         this.prevDeltaWeights = layer.getPrevDeltaWeights();
@@ -48,24 +43,19 @@ public final class MomentumOptimizer implements Optimizer, Serializable {
     }
     
     @Override
-    public float calculateDeltaWeight(final float grad, final int... idxs) { // momentum with idxs
-        if (idxs.length==2)
-            return -learningRate * grad + momentum * prevDeltaWeights.get(idxs[ROW_IDX], idxs[COL_IDX]); 
-        else if (idxs.length==4) {
-            final float dw = -learningRate * grad + momentum * prevDeltaWeights.get(idxs[ROW_IDX], idxs[COL_IDX], idxs[2], idxs[3]/*, inDepth, deltaCol*/);    // ch? z?
-            if (dw == Float.NaN) {
-                throw new DeepNettsException("NaN in momentum!!!"+layer.getClass());
-            }
-            return dw;
-        }
-        else
-            return -learningRate * grad + momentum * prevDeltaWeights.get(idxs[ROW_IDX], idxs[COL_IDX]); 
-         
+    public void calculateDeltaWeights(final float[] gradients, final float[] deltaWeights) {
+        deltaFor(gradients, deltaWeights, prevDeltaWeights != null ? prevDeltaWeights.getValues() : null);
     }
 
     @Override
-    public float calculateDeltaBias(float gradient, int idx) {
-         return -learningRate * gradient + momentum * prevDeltaBiases[idx];  // ovde prev biases
+    public void calculateDeltaBiases(final float[] gradients, final float[] deltaBiases) {
+        deltaFor(gradients, deltaBiases, prevDeltaBiases);
+    }
+
+    private void deltaFor(final float[] gradients, final float[] deltas, final float[] prevDeltas) {
+        for (int i = 0; i < gradients.length; i++) {
+            deltas[i] = -learningRate * gradients[i] + momentum * prevDeltas[i];
+        }
     }
 
-}
\ No newline at end of file
+}
@@ -25,10 +25,34 @@ package deepnetts.net.train.opt;
 import deepnetts.net.layers.AbstractLayer;
 import deepnetts.util.DeepNettsException;
 
+/**
+ * Optimizer calculates weight changes from gradients, for all weights or biases of a layer at once.
+ * Layers sum gradients during backward pass, and use optimizer once per learning iteration (sample or batch),
+ * when weight changes are applied.
+ *
+ * @author Zoran Sevarac
+ */
 public interface Optimizer {
-    
-    public float calculateDeltaWeight(final float gradient, final int... index);
-    public float calculateDeltaBias(final float gradient, final int idx);
+
+    /**
+     * Calculates changes for all weights of the layer, from their gradients averaged over samples.
+     * Values are in the same order as values of layer's gradients tensor.
+     * Gradients and weight changes can be the same array.
+     *
+     * @param gradients weight gradients
+     * @param deltaWeights array to store weight changes
+     */
+    public void calculateDeltaWeights(final float[] gradients, final float[] deltaWeights);
+
+    /**
+     * Calculates changes for all biases of the layer, from their gradients averaged over samples.
+     * Called after weight changes for the same iteration are calculated.
+     * Gradients and bias changes can be the same array.
+     *
+     * @param gradients bias gradients
+     * @param deltaBiases array to store bias changes
+     */
+    public void calculateDeltaBiases(final float[] gradients, final float[] deltaBiases);
          
     public static Optimizer create(OptimizerType type, AbstractLayer layer) {
         switch (type) {
@@ -36,6 +60,14 @@ public interface Optimizer {
                 return new SgdOptimizer(layer);
             case MOMENTUM:
                 return new MomentumOptimizer(layer);
+            case ADAGRAD:
+                return new AdaGradOptimizer(layer);
+            case RMSPROP:
+                return new RmsPropOptimizer(layer);
+            case ADADELTA:
+                return new AdaDeltaOptimizer(layer);
+            case ADAM:
+                return new AdamOptimizer(layer);
             default:
                 throw new DeepNettsException("Unknown optimizer:" + type);
         }
@@ -31,5 +31,31 @@ public enum OptimizerType {
      * Stochastic Gradient Descent, a basic type of neural network optimization algorithm.
      */
     SGD,
-    MOMENTUM;
+
+    /**
+     * Stochastic Gradient Descent with momentum, which adds a part of previous weight change to current weight change.
+     */
+    MOMENTUM,
+
+    /**
+     * Adaptive learning rate for each weight, based on the sum of all previous squared gradients.
+     */
+    ADAGRAD,
+
+    /**
+     * Adaptive learning rate for each weight, based on decaying average of squared gradients.
+     */
+    RMSPROP,
+
+    /**
+     * Adaptive learning rate for each weight, based on decaying averages of squared gradients and squared weight changes.
+     * Does not use learning rate.
+     */
+    ADADELTA,
+
+    /**
+     * Adaptive moment estimation, combines momentum and RMSProp.
+     * Works well with smaller learning rates, like 0.001.
+     */
+    ADAM;
 }
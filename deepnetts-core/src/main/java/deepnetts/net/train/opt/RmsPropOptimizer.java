@@ -0,0 +1,73 @@
+/**
+ *  DeepNetts is pure Java Deep Learning Library with support for Backpropagation
+ *  based learning and image recognition.
+ *
+ *  Copyright (C) 2017  Zoran Sevarac <sevarac@gmail.com>
+ *
+ * This file is part of DeepNetts.
+ *
+ * DeepNetts is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <https://www.gnu.org/licenses/>.package
+ * deepnetts.core;
+ */
+
+package deepnetts.net.train.opt;
+
+import deepnetts.net.layers.AbstractLayer;
+import java.io.Serializable;
+
+/**
+ * RMSProp optimizer, which scales learning rate for each weight with the square root
+ * of decaying average of its squared gradients.
+ * Unlike AdaGrad, learning rate does not keep decreasing during training.
+ * Averages are kept in layer's prevGradSqrSum and prevBiasSqrSum tensors.
+ *
+ * @author Zoran Sevarac
+ */
+public final class RmsPropOptimizer implements Optimizer, Serializable {
+
+    private static final long serialVersionUID = -7502421058851161778L;
+
+    /**
+     * Decay rate of the average of squared gradients.
+     */
+    public static final float DECAY_RATE = 0.9f;
+
+    private final float learningRate;
+    private final float[] gradSqrSum;
+    private final float[] biasSqrSum;
+
+    public RmsPropOptimizer(AbstractLayer layer) {
+        this.learningRate = layer.getLearningRate();
+        this.gradSqrSum = layer.getPrevGradSqrSum() != null ? layer.getPrevGradSqrSum().getValues() : null;
+        this.biasSqrSum = layer.getPrevBiasSqrSum() != null ? layer.getPrevBiasSqrSum().getValues() : null;
+    }
+
+    @Override
+    public void calculateDeltaWeights(final float[] gradients, final float[] deltaWeights) {
+        deltaFor(gradients, deltaWeights, gradSqrSum);
+    }
+
+    @Override
+    public void calculateDeltaBiases(final float[] gradients, final float[] deltaBiases) {
+        deltaFor(gradients, deltaBiases, biasSqrSum);
+    }
+
+    private void deltaFor(final float[] gradients, final float[] deltas, final float[] sqrSum) {
+        for (int i = 0; i < gradients.length; i++) {
+            final float gradient = gradients[i];
+            sqrSum[i] = DECAY_RATE * sqrSum[i] + (1 - DECAY_RATE) * gradient * gradient;
+            deltas[i] = -learningRate * gradient / ((float) Math.sqrt(sqrSum[i]) + AdaGradOptimizer.EPSILON);
+        }
+    }
+
+}
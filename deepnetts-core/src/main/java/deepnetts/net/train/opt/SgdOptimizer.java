@@ -31,6 +31,8 @@ import java.io.Serializable;
  */
 public final class SgdOptimizer implements Optimizer, Serializable  {
 
+    private static final long serialVersionUID = 8838615133822228400L;
+
     private float learningRate;
     // bias lr?
     
@@ -38,15 +40,16 @@ public final class SgdOptimizer implements Optimizer, Serializable  {
         this.learningRate = layer.getLearningRate();
     }
     
-    // index is not used!
     @Override
-    public float calculateDeltaWeight(final float gradient, final int... index) {
-        return -learningRate * gradient;
+    public void calculateDeltaWeights(final float[] gradients, final float[] deltaWeights) {
+        for (int i = 0; i < gradients.length; i++) {
+            deltaWeights[i] = -learningRate * gradients[i];
+        }
     }
 
     @Override
-    public float calculateDeltaBias(float gradient, int idx) {
-        return -learningRate * gradient;
+    public void calculateDeltaBiases(final float[] gradients, final float[] deltaBiases) {
+        calculateDeltaWeights(gradients, deltaBiases);
     }
 
     
@@ -0,0 +1,35 @@
+/**
+ *  DeepNetts is pure Java Deep Learning Library with support for Backpropagation
+ *  based learning and image recognition.
+ *
+ *  Copyright (C) 2017  Zoran Sevarac <sevarac@gmail.com>
+ *
+ * This file is part of DeepNetts.
+ *
+ * DeepNetts is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <https://www.gnu.org/licenses/>.package
+ * deepnetts.core;
+ */
+package deepnetts.net.weights;
+
+/**
+ * Supported precisions for storing layer weights used for prediction.
+ * With BFLOAT16 weights are kept as 16 bit brain floating point numbers, which have the same range as float,
+ * but only 8 bits of precision. This halves memory used by weights and memory traffic in forward pass,
+ * but layers with bfloat16 weights can not be trained.
+ *
+ * @see deepnetts.util.BFloat16
+ * @author Zoran Sevarac
+ */
+public enum PrecisionType {
+    FLOAT32, BFLOAT16;
+}
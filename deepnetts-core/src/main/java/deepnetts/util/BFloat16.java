@@ -0,0 +1,103 @@
+/**
+ *  DeepNetts is pure Java Deep Learning Library with support for Backpropagation
+ *  based learning and image recognition.
+ *
+ *  Copyright (C) 2017  Zoran Sevarac <sevarac@gmail.com>
+ *
+ * This file is part of DeepNetts.
+ *
+ * DeepNetts is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <https://www.gnu.org/licenses/>.package
+ * deepnetts.core;
+ */
+package deepnetts.util;
+
+/**
+ * Conversion between float and bfloat16 (brain floating point) numbers.
+ * Bfloat16 number is the upper half of the corresponding float: it has the same sign and exponent bits,
+ * and only the 7 highest bits of mantissa. It is stored in a short, and converted to float
+ * just by shifting it to the upper half of an int.
+ *
+ * @author Zoran Sevarac
+ */
+public final class BFloat16 {
+
+    /**
+     * Prevent instantiation of this class.
+     */
+    private BFloat16() { }
+
+    /**
+     * Converts the specified float to bfloat16, rounded to nearest (ties to even).
+     * NaN stays NaN.
+     *
+     * @param value float value to convert
+     * @return bfloat16 value
+     */
+    public static short fromFloat(final float value) {
+        final int bits = Float.floatToRawIntBits(value);
+        if ((bits & 0x7fffffff) > 0x7f800000) {
+            return (short) ((bits >>> 16) | 0x40); // keep NaN quiet, rounding could turn it into infinity
+        }
+        return (short) ((bits + 0x7fff + ((bits >>> 16) & 1)) >>> 16);
+    }
+
+    /**
+     * Converts the specified bfloat16 value to float. Conversion is exact.
+     *
+     * @param value bfloat16 value
+     * @return float value
+     */
+    public static float toFloat(final short value) {
+        return Float.intBitsToFloat(value << 16);
+    }
+
+    /**
+     * Converts all values in the specified float array to bfloat16.
+     *
+     * @param src values to convert
+     * @param dest array to store bfloat16 values, at least as long as src
+     */
+    public static void pack(final float[] src, final short[] dest) {
+        for (int i = 0; i < src.length; i++) {
+            dest[i] = fromFloat(src[i]);
+        }
+    }
+
+    /**
+     * Converts all values in the specified float array to a new array of bfloat16 values.
+     *
+     * @param src values to convert
+     * @return bfloat16 values
+     */
+    public static short[] pack(final float[] src) {
+        final short[] dest = new short[src.length];
+        pack(src, dest);
+        return dest;
+    }
+
+    /**
+     * Converts specified number of bfloat16 values to floats.
+     *
+     * @param src bfloat16 values
+     * @param srcOffset position of the first value to convert
+     * @param dest array to store float values
+     * @param destOffset position of the first float value in dest
+     * @param count number of values to convert
+     */
+    public static void unpack(final short[] src, final int srcOffset, final float[] dest, final int destOffset, final int count) {
+        for (int i = 0; i < count; i++) {
+            dest[destOffset + i] = Float.intBitsToFloat(src[srcOffset + i] << 16);
+        }
+    }
+
+}
@@ -0,0 +1,476 @@
+/**
+ *  DeepNetts is pure Java Deep Learning Library with support for Backpropagation
+ *  based learning and image recognition.
+ *
+ *  Copyright (C) 2017  Zoran Sevarac <sevarac@gmail.com>
+ *
+ * This file is part of DeepNetts.
+ *
+ * DeepNetts is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <https://www.gnu.org/licenses/>.package
+ * deepnetts.core;
+ */
+
+package deepnetts.util;
+
+import deepnetts.net.ConvolutionalNetwork;
+import deepnetts.net.FeedForwardNetwork;
+import deepnetts.net.NetworkType;
+import deepnetts.net.NeuralNetwork;
+import deepnetts.net.layers.AbstractLayer;
+import deepnetts.net.layers.ConvolutionalLayer;
+import deepnetts.net.layers.FullyConnectedLayer;
+import deepnetts.net.layers.InputLayer;
+import deepnetts.net.layers.LayerType;
+import deepnetts.net.layers.MaxPoolingLayer;
+import deepnetts.net.layers.OutputLayer;
+import deepnetts.net.layers.SoftmaxOutputLayer;
+import deepnetts.net.layers.activation.ActivationFunction;
+import deepnetts.net.layers.activation.ActivationType;
+import deepnetts.net.loss.BinaryCrossEntropyLoss;
+import deepnetts.net.loss.CrossEntropyLoss;
+import deepnetts.net.loss.LossType;
+import deepnetts.net.loss.MeanSquaredErrorLoss;
+import deepnetts.net.weights.PrecisionType;
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+/**
+ * Binary file format for neural networks, used by {@link FileIO}.
+ *
+ * File starts with a header which contains network type, loss type, labels and
+ * specification of all layers, followed by weights and biases of all layers as
+ * blocks of little endian floats. File is loaded through memory mapped buffer,
+ * and weights are bulk copied from it into layers of a network created from header,
+ * so loading does not depend on Java serialization of the whole object graph
+ * (which also includes trainer, optimizers and weight changes).
+ *
+ * <pre>
+ * int    magic, version, data offset
+ * string network type, loss type, network label
+ * int    number of output labels (-1 if not set), followed by output labels as strings
+ * int    number of layers, followed by layer specifications:
+ *        string layer type, activation type (empty if not set), weight precision (empty if not set, since version 2)
+ *        int    width, height, depth, filter width, filter height, stride, number of weights, number of biases
+ * (padding to 4 bytes)
+ * float  weights and biases of each layer, in the order of layers
+ * </pre>
+ *
+ * Strings are stored as short length followed by UTF-8 bytes.
+ * Weights of layers with bfloat16 inference precision are stored as their float values, which are converted to
+ * bfloat16 again when network is loaded.
+ *
+ * @author Zoran Sevarac <zoran.sevarac@deepnetts.com>
+ */
+final class BinaryNetworkFormat {
+
+    /**
+     * First four bytes of each file: 'DNBF'.
+     */
+    static final int MAGIC = 0x464E4244;
+
+    static final int VERSION = 2;
+
+    /**
+     * Size of the buffer used to write float blocks.
+     */
+    private static final int WRITE_BUFFER_SIZE = 1 << 16;
+
+    private BinaryNetworkFormat() { }
+
+    /**
+     * Returns true if specified buffer starts with magic number of this format.
+     */
+    static boolean isBinaryFormat(ByteBuffer start) {
+        return start.remaining() >= 4 && start.order(ByteOrder.LITTLE_ENDIAN).getInt(start.position()) == MAGIC;
+    }
+
+    /**
+     * Returns true if specified network can be saved in this format: feed forward or convolutional network
+     * built only from standard layers, activation functions and loss functions, which can be created again from header
+     * with network builders.
+     */
+    static boolean canWrite(NeuralNetwork<?> neuralNet) {
+        final Class<?> netClass = neuralNet.getClass();
+        if (netClass != FeedForwardNetwork.class && netClass != ConvolutionalNetwork.class) {
+            return false;
+        }
+        if (neuralNet.getLossFunction() != null) {
+            final Class<?> lossClass = neuralNet.getLossFunction().getClass();
+            if (lossClass != MeanSquaredErrorLoss.class && lossClass != CrossEntropyLoss.class && lossClass != BinaryCrossEntropyLoss.class) {
+                return false;
+            }
+        }
+
+        for (AbstractLayer layer : neuralNet.getLayers()) {
+            final Class<?> layerClass = layer.getClass();
+            final boolean feedForwardLayer = layerClass == InputLayer.class || layerClass == FullyConnectedLayer.class
+                                            || layerClass == OutputLayer.class || layerClass == SoftmaxOutputLayer.class;
+            final boolean convolutionalLayer = layerClass == ConvolutionalLayer.class || layerClass == MaxPoolingLayer.class;
+            if (!feedForwardLayer && !(convolutionalLayer && netClass == ConvolutionalNetwork.class)) {
+                return false;
+            }
+            if (layerClass == InputLayer.class && netClass == FeedForwardNetwork.class && (layer.getHeight() != 1 || layer.getDepth() != 1)) {
+                return false; // feed forward network is created with flat input layer
+            }
+
+            final ActivationType activationType = layer.getActivationType();
+            if (activationType != null && activationType != ActivationType.SOFTMAX && layer.getActivation() != null
+                    && layer.getActivation().getClass() != ActivationFunction.create(activationType).getClass()) {
+                return false; // custom activation function set on layer
+            }
+        }
+        return true;
+    }
+
+    static void write(NeuralNetwork<?> neuralNet, Path file) throws IOException {
+        final List<AbstractLayer> layers = neuralNet.getLayers();
+        final ByteBuffer header = ByteBuffer.allocate(headerSize(neuralNet)).order(ByteOrder.LITTLE_ENDIAN);
+
+        header.putInt(MAGIC);
+        header.putInt(VERSION);
+        header.putInt(header.capacity());
+        putString(header, NetworkType.Of(neuralNet.getClass()).toString());
+        putString(header, neuralNet.getLossFunction() != null ? LossType.of(neuralNet.getLossFunction().getClass()).toString() : "");
+        putString(header, neuralNet.getLabel());
+
+        final String[] outputLabels = neuralNet.getOutputLabels();
+        header.putInt(outputLabels != null ? outputLabels.length : -1);
+        if (outputLabels != null) {
+            for (String outputLabel : outputLabels) {
+                putString(header, outputLabel);
+            }
+        }
+
+        final Tensor[] weights = new Tensor[layers.size()];
+        header.putInt(layers.size());
+        for (int i = 0; i < layers.size(); i++) {
+            final AbstractLayer layer = layers.get(i);
+            weights[i] = floatWeights(layer);
+            putString(header, layerType(layer).toString());
+            putString(header, layer.getActivationType() != null ? layer.getActivationType().toString() : "");
+            putString(header, weightPrecision(layer));
+            header.putInt(layer.getWidth());
+            header.putInt(layer.getHeight());
+            header.putInt(layer.getDepth());
+            if (layer instanceof ConvolutionalLayer) {
+                final ConvolutionalLayer convLayer = (ConvolutionalLayer) layer;
+                header.putInt(convLayer.getFilterWidth());
+                header.putInt(convLayer.getFilterHeight());
+                header.putInt(convLayer.getStride());
+            } else if (layer instanceof MaxPoolingLayer) {
+                final MaxPoolingLayer poolLayer = (MaxPoolingLayer) layer;
+                header.putInt(poolLayer.getFilterWidth());
+                header.putInt(poolLayer.getFilterHeight());
+                header.putInt(poolLayer.getStride());
+            } else {
+                header.putInt(0);
+                header.putInt(0);
+                header.putInt(0);
+            }
+            header.putInt(weightsCount(layer, weights[i]));
+            header.putInt(layer.getBiases() != null ? layer.getBiases().length : 0);
+        }
+        ((Buffer) header).clear(); // write whole header including padding
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            writeFully(channel, header);
+
+            final ByteBuffer data = ByteBuffer.allocate(WRITE_BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            for (int i = 0; i < layers.size(); i++) {
+                final AbstractLayer layer = layers.get(i);
+                if (layer instanceof ConvolutionalLayer) {
+                    for (Tensor filter : ((ConvolutionalLayer) layer).getFilters()) {
+                        writeFloats(channel, data, filter.getValues(), filter.getOffset(), filter.size());
+                    }
+                } else if (weights[i] != null) {
+                    writeFloats(channel, data, weights[i].getValues(), weights[i].getOffset(), weights[i].size());
+                }
+                if (layer.getBiases() != null) {
+                    writeFloats(channel, data, layer.getBiases(), 0, layer.getBiases().length);
+                }
+            }
+        }
+    }
+
+    static NeuralNetwork<?> read(Path file) throws IOException {
+        final MappedByteBuffer buf;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            buf = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        buf.order(ByteOrder.LITTLE_ENDIAN);
+
+        if (buf.remaining() < 12 || buf.getInt() != MAGIC) {
+            throw new IOException("Not a DeepNetts binary network file: " + file);
+        }
+        final int version = buf.getInt();
+        if (version < 1 || version > VERSION) {
+            throw new IOException("Unsupported binary network file version: " + version);
+        }
+        final int dataOffset = buf.getInt();
+
+        final NetworkType networkType = NetworkType.valueOf(getString(buf));
+        final String lossType = getString(buf);
+        final String label = getString(buf);
+
+        String[] outputLabels = null;
+        final int outputLabelsCount = buf.getInt();
+        if (outputLabelsCount >= 0) {
+            outputLabels = new String[outputLabelsCount];
+            for (int i = 0; i < outputLabelsCount; i++) {
+                outputLabels[i] = getString(buf);
+            }
+        }
+
+        final int layerCount = buf.getInt();
+        final int[] weightCounts = new int[layerCount];
+        final int[] biasCounts = new int[layerCount];
+        final PrecisionType[] weightPrecisions = new PrecisionType[layerCount];
+
+        final NeuralNetwork<?> neuralNet;
+        switch (networkType) {
+            case FEEDFORWARD: {
+                final FeedForwardNetwork.Builder builder = FeedForwardNetwork.builder();
+                for (int i = 0; i < layerCount; i++) {
+                    final LayerSpec spec = new LayerSpec(buf, version);
+                    weightCounts[i] = spec.weightsCount;
+                    biasCounts[i] = spec.biasesCount;
+                    weightPrecisions[i] = spec.weightPrecision;
+                    switch (spec.layerType) {
+                        case INPUT:
+                            builder.addInputLayer(spec.width);
+                            break;
+                        case FULLY_CONNECTED:
+                            builder.addFullyConnectedLayer(spec.width, spec.activationType);
+                            break;
+                        case OUTPUT:
+                            builder.addOutputLayer(spec.width, spec.activationType);
+                            break;
+                        default:
+                            throw new IOException("Unsupported layer in feed forward network: " + spec.layerType);
+                    }
+                }
+                if (!lossType.isEmpty()) {
+                    builder.lossFunction(LossType.valueOf(lossType));
+                }
+                neuralNet = builder.build();
+                break;
+            }
+            case CONVOLUTIONAL: {
+                final ConvolutionalNetwork.Builder builder = ConvolutionalNetwork.builder();
+                for (int i = 0; i < layerCount; i++) {
+                    final LayerSpec spec = new LayerSpec(buf, version);
+                    weightCounts[i] = spec.weightsCount;
+                    biasCounts[i] = spec.biasesCount;
+                    weightPrecisions[i] = spec.weightPrecision;
+                    switch (spec.layerType) {
+                        case INPUT:
+                            builder.addInputLayer(spec.width, spec.height, spec.depth);
+                            break;
+                        case CONVOLUTIONAL:
+                            builder.addConvolutionalLayer(spec.filterWidth, spec.filterHeight, spec.depth, spec.stride, spec.activationType);
+                            break;
+                        case MAXPOOLING:
+                            builder.addMaxPoolingLayer(spec.filterWidth, spec.filterHeight, spec.stride);
+                            break;
+                        case FULLY_CONNECTED:
+                            builder.addFullyConnectedLayer(spec.width, spec.activationType);
+                            break;
+                        case OUTPUT:
+                            builder.addOutputLayer(spec.width, spec.activationType);
+                            break;
+                        default:
+                            throw new IOException("Unsupported layer in convolutional network: " + spec.layerType);
+                    }
+                }
+                if (!lossType.isEmpty()) {
+                    builder.lossFunction(LossType.valueOf(lossType));
+                }
+                neuralNet = builder.build();
+                break;
+            }
+            default:
+                throw new IOException("Unsupported network type: " + networkType);
+        }
+
+        if (!label.isEmpty()) {
+            neuralNet.setLabel(label);
+        }
+        if (outputLabels != null) {
+            neuralNet.setOutputLabels(outputLabels);
+        }
+
+        // bulk copy weights and biases from mapped file into layers
+        ((Buffer) buf).position(dataOffset);
+        final FloatBuffer data = buf.slice().order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer();
+        final List<AbstractLayer> layers = neuralNet.getLayers();
+        for (int i = 0; i < layerCount; i++) {
+            final AbstractLayer layer = layers.get(i);
+            if (weightCounts[i] != weightsCount(layer, layer.getWeights()) || biasCounts[i] != (layer.getBiases() != null ? layer.getBiases().length : 0)) {
+                throw new IOException("Weights in file do not match layer " + i + " (" + layer + ")");
+            }
+            if (layer instanceof ConvolutionalLayer) {
+                for (Tensor filter : ((ConvolutionalLayer) layer).getFilters()) {
+                    data.get(filter.getValues(), filter.getOffset(), filter.size());
+                }
+            } else if (layer.getWeights() != null) {
+                final Tensor weights = layer.getWeights();
+                data.get(weights.getValues(), weights.getOffset(), weights.size());
+            }
+            if (biasCounts[i] > 0) {
+                data.get(layer.getBiases(), 0, biasCounts[i]);
+            }
+            if (weightPrecisions[i] != null && layer instanceof FullyConnectedLayer) {
+                ((FullyConnectedLayer) layer).setInferencePrecision(weightPrecisions[i]);
+            }
+        }
+
+        return neuralNet;
+    }
+
+    /**
+     * Layer specification from file header.
+     */
+    private static final class LayerSpec {
+        final LayerType layerType;
+        final ActivationType activationType;
+        final PrecisionType weightPrecision;
+        final int width, height, depth, filterWidth, filterHeight, stride, weightsCount, biasesCount;
+
+        LayerSpec(ByteBuffer buf, int version) {
+            layerType = LayerType.valueOf(getString(buf));
+            final String activation = getString(buf);
+            activationType = activation.isEmpty() ? null : ActivationType.valueOf(activation);
+            final String precision = version >= 2 ? getString(buf) : "";
+            weightPrecision = precision.isEmpty() ? null : PrecisionType.valueOf(precision);
+            width = buf.getInt();
+            height = buf.getInt();
+            depth = buf.getInt();
+            filterWidth = buf.getInt();
+            filterHeight = buf.getInt();
+            stride = buf.getInt();
+            weightsCount = buf.getInt();
+            biasesCount = buf.getInt();
+        }
+    }
+
+    private static LayerType layerType(AbstractLayer layer) {
+        if (layer instanceof InputLayer) {
+            return LayerType.INPUT;
+        } else if (layer instanceof ConvolutionalLayer) {
+            return LayerType.CONVOLUTIONAL;
+        } else if (layer instanceof MaxPoolingLayer) {
+            return LayerType.MAXPOOLING;
+        } else if (layer instanceof FullyConnectedLayer) {
+            return LayerType.FULLY_CONNECTED;
+        } else if (layer instanceof OutputLayer) {
+            return LayerType.OUTPUT;
+        }
+        throw new DeepNettsException("Unsupported layer type: " + layer.getClass().getName());
+    }
+
+    private static String weightPrecision(AbstractLayer layer) {
+        return layer instanceof FullyConnectedLayer ? ((FullyConnectedLayer) layer).getInferencePrecision().toString() : "";
+    }
+
+    /**
+     * Returns float weights of a layer, or their float values if layer keeps only bfloat16 weights.
+     */
+    private static Tensor floatWeights(AbstractLayer layer) {
+        if (layer instanceof FullyConnectedLayer && ((FullyConnectedLayer) layer).getInferencePrecision() == PrecisionType.BFLOAT16) {
+            return ((FullyConnectedLayer) layer).copyWeights();
+        }
+        return layer.getWeights();
+    }
+
+    private static int weightsCount(AbstractLayer layer, Tensor weights) {
+        if (layer instanceof ConvolutionalLayer) {
+            int count = 0;
+            for (Tensor filter : ((ConvolutionalLayer) layer).getFilters()) {
+                count += filter.size();
+            }
+            return count;
+        }
+        return weights != null ? weights.size() : 0;
+    }
+
+    /**
+     * Returns header size in bytes, aligned to 4 bytes so float blocks are aligned in file.
+     */
+    private static int headerSize(NeuralNetwork<?> neuralNet) {
+        int size = 3 * Integer.BYTES;
+        size += stringSize(NetworkType.Of(neuralNet.getClass()).toString());
+        size += stringSize(neuralNet.getLossFunction() != null ? LossType.of(neuralNet.getLossFunction().getClass()).toString() : "");
+        size += stringSize(neuralNet.getLabel());
+        size += Integer.BYTES;
+        if (neuralNet.getOutputLabels() != null) {
+            for (String outputLabel : neuralNet.getOutputLabels()) {
+                size += stringSize(outputLabel);
+            }
+        }
+        size += Integer.BYTES;
+        for (AbstractLayer layer : neuralNet.getLayers()) {
+            size += stringSize(layerType(layer).toString());
+            size += stringSize(layer.getActivationType() != null ? layer.getActivationType().toString() : "");
+            size += stringSize(weightPrecision(layer));
+            size += 8 * Integer.BYTES;
+        }
+        return (size + 3) & ~3;
+    }
+
+    private static int stringSize(String str) {
+        return Short.BYTES + (str != null ? str.getBytes(StandardCharsets.UTF_8).length : 0);
+    }
+
+    private static void putString(ByteBuffer buf, String str) {
+        final byte[] bytes = str != null ? str.getBytes(StandardCharsets.UTF_8) : new byte[0];
+        buf.putShort((short) bytes.length);
+        buf.put(bytes);
+    }
+
+    private static String getString(ByteBuffer buf) {
+        final byte[] bytes = new byte[buf.getShort() & 0xFFFF];
+        buf.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void writeFloats(FileChannel channel, ByteBuffer buf, float[] values, int offset, int count) throws IOException {
+        ((Buffer) buf).clear();
+        final FloatBuffer floats = buf.asFloatBuffer();
+        while (count > 0) {
+            final int n = Math.min(count, floats.capacity());
+            ((Buffer) floats).clear();
+            floats.put(values, offset, n);
+            ((Buffer) buf).clear();
+            ((Buffer) buf).limit(n * Float.BYTES);
+            writeFully(channel, buf);
+            offset += n;
+            count -= n;
+        }
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buf) throws IOException {
+        while (buf.hasRemaining()) {
+            channel.write(buf);
+        }
+    }
+
+}
@@ -0,0 +1,671 @@
+/**
+ *  DeepNetts is pure Java Deep Learning Library with support for Backpropagation
+ *  based learning and image recognition.
+ *
+ *  Copyright (C) 2017  Zoran Sevarac <sevarac@gmail.com>
+ *
+ * This file is part of DeepNetts.
+ *
+ * DeepNetts is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <https://www.gnu.org/licenses/>.package
+ * deepnetts.core;
+ */
+package deepnetts.util;
+
+/**
+ * Basic linear algebra kernels on flat, row-major float arrays.
+ * All matrices are specified with an array, offset of the first element and
+ * leading dimension (distance between two consecutive rows), so kernels can
+ * work directly on tensor values and scratch buffers without copying.
+ * Kernels with Bf16 suffix read one of the matrices as bfloat16 values, converted to float on the fly.
+ *
+ * @author Zoran Sevarac
+ */
+public final class Blas {
+
+    /**
+     * Number of columns of A / rows of B processed in one block, so that the
+     * block of B rows stays in cache while it is reused for all rows of A.
+     */
+    private static final int BLOCK_K = 256;
+
+    /**
+     * Number of columns of B and C processed in one block.
+     */
+    private static final int BLOCK_N = 512;
+
+    /**
+     * Prevent instantiation of this class.
+     */
+    private Blas() { }
+
+    /**
+     * Matrix multiplication C += A * B, where A is m x k, B is k x n and C is m x n matrix.
+     *
+     * Loops are blocked over k and n dimensions for cache reuse, and four rows of C
+     * are computed at once so that each loaded row of B is used four times while
+     * corresponding values of A are kept in registers. Inner loop runs over
+     * contiguous memory and can be auto vectorized by JIT.
+     *
+     * @param m number of rows of A and C
+     * @param n number of columns of B and C
+     * @param k number of columns of A and rows of B
+     * @param a values of matrix A
+     * @param aOff offset of the first element of A
+     * @param lda leading dimension (row length) of A
+     * @param b values of matrix B
+     * @param bOff offset of the first element of B
+     * @param ldb leading dimension (row length) of B
+     * @param c values of matrix C
+     * @param cOff offset of the first element of C
+     * @param ldc leading dimension (row length) of C
+     */
+    public static void sgemm(final int m, final int n, final int k,
+                             final float[] a, final int aOff, final int lda,
+                             final float[] b, final int bOff, final int ldb,
+                             final float[] c, final int cOff, final int ldc) {
+
+        for (int kk = 0; kk < k; kk += BLOCK_K) {
+            final int kEnd = Math.min(kk + BLOCK_K, k);
+
+            for (int jj = 0; jj < n; jj += BLOCK_N) {
+                final int nb = Math.min(BLOCK_N, n - jj);
+
+                int i = 0;
+                for (; i + 4 <= m; i += 4) {
+                    final int a0 = aOff + i * lda;
+                    final int a1 = a0 + lda;
+                    final int a2 = a1 + lda;
+                    final int a3 = a2 + lda;
+                    final int c0 = cOff + i * ldc + jj;
+                    final int c1 = c0 + ldc;
+                    final int c2 = c1 + ldc;
+                    final int c3 = c2 + ldc;
+
+                    for (int p = kk; p < kEnd; p++) {
+                        final float av0 = a[a0 + p];
+                        final float av1 = a[a1 + p];
+                        final float av2 = a[a2 + p];
+                        final float av3 = a[a3 + p];
+                        final int bRow = bOff + p * ldb + jj;
+
+                        for (int j = 0; j < nb; j++) {
+                            final float bv = b[bRow + j];
+                            c[c0 + j] += av0 * bv;
+                            c[c1 + j] += av1 * bv;
+                            c[c2 + j] += av2 * bv;
+                            c[c3 + j] += av3 * bv;
+                        }
+                    }
+                }
+
+                // remaining rows of C one by one
+                for (; i < m; i++) {
+                    final int a0 = aOff + i * lda;
+                    final int c0 = cOff + i * ldc + jj;
+
+                    for (int p = kk; p < kEnd; p++) {
+                        final float av0 = a[a0 + p];
+                        final int bRow = bOff + p * ldb + jj;
+
+                        for (int j = 0; j < nb; j++) {
+                            c[c0 + j] += av0 * b[bRow + j];
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Matrix multiplication C += transpose(A) * B, where A is k x m, B is k x n and C is m x n matrix.
+     *
+     * Computed as a sum of outer products of rows of A and B, so that inner loop
+     * runs over contiguous rows of B and C.
+     *
+     * @param m number of columns of A and rows of C
+     * @param n number of columns of B and C
+     * @param k number of rows of A and B
+     * @param a values of matrix A
+     * @param aOff offset of the first element of A
+     * @param lda leading dimension (row length) of A
+     * @param b values of matrix B
+     * @param bOff offset of the first element of B
+     * @param ldb leading dimension (row length) of B
+     * @param c values of matrix C
+     * @param cOff offset of the first element of C
+     * @param ldc leading dimension (row length) of C
+     */
+    public static void sgemmTransA(final int m, final int n, final int k,
+                                   final float[] a, final int aOff, final int lda,
+                                   final float[] b, final int bOff, final int ldb,
+                                   final float[] c, final int cOff, final int ldc) {
+
+        for (int jj = 0; jj < n; jj += BLOCK_N) {
+            final int nb = Math.min(BLOCK_N, n - jj);
+
+            for (int p = 0; p < k; p++) {
+                final int aRow = aOff + p * lda;
+                final int bRow = bOff + p * ldb + jj;
+
+                int i = 0;
+                for (; i + 4 <= m; i += 4) {
+                    final float av0 = a[aRow + i];
+                    final float av1 = a[aRow + i + 1];
+                    final float av2 = a[aRow + i + 2];
+                    final float av3 = a[aRow + i + 3];
+                    final int c0 = cOff + i * ldc + jj;
+                    final int c1 = c0 + ldc;
+                    final int c2 = c1 + ldc;
+                    final int c3 = c2 + ldc;
+
+                    for (int j = 0; j < nb; j++) {
+                        final float bv = b[bRow + j];
+                        c[c0 + j] += av0 * bv;
+                        c[c1 + j] += av1 * bv;
+                        c[c2 + j] += av2 * bv;
+                        c[c3 + j] += av3 * bv;
+                    }
+                }
+
+                for (; i < m; i++) {
+                    final float av0 = a[aRow + i];
+                    final int c0 = cOff + i * ldc + jj;
+
+                    for (int j = 0; j < nb; j++) {
+                        c[c0 + j] += av0 * b[bRow + j];
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Matrix multiplication C += A * transpose(B), where A is m x k, B is n x k and C is m x n matrix.
+     *
+     * Each value of C is a dot product of rows of A and B, which are both contiguous in memory.
+     * Four rows of A are multiplied with the same row of B at once.
+     *
+     * @param m number of rows of A and C
+     * @param n number of rows of B and columns of C
+     * @param k number of columns of A and B
+     * @param a values of matrix A
+     * @param aOff offset of the first element of A
+     * @param lda leading dimension (row length) of A
+     * @param b values of matrix B
+     * @param bOff offset of the first element of B
+     * @param ldb leading dimension (row length) of B
+     * @param c values of matrix C
+     * @param cOff offset of the first element of C
+     * @param ldc leading dimension (row length) of C
+     */
+    public static void sgemmTransB(final int m, final int n, final int k,
+                                   final float[] a, final int aOff, final int lda,
+                                   final float[] b, final int bOff, final int ldb,
+                                   final float[] c, final int cOff, final int ldc) {
+
+        for (int kk = 0; kk < k; kk += BLOCK_K) {
+            final int kEnd = Math.min(kk + BLOCK_K, k);
+
+            int i = 0;
+            for (; i + 4 <= m; i += 4) {
+                final int a0 = aOff + i * lda;
+                final int a1 = a0 + lda;
+                final int a2 = a1 + lda;
+                final int a3 = a2 + lda;
+                final int c0 = cOff + i * ldc;
+
+                for (int j = 0; j < n; j++) {
+                    final int bRow = bOff + j * ldb;
+                    float sum0 = 0, sum1 = 0, sum2 = 0, sum3 = 0;
+
+                    for (int p = kk; p < kEnd; p++) {
+                        final float bv = b[bRow + p];
+                        sum0 += a[a0 + p] * bv;
+                        sum1 += a[a1 + p] * bv;
+                        sum2 += a[a2 + p] * bv;
+                        sum3 += a[a3 + p] * bv;
+                    }
+
+                    c[c0 + j] += sum0;
+                    c[c0 + ldc + j] += sum1;
+                    c[c0 + 2 * ldc + j] += sum2;
+                    c[c0 + 3 * ldc + j] += sum3;
+                }
+            }
+
+            for (; i < m; i++) {
+                final int a0 = aOff + i * lda;
+                final int c0 = cOff + i * ldc;
+
+                for (int j = 0; j < n; j++) {
+                    final int bRow = bOff + j * ldb;
+                    float sum0 = 0;
+
+                    for (int p = kk; p < kEnd; p++) {
+                        sum0 += a[a0 + p] * b[bRow + p];
+                    }
+
+                    c[c0 + j] += sum0;
+                }
+            }
+        }
+    }
+
+    /**
+     * Matrix vector multiplication y += A * x, where A is m x n matrix, x is vector of size n and y vector of size m.
+     *
+     * Each value of y is a dot product of a row of A and x, which are both contiguous in memory.
+     * Four rows of A are multiplied with x at once, and x is processed in blocks which stay in cache for all rows.
+     *
+     * @param m number of rows of A and size of y
+     * @param n number of columns of A and size of x
+     * @param a values of matrix A
+     * @param aOff offset of the first element of A
+     * @param lda leading dimension (row length) of A
+     * @param x values of vector x
+     * @param xOff offset of the first element of x
+     * @param y values of vector y
+     * @param yOff offset of the first element of y
+     */
+    public static void sgemv(final int m, final int n,
+                             final float[] a, final int aOff, final int lda,
+                             final float[] x, final int xOff,
+                             final float[] y, final int yOff) {
+
+        for (int kk = 0; kk < n; kk += BLOCK_K) {
+            final int kEnd = Math.min(kk + BLOCK_K, n);
+
+            int i = 0;
+            for (; i + 4 <= m; i += 4) {
+                final int a0 = aOff + i * lda;
+                final int a1 = a0 + lda;
+                final int a2 = a1 + lda;
+                final int a3 = a2 + lda;
+                float sum0 = 0, sum1 = 0, sum2 = 0, sum3 = 0;
+
+                for (int p = kk; p < kEnd; p++) {
+                    final float xv = x[xOff + p];
+                    sum0 += a[a0 + p] * xv;
+                    sum1 += a[a1 + p] * xv;
+                    sum2 += a[a2 + p] * xv;
+                    sum3 += a[a3 + p] * xv;
+                }
+
+                y[yOff + i] += sum0;
+                y[yOff + i + 1] += sum1;
+                y[yOff + i + 2] += sum2;
+                y[yOff + i + 3] += sum3;
+            }
+
+            for (; i < m; i++) {
+                final int a0 = aOff + i * lda;
+                float sum0 = 0;
+
+                for (int p = kk; p < kEnd; p++) {
+                    sum0 += a[a0 + p] * x[xOff + p];
+                }
+
+                y[yOff + i] += sum0;
+            }
+        }
+    }
+
+    /**
+     * Matrix vector multiplication y += transpose(A) * x, where A is m x n matrix, x is vector of size m and y vector of size n.
+     *
+     * Computed as a sum of rows of A scaled by corresponding values of x, so that A is read
+     * sequentially, row by row. Four rows of A are added to the same block of y at once.
+     *
+     * @param m number of rows of A and size of x
+     * @param n number of columns of A and size of y
+     * @param a values of matrix A
+     * @param aOff offset of the first element of A
+     * @param lda leading dimension (row length) of A
+     * @param x values of vector x
+     * @param xOff offset of the first element of x
+     * @param y values of vector y
+     * @param yOff offset of the first element of y
+     */
+    public static void sgemvTrans(final int m, final int n,
+                                  final float[] a, final int aOff, final int lda,
+                                  final float[] x, final int xOff,
+                                  final float[] y, final int yOff) {
+
+        for (int jj = 0; jj < n; jj += BLOCK_N) {
+            final int nb = Math.min(BLOCK_N, n - jj);
+            final int y0 = yOff + jj;
+
+            int i = 0;
+            for (; i + 4 <= m; i += 4) {
+                final float xv0 = x[xOff + i];
+                final float xv1 = x[xOff + i + 1];
+                final float xv2 = x[xOff + i + 2];
+                final float xv3 = x[xOff + i + 3];
+                final int a0 = aOff + i * lda + jj;
+                final int a1 = a0 + lda;
+                final int a2 = a1 + lda;
+                final int a3 = a2 + lda;
+
+                for (int j = 0; j < nb; j++) {
+                    y[y0 + j] += xv0 * a[a0 + j] + xv1 * a[a1 + j] + xv2 * a[a2 + j] + xv3 * a[a3 + j];
+                }
+            }
+
+            for (; i < m; i++) {
+                final float xv0 = x[xOff + i];
+                final int a0 = aOff + i * lda + jj;
+
+                for (int j = 0; j < nb; j++) {
+                    y[y0 + j] += xv0 * a[a0 + j];
+                }
+            }
+        }
+    }
+
+    /**
+     * Rank one update A += x * transpose(y), where x is vector of size m, y vector of size n and A is m x n matrix.
+     *
+     * Each row of A is incremented by y scaled by corresponding value of x, so that A is written
+     * sequentially, row by row. Rows for zero values of x are skipped.
+     *
+     * @param m number of rows of A and size of x
+     * @param n number of columns of A and size of y
+     * @param x values of vector x
+     * @param xOff offset of the first element of x
+     * @param y values of vector y
+     * @param yOff offset of the first element of y
+     * @param a values of matrix A
+     * @param aOff offset of the first element of A
+     * @param lda leading dimension (row length) of A
+     */
+    public static void sger(final int m, final int n,
+                            final float[] x, final int xOff,
+                            final float[] y, final int yOff,
+                            final float[] a, final int aOff, final int lda) {
+
+        for (int i = 0; i < m; i++) {
+            final float xv = x[xOff + i];
+            if (xv == 0) {
+                continue;
+            }
+
+            final int a0 = aOff + i * lda;
+            for (int j = 0; j < n; j++) {
+                a[a0 + j] += xv * y[yOff + j];
+            }
+        }
+    }
+
+    /**
+     * Matrix vector multiplication y += A * x, where A is m x n matrix of bfloat16 values, x is vector of size n and y vector of size m.
+     *
+     * Each value of y is a dot product of a row of A and x, which are both contiguous in memory.
+     * Four rows of A are multiplied with x at once, and x is processed in blocks which stay in cache for all rows.
+     *
+     * @param m number of rows of A and size of y
+     * @param n number of columns of A and size of x
+     * @param a bfloat16 values of matrix A
+     * @param aOff offset of the first element of A
+     * @param lda leading dimension (row length) of A
+     * @param x values of vector x
+     * @param xOff offset of the first element of x
+     * @param y values of vector y
+     * @param yOff offset of the first element of y
+     */
+    public static void sgemvBf16(final int m, final int n,
+                                 final short[] a, final int aOff, final int lda,
+                                 final float[] x, final int xOff,
+                                 final float[] y, final int yOff) {
+
+        for (int kk = 0; kk < n; kk += BLOCK_K) {
+            final int kEnd = Math.min(kk + BLOCK_K, n);
+
+            int i = 0;
+            for (; i + 4 <= m; i += 4) {
+                final int a0 = aOff + i * lda;
+                final int a1 = a0 + lda;
+                final int a2 = a1 + lda;
+                final int a3 = a2 + lda;
+                float sum0 = 0, sum1 = 0, sum2 = 0, sum3 = 0;
+
+                for (int p = kk; p < kEnd; p++) {
+                    final float xv = x[xOff + p];
+                    sum0 += BFloat16.toFloat(a[a0 + p]) * xv;
+                    sum1 += BFloat16.toFloat(a[a1 + p]) * xv;
+                    sum2 += BFloat16.toFloat(a[a2 + p]) * xv;
+                    sum3 += BFloat16.toFloat(a[a3 + p]) * xv;
+                }
+
+                y[yOff + i] += sum0;
+                y[yOff + i + 1] += sum1;
+                y[yOff + i + 2] += sum2;
+                y[yOff + i + 3] += sum3;
+            }
+
+            for (; i < m; i++) {
+                final int a0 = aOff + i * lda;
+                float sum0 = 0;
+
+                for (int p = kk; p < kEnd; p++) {
+                    sum0 += BFloat16.toFloat(a[a0 + p]) * x[xOff + p];
+                }
+
+                y[yOff + i] += sum0;
+            }
+        }
+    }
+
+    /**
+     * Matrix vector multiplication y += transpose(A) * x, where A is m x n matrix of bfloat16 values, x is vector of size m and y vector of size n.
+     *
+     * Computed as a sum of rows of A scaled by corresponding values of x, so that A is read
+     * sequentially, row by row. Four rows of A are added to the same block of y at once.
+     *
+     * @param m number of rows of A and size of x
+     * @param n number of columns of A and size of y
+     * @param a bfloat16 values of matrix A
+     * @param aOff offset of the first element of A
+     * @param lda leading dimension (row length) of A
+     * @param x values of vector x
+     * @param xOff offset of the first element of x
+     * @param y values of vector y
+     * @param yOff offset of the first element of y
+     */
+    public static void sgemvTransBf16(final int m, final int n,
+                                      final short[] a, final int aOff, final int lda,
+                                      final float[] x, final int xOff,
+                                      final float[] y, final int yOff) {
+
+        for (int jj = 0; jj < n; jj += BLOCK_N) {
+            final int nb = Math.min(BLOCK_N, n - jj);
+            final int y0 = yOff + jj;
+
+            int i = 0;
+            for (; i + 4 <= m; i += 4) {
+                final float xv0 = x[xOff + i];
+                final float xv1 = x[xOff + i + 1];
+                final float xv2 = x[xOff + i + 2];
+                final float xv3 = x[xOff + i + 3];
+                final int a0 = aOff + i * lda + jj;
+                final int a1 = a0 + lda;
+                final int a2 = a1 + lda;
+                final int a3 = a2 + lda;
+
+                for (int j = 0; j < nb; j++) {
+                    y[y0 + j] += xv0 * BFloat16.toFloat(a[a0 + j]) + xv1 * BFloat16.toFloat(a[a1 + j])
+                               + xv2 * BFloat16.toFloat(a[a2 + j]) + xv3 * BFloat16.toFloat(a[a3 + j]);
+                }
+            }
+
+            for (; i < m; i++) {
+                final float xv0 = x[xOff + i];
+                final int a0 = aOff + i * lda + jj;
+
+                for (int j = 0; j < nb; j++) {
+                    y[y0 + j] += xv0 * BFloat16.toFloat(a[a0 + j]);
+                }
+            }
+        }
+    }
+
+    /**
+     * Matrix multiplication C += A * B, where A is m x k, B is k x n matrix of bfloat16 values and C is m x n matrix.
+     *
+     * Loops are blocked over k and n dimensions for cache reuse, and four rows of C
+     * are computed at once so that each loaded row of B is used four times while
+     * corresponding values of A are kept in registers. Inner loop runs over
+     * contiguous memory and can be auto vectorized by JIT.
+     *
+     * @param m number of rows of A and C
+     * @param n number of columns of B and C
+     * @param k number of columns of A and rows of B
+     * @param a values of matrix A
+     * @param aOff offset of the first element of A
+     * @param lda leading dimension (row length) of A
+     * @param b bfloat16 values of matrix B
+     * @param bOff offset of the first element of B
+     * @param ldb leading dimension (row length) of B
+     * @param c values of matrix C
+     * @param cOff offset of the first element of C
+     * @param ldc leading dimension (row length) of C
+     */
+    public static void sgemmBf16(final int m, final int n, final int k,
+                                 final float[] a, final int aOff, final int lda,
+                                 final short[] b, final int bOff, final int ldb,
+                                 final float[] c, final int cOff, final int ldc) {
+
+        for (int kk = 0; kk < k; kk += BLOCK_K) {
+            final int kEnd = Math.min(kk + BLOCK_K, k);
+
+            for (int jj = 0; jj < n; jj += BLOCK_N) {
+                final int nb = Math.min(BLOCK_N, n - jj);
+
+                int i = 0;
+                for (; i + 4 <= m; i += 4) {
+                    final int a0 = aOff + i * lda;
+                    final int a1 = a0 + lda;
+                    final int a2 = a1 + lda;
+                    final int a3 = a2 + lda;
+                    final int c0 = cOff + i * ldc + jj;
+                    final int c1 = c0 + ldc;
+                    final int c2 = c1 + ldc;
+                    final int c3 = c2 + ldc;
+
+                    for (int p = kk; p < kEnd; p++) {
+                        final float av0 = a[a0 + p];
+                        final float av1 = a[a1 + p];
+                        final float av2 = a[a2 + p];
+                        final float av3 = a[a3 + p];
+                        final int bRow = bOff + p * ldb + jj;
+
+                        for (int j = 0; j < nb; j++) {
+                            final float bv = BFloat16.toFloat(b[bRow + j]);
+                            c[c0 + j] += av0 * bv;
+                            c[c1 + j] += av1 * bv;
+                            c[c2 + j] += av2 * bv;
+                            c[c3 + j] += av3 * bv;
+                        }
+                    }
+                }
+
+                // remaining rows of C one by one
+                for (; i < m; i++) {
+                    final int a0 = aOff + i * lda;
+                    final int c0 = cOff + i * ldc + jj;
+
+                    for (int p = kk; p < kEnd; p++) {
+                        final float av0 = a[a0 + p];
+                        final int bRow = bOff + p * ldb + jj;
+
+                        for (int j = 0; j < nb; j++) {
+                            c[c0 + j] += av0 * BFloat16.toFloat(b[bRow + j]);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Matrix multiplication C += A * transpose(B), where A is m x k, B is n x k matrix of bfloat16 values and C is m x n matrix.
+     *
+     * Each value of C is a dot product of rows of A and B, which are both contiguous in memory.
+     * Four rows of A are multiplied with the same row of B at once.
+     *
+     * @param m number of rows of A and C
+     * @param n number of rows of B and columns of C
+     * @param k number of columns of A and B
+     * @param a values of matrix A
+     * @param aOff offset of the first element of A
+     * @param lda leading dimension (row length) of A
+     * @param b bfloat16 values of matrix B
+     * @param bOff offset of the first element of B
+     * @param ldb leading dimension (row length) of B
+     * @param c values of matrix C
+     * @param cOff offset of the first element of C
+     * @param ldc leading dimension (row length) of C
+     */
+    public static void sgemmTransBBf16(final int m, final int n, final int k,
+                                       final float[] a, final int aOff, final int lda,
+                                       final short[] b, final int bOff, final int ldb,
+                                       final float[] c, final int cOff, final int ldc) {
+
+        for (int kk = 0; kk < k; kk += BLOCK_K) {
+            final int kEnd = Math.min(kk + BLOCK_K, k);
+
+            int i = 0;
+            for (; i + 4 <= m; i += 4) {
+                final int a0 = aOff + i * lda;
+                final int a1 = a0 + lda;
+                final int a2 = a1 + lda;
+                final int a3 = a2 + lda;
+                final int c0 = cOff + i * ldc;
+
+                for (int j = 0; j < n; j++) {
+                    final int bRow = bOff + j * ldb;
+                    float sum0 = 0, sum1 = 0, sum2 = 0, sum3 = 0;
+
+                    for (int p = kk; p < kEnd; p++) {
+                        final float bv = BFloat16.toFloat(b[bRow + p]);
+                        sum0 += a[a0 + p] * bv;
+                        sum1 += a[a1 + p] * bv;
+                        sum2 += a[a2 + p] * bv;
+                        sum3 += a[a3 + p] * bv;
+                    }
+
+                    c[c0 + j] += sum0;
+                    c[c0 + ldc + j] += sum1;
+                    c[c0 + 2 * ldc + j] += sum2;
+                    c[c0 + 3 * ldc + j] += sum3;
+                }
+            }
+
+            for (; i < m; i++) {
+                final int a0 = aOff + i * lda;
+                final int c0 = cOff + i * ldc;
+
+                for (int j = 0; j < n; j++) {
+                    final int bRow = bOff + j * ldb;
+                    float sum0 = 0;
+
+                    for (int p = kk; p < kEnd; p++) {
+                        sum0 += a[a0 + p] * BFloat16.toFloat(b[bRow + p]);
+                    }
+
+                    c[c0 + j] += sum0;
+                }
+            }
+        }
+    }
+
+}
@@ -0,0 +1,107 @@
+/**
+ *  DeepNetts is pure Java Deep Learning Library with support for Backpropagation
+ *  based learning and image recognition.
+ *
+ *  Copyright (C) 2017  Zoran Sevarac <sevarac@gmail.com>
+ *
+ * This file is part of DeepNetts.
+ *
+ * DeepNetts is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <https://www.gnu.org/licenses/>.package
+ * deepnetts.core;
+ */
+package deepnetts.util;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
+
+/**
+ * Runs per channel calculations inside a single layer in parallel, on the common ForkJoinPool.
+ * This speeds up forward pass of large convolutional and max pooling layers even for a single input,
+ * which can not be done by splitting a batch between threads.
+ *
+ * Disabled by default. It can be enabled with setEnabled or system property deepnetts.channelParallelism=true.
+ * Layers with less work than threshold are always calculated sequentially, since parallel
+ * execution would only add overhead.
+ *
+ * @author Zoran Sevarac
+ */
+public final class ChannelParallelism {
+
+    /**
+     * Default min amount of work (number of multiply-add or compare operations) for parallel execution.
+     */
+    public static final long DEFAULT_THRESHOLD = 1 << 16;
+
+    private static volatile boolean enabled = Boolean.getBoolean("deepnetts.channelParallelism");
+
+    private static volatile long threshold = DEFAULT_THRESHOLD;
+
+    private ChannelParallelism() { }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    public static void setEnabled(boolean enabled) {
+        ChannelParallelism.enabled = enabled;
+    }
+
+    public static long getThreshold() {
+        return threshold;
+    }
+
+    /**
+     * Sets min amount of work for parallel execution.
+     *
+     * @param threshold min number of operations in a layer to run its channels in parallel
+     */
+    public static void setThreshold(long threshold) {
+        if (threshold < 0) {
+            throw new IllegalArgumentException("Threshold cannot be negative : " + threshold);
+        }
+        ChannelParallelism.threshold = threshold;
+    }
+
+    /**
+     * Returns true if the specified number of channels with the specified total work
+     * would be calculated in parallel.
+     *
+     * @param count number of channels (or groups of channels)
+     * @param work total amount of work for all channels
+     * @return true if channels would be calculated in parallel
+     */
+    public static boolean isParallel(final int count, final long work) {
+        return enabled && count > 1 && work >= threshold && ForkJoinPool.getCommonPoolParallelism() > 1;
+    }
+
+    /**
+     * Runs specified task for each index from 0 to count-1 (usually channel or a group of channels).
+     * Tasks run in parallel if channel parallelism is enabled and total work is at least threshold,
+     * otherwise sequentially in calling thread. Task for each index must write only to its own part of data.
+     *
+     * @param count number of channels (or groups of channels)
+     * @param work total amount of work for all channels
+     * @param task task which accepts channel index
+     */
+    public static void forEach(final int count, final long work, final IntConsumer task) {
+        if (!isParallel(count, work)) {
+            for (int i = 0; i < count; i++) {
+                task.accept(i);
+            }
+        } else {
+            IntStream.range(0, count).parallel().forEach(task);
+        }
+    }
+
+}
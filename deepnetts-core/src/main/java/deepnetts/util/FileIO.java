@@ -47,6 +47,11 @@ import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.io.PrintWriter;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.List;
 import org.json.JSONArray;
@@ -67,13 +72,33 @@ public class FileIO {
     private FileIO() { }
 
     /**
-     * Serializes specified neural network to file with specified file.
+     * Saves specified neural network to file with specified name, in binary format
+     * with layer specifications and weights (without training state).
+     * Networks which binary format cannot represent (for example with custom layers,
+     * activation or loss functions) are saved with Java serialization, like in {@link #serializeToFile(deepnetts.net.NeuralNetwork, java.lang.String)}.
      *
      * @param neuralNet neural network to save
      * @param fileName name of the file
      * @throws IOException if something goes wrong
+     * @see #createFromFile(java.lang.String, java.lang.Class)
      */
     public static void writeToFile(NeuralNetwork neuralNet, String fileName) throws IOException {
+        if (BinaryNetworkFormat.canWrite(neuralNet)) {
+            BinaryNetworkFormat.write(neuralNet, Paths.get(fileName));
+        } else {
+            serializeToFile(neuralNet, fileName);
+        }
+    }
+
+    /**
+     * Serializes specified neural network (including its trainer and training state)
+     * to file with specified name, using Java serialization.
+     *
+     * @param neuralNet neural network to save
+     * @param fileName name of the file
+     * @throws IOException if something goes wrong
+     */
+    public static void serializeToFile(NeuralNetwork neuralNet, String fileName) throws IOException {
         try (ObjectOutputStream oos = new ObjectOutputStream(new FileOutputStream(fileName))) {
             oos.writeObject(neuralNet);
         }
@@ -86,22 +111,49 @@ public class FileIO {
         }
     }
 
+    /**
+     * Loads neural network from file saved in binary format, or serialized with Java serialization.
+     *
+     * @param <T> type of neural network
+     * @param fileName name of the file
+     * @param clazz class of neural network
+     * @return neural network loaded from file
+     * @throws IOException if something goes wrong
+     * @throws ClassNotFoundException if serialized class is not found
+     */
     public static <T> T createFromFile(String fileName, Class<T> clazz) throws IOException, ClassNotFoundException {
-        T neuralNet;
-        try (ObjectInputStream ois = new ObjectInputStream(new FileInputStream(fileName))) {
-            neuralNet = clazz.cast(ois.readObject()) ;
-        }
-        return neuralNet;
+        return clazz.cast(createFromFile(new File(fileName)));
     }
 
+    /**
+     * Loads neural network from file saved in binary format, or serialized with Java serialization.
+     *
+     * @param file file to load from
+     * @return neural network loaded from file
+     * @throws IOException if something goes wrong
+     * @throws ClassNotFoundException if serialized class is not found
+     */
     public static NeuralNetwork createFromFile(File file) throws IOException, ClassNotFoundException {
+        if (isBinaryFormat(file)) {
+            return BinaryNetworkFormat.read(file.toPath());
+        }
+
         NeuralNetwork nnet;
         try (ObjectInputStream ois = new ObjectInputStream(new FileInputStream(file))) {
-            nnet = (ConvolutionalNetwork) ois.readObject();
+            nnet = (NeuralNetwork) ois.readObject();
         }
         return nnet;
     }
 
+    private static boolean isBinaryFormat(File file) throws IOException {
+        final ByteBuffer start = ByteBuffer.allocate(4);
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            while (start.hasRemaining() && channel.read(start) >= 0) { }
+        }
+        ((Buffer) start).flip();
+        return BinaryNetworkFormat.isBinaryFormat(start);
+    }
+
 
     /**
      * Returns JSON representation of specified neural network object.
@@ -21,29 +21,51 @@
  */
 package deepnetts.util;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
 import java.util.Arrays;
 import java.util.function.Function;
 
 /**
  * This class represents multidimensional array/matrix (can be 1D, 2D, 3D or 4D).
+ * Values are stored in a flat array, in col, row, depth, fourth dimension order.
+ * Tensor can also be a view of a part of another tensor (see slice), which
+ * shares values array with that tensor, starting at some offset.
  *
  * @author Zoran Sevarac
  */
 public class Tensor implements Serializable {
 
+    private static final long serialVersionUID = -2345745004528761209L;
+
     // tensor dimensions - better use shape
     private final int cols, rows, depth, fourthDim, dimensions;
     private final int[] shape = new int[4];
     private int rank; 
     private int size; 
 
+    /**
+     * Position of the first value of this tensor in values array. Non zero only for views.
+     */
+    private int offset;
+
+    /**
+     * Distance between neighbour values in depth and fourth dimension (distance between rows is number of cols).
+     */
+    private transient int depthStride, fourthStride;
+
     /**
      * Values stored in this tensor make it final , only input layer and tests
      * sets values
      */
     private float values[];
 
+    /**
+     * Element wise kernels (vectorized when Vector API is available).
+     */
+    private static final TensorKernels KERNELS = TensorKernels.get();
+
     /**
      * Creates a single row tensor with specified values.
      *
@@ -55,6 +77,7 @@ public class Tensor implements Serializable {
         this.depth = 1;
         this.fourthDim = 1;
         this.dimensions = 1;
+        initStrides();
         this.values = values;
     }
 
@@ -69,6 +92,7 @@ public class Tensor implements Serializable {
         this.depth = 1;
         this.fourthDim = 1;
         this.dimensions = 2;
+        initStrides();
         this.values = new float[rows * cols];
 
         for (int row = 0; row < rows; row++) {
@@ -90,6 +114,7 @@ public class Tensor implements Serializable {
 
         this.fourthDim = 1;
         this.dimensions = 3;
+        initStrides();
         this.values = new float[rows * cols * depth];
 
         for (int z = 0; z < depth; z++) {
@@ -109,6 +134,7 @@ public class Tensor implements Serializable {
         this.cols = vals[0][0][0].length;
 
         this.dimensions = 4;
+        initStrides();
         this.values = new float[rows * cols * depth * fourthDim];
 
         for (int f = 0; f < fourthDim; f++) {
@@ -137,6 +163,7 @@ public class Tensor implements Serializable {
         this.depth = 1;
         this.fourthDim = 1;
         this.dimensions = 1;
+        initStrides();
         values = new float[cols];
     }
 
@@ -150,6 +177,7 @@ public class Tensor implements Serializable {
         this.depth = 1;
         this.fourthDim = 1;
         this.dimensions = 1;
+        initStrides();
         values = new float[cols];
 
         for (int i = 0; i < values.length; i++) {
@@ -176,6 +204,7 @@ public class Tensor implements Serializable {
         this.depth = 1;
         this.fourthDim = 1;
         this.dimensions = 2;
+        initStrides();
         values = new float[rows * cols];
     }
 
@@ -195,6 +224,7 @@ public class Tensor implements Serializable {
         this.depth = 1;
         this.fourthDim = 1;
         this.dimensions = 2;
+        initStrides();
 
         this.values = values;
     }
@@ -222,6 +252,7 @@ public class Tensor implements Serializable {
         this.depth = depth;
         this.fourthDim = 1;
         this.dimensions = 3;
+        initStrides();
         this.values = new float[rows * cols * depth];
     }
 
@@ -245,6 +276,7 @@ public class Tensor implements Serializable {
         this.depth = depth;
         this.fourthDim = fourthDim;
         this.dimensions = 4;
+        initStrides();
         this.values = new float[rows * cols * depth * fourthDim];
     }
 
@@ -267,6 +299,7 @@ public class Tensor implements Serializable {
         this.depth = depth;
         this.fourthDim = fourthDim;
         this.dimensions = 4;
+        initStrides();
         this.values = values;
     }
 
@@ -289,6 +322,7 @@ public class Tensor implements Serializable {
         this.depth = depth;
         this.fourthDim = 1;
         this.dimensions = 3;
+        initStrides();
         this.values = values;
     }
 
@@ -298,9 +332,93 @@ public class Tensor implements Serializable {
         this.depth = t.depth;
         this.fourthDim = t.fourthDim;
         this.dimensions = t.dimensions;
-        values = new float[t.values.length];
+        initStrides();
+        values = new float[size];
+
+        System.arraycopy(t.values, t.offset, values, 0, size);
+    }
+
+    /**
+     * Creates a view which uses specified values array starting from specified offset.
+     */
+    private Tensor(final float[] values, final int offset, final int rows, final int cols, final int depth, final int fourthDim, final int dimensions) {
+        this.rows = rows;
+        this.cols = cols;
+        this.depth = depth;
+        this.fourthDim = fourthDim;
+        this.dimensions = dimensions;
+        initStrides();
+        this.values = values;
+        this.offset = offset;
+    }
+
+    /**
+     * Calculates strides, size and shape from tensor dimensions.
+     */
+    private void initStrides() {
+        depthStride = rows * cols;
+        fourthStride = rows * cols * depth;
+        size = fourthStride * fourthDim;
+        shape[0] = fourthDim;
+        shape[1] = depth;
+        shape[2] = rows;
+        shape[3] = cols;
+    }
+
+    /**
+     * Returns a view of a part of this tensor along its highest dimension:
+     * a row of 2D tensor, a channel (depth) of 3D tensor, or a 3D tensor of 4D tensor
+     * (for example one sample in a batch, or weights for one output).
+     * View shares values with this tensor, so changes in view are visible in this tensor, and vice versa.
+     *
+     * @param idx index of the part along highest dimension
+     * @return view of the specified part of this tensor
+     */
+    public final Tensor slice(final int idx) {
+        switch (dimensions) {
+            case 2:
+                checkSliceIdx(idx, rows);
+                return new Tensor(values, offset + idx * cols, 1, cols, 1, 1, 1);
+            case 3:
+                checkSliceIdx(idx, depth);
+                return new Tensor(values, offset + idx * depthStride, rows, cols, 1, 1, 2);
+            case 4:
+                checkSliceIdx(idx, fourthDim);
+                return new Tensor(values, offset + idx * fourthStride, rows, cols, depth, 1, 3);
+            default:
+                throw new DeepNettsException("Slice is not supported for " + dimensions + "D tensor!");
+        }
+    }
+
+    /**
+     * Creates a single row tensor which is a view of specified number of values in specified array, starting from specified offset.
+     * View shares values array, so changes in view are visible in array, and vice versa.
+     *
+     * @param values values array
+     * @param offset position of the first value of the view in array
+     * @param cols number of values in the view
+     * @return view of the specified part of array
+     */
+    public static Tensor view(final float[] values, final int offset, final int cols) {
+        if (offset < 0 || cols < 0 || offset + cols > values.length) {
+            throw new IndexOutOfBoundsException("View [" + offset + ", " + (offset + cols) + ") out of array range [0, " + values.length + ")");
+        }
+        return new Tensor(values, offset, 1, cols, 1, 1, 1);
+    }
 
-        System.arraycopy(t.values, 0, values, 0, t.values.length);
+    private static void checkSliceIdx(final int idx, final int count) {
+        if (idx < 0 || idx >= count) {
+            throw new IndexOutOfBoundsException("Slice index " + idx + " out of range [0, " + count + ")");
+        }
+    }
+
+    /**
+     * Returns true if this tensor is a view of a part of another tensor's values.
+     *
+     * @return true for views, false otherwise
+     */
+    public final boolean isView() {
+        return offset != 0 || size != values.length;
     }
 
     /**
@@ -310,7 +428,7 @@ public class Tensor implements Serializable {
      * @return
      */
     public final float get(final int idx) {
-        return values[idx];
+        return values[offset + idx];
     }
 
     /**
@@ -321,7 +439,7 @@ public class Tensor implements Serializable {
      * @return
      */
     public final float set(final int idx, final float val) {
-        return values[idx] = val;
+        return values[offset + idx] = val;
     }
 
     /**
@@ -332,7 +450,7 @@ public class Tensor implements Serializable {
      * @return value at [row, col]
      */
     public final float get(final int row, final int col) {
-        final int idx = row * cols + col;
+        final int idx = offset + row * cols + col;
         return values[idx];
     }
 
@@ -344,7 +462,7 @@ public class Tensor implements Serializable {
      * @param val value to set
      */
     public final void set(final int row, final int col, final float val) {
-        final int idx = row * cols + col;
+        final int idx = offset + row * cols + col;
         values[idx] = val;
     }
 
@@ -357,41 +475,118 @@ public class Tensor implements Serializable {
      * @return
      */
     public final float get(final int row, final int col, final int z) {
-        final int idx = z * cols * rows + row * cols + col;
+        final int idx = offset + z * depthStride + row * cols + col;
         return values[idx];
     }
 
     public final void set(final int row, final int col, final int z, final float val) {
-        final int idx = z * cols * rows + row * cols + col;
+        final int idx = offset + z * depthStride + row * cols + col;
         values[idx] = val;
     }
 
     public final float get(final int row, final int col, final int z, final int fourth) {
-        final int idx = fourth * rows * cols * depth + z * rows * cols + row * cols + col;
+        final int idx = offset + fourth * fourthStride + z * depthStride + row * cols + col;
         return values[idx];
     }
 
     public final void set(final int row, final int col, final int z, final int fourth, final float val) {
-        final int idx = fourth * rows * cols * depth + z * rows * cols + row * cols + col;
+        final int idx = offset + fourth * fourthStride + z * depthStride + row * cols + col;
         values[idx] = val;
     }
 
+    /**
+     * Returns value at specified [fourth, z, row, col] position.
+     *
+     * @param idxs indexes in shape order: fourth, depth, row, col
+     * @return value at specified position
+     */
     public final float getWithStride(final int[] idxs) {
-        final int idx = idxs[0] * shape[1] * shape[2] * shape[3] + idxs[1] * shape[2] * shape[3] + idxs[2] * shape[3] + idxs[3];
+        final int idx = offset + idxs[0] * fourthStride + idxs[1] * depthStride + idxs[2] * cols + idxs[3];
         return values[idx];
     }
 
+    /**
+     * Returns array with values of this tensor.
+     * For views, values of this tensor are only part of the array, starting at getOffset() with size() values.
+     *
+     * @return array with values of this tensor
+     */
     public final float[] getValues() {
         return values;
     }
 
+    /**
+     * Returns values of this tensor in an array starting from zero: values array itself
+     * if this tensor is not a view, or a copy of the values of a view.
+     *
+     * @return values of this tensor starting from zero
+     */
+    public final float[] getFlatValues() {
+        if (!isView()) {
+            return values;
+        }
+        final float[] flat = new float[size];
+        System.arraycopy(values, offset, flat, 0, size);
+        return flat;
+    }
+
+    /**
+     * Returns values of this tensor in an array starting from zero, like {@link #getFlatValues()},
+     * but values of a view are copied into specified buffer instead of a new array.
+     *
+     * @param buffer array for values of a view, with at least size() elements
+     * @return values array if this tensor is not a view, or buffer with the values of a view
+     */
+    public final float[] getFlatValues(final float[] buffer) {
+        if (!isView()) {
+            return values;
+        }
+        System.arraycopy(values, offset, buffer, 0, size);
+        return buffer;
+    }
+
+    /**
+     * Returns position of the first value of this tensor in values array.
+     *
+     * @return offset of the first value, non zero only for views
+     */
+    public final int getOffset() {
+        return offset;
+    }
+
+    /**
+     * Replaces values array of this tensor with specified array (and resets offset to zero).
+     *
+     * @param values new values
+     */
     public final void setValues(final float... values) {
 //        if (values.length != this.values.length) throw new DeepNettsException("Arrays are not of same size!");
         this.values = values;
+        this.offset = 0;
     }
 
     public final void copyFrom(final float[] src) {
-        System.arraycopy(src, 0, values, 0, values.length);
+        System.arraycopy(src, 0, values, offset, size);
+    }
+
+    /**
+     * Copies size() values from specified array, starting from specified position, into this tensor.
+     *
+     * @param src source array
+     * @param srcOffset position of the first value to copy in source array
+     */
+    public final void copyFrom(final float[] src, final int srcOffset) {
+        System.arraycopy(src, srcOffset, values, offset, size);
+    }
+
+    /**
+     * Copies values of this tensor into specified array, starting from specified position.
+     *
+     * @param dest destination array
+     * @param destOffset position in destination array
+     */
+    public final void copyTo(final float[] dest, final int destOffset) {
+        System.arraycopy(values, offset, dest, destOffset, size);
     }
 
     public final int getCols() {
@@ -415,7 +610,7 @@ public class Tensor implements Serializable {
     }
 
     public final int size() {
-        return values.length;
+        return size;
     }
 
     @Override
@@ -423,11 +618,11 @@ public class Tensor implements Serializable {
         StringBuilder sb = new StringBuilder();
 
         sb.append("[");
-        for (int i = 0; i < values.length; i++) {
-            sb.append(values[i]);
-            if ( ((i+1) % cols == 0) && (i < values.length - 1)  ) {
+        for (int i = 0; i < size; i++) {
+            sb.append(values[offset + i]);
+            if ( ((i+1) % cols == 0) && (i < size - 1)  ) {
                 sb.append("; ");
-            } else if (i < values.length - 1) {
+            } else if (i < size - 1) {
                 sb.append(", ");
             }
         }
@@ -437,7 +632,7 @@ public class Tensor implements Serializable {
     }
 
     public final void add(final int idx, final float value) {
-        values[idx] += value;
+        values[offset + idx] += value;
     }
 
     /**
@@ -448,17 +643,17 @@ public class Tensor implements Serializable {
      * @param value
      */
     public final void add(final int row, final int col, final float value) {
-        final int idx = row * cols + col;
+        final int idx = offset + row * cols + col;
         values[idx] += value;
     }
 
     public final void  add(final int row, final int col, final int z, final float value) {
-        final int idx = z * cols * rows + row * cols + col;
+        final int idx = offset + z * depthStride + row * cols + col;
         values[idx] += value;
     }
 
     public final void add(final int row, final int col, final int z, final int fourth, final float value) {
-        final int idx = fourth * cols * rows * depth + z * cols * rows + row * cols + col;
+        final int idx = offset + fourth * fourthStride + z * depthStride + row * cols + col;
         values[idx] += value;
     }
 
@@ -470,23 +665,21 @@ public class Tensor implements Serializable {
      * @param t tensor to add
      */
     public final void add(Tensor t) {
-        for (int i = 0; i < values.length; i++) {
-            values[i] += t.values[i];
-        }
+        KERNELS.add(values, offset, t.values, t.offset, size);
     }
 
     public final void sub(final int row, final int col, final float value) {
-        final int idx = row * cols + col;
+        final int idx = offset + row * cols + col;
         values[idx] -= value;
     }
 
     public final void sub(final int row, final int col, final int z, final float value) {
-        final int idx = z * rows * cols + row * cols + col;
+        final int idx = offset + z * depthStride + row * cols + col;
         values[idx] -= value;
     }
 
     public final void sub(final int row, final int col, final int z, final int fourth, final float value) {
-        final int idx = fourth * rows * cols * depth + z * rows * cols + row * cols + col;
+        final int idx = offset + fourth * fourthStride + z * depthStride + row * cols + col;
         values[idx] -= value;
     }
 
@@ -496,15 +689,11 @@ public class Tensor implements Serializable {
      * @param t tensor to subtract
      */
     public final void sub(final Tensor t) {
-        for (int i = 0; i < values.length; i++) {
-            values[i] -= t.values[i];
-        }
+        KERNELS.sub(values, offset, t.values, t.offset, size);
     }
     
     public final void sub(final float val) {
-        for (int i = 0; i < values.length; i++) {
-            values[i] -= val;
-        }
+        KERNELS.sub(values, offset, val, size);
     }    
 
     /**
@@ -514,9 +703,7 @@ public class Tensor implements Serializable {
      * @param t2
      */
     public final static void sub(final Tensor t1, final Tensor t2) {
-        for (int i = 0; i < t1.values.length; i++) {
-            t1.values[i] -= t2.values[i];
-        }
+        KERNELS.sub(t1.values, t1.offset, t2.values, t2.offset, t1.size);
     }
 
     /**
@@ -525,16 +712,12 @@ public class Tensor implements Serializable {
      * @param value
      */
     public final void div(final float value) {
-        for (int i = 0; i < values.length; i++) {
-            values[i] /= value;
-        }
+        KERNELS.div(values, offset, value, size);
     }
     
     // element wise division
     public final void div(final float[] divisors) {
-        for (int i = 0; i < values.length; i++) {
-            values[i] /= divisors[i];
-        }
+        KERNELS.div(values, offset, divisors, 0, size);
     }    
 
     /**
@@ -543,34 +726,28 @@ public class Tensor implements Serializable {
      * @param value value used to fill tensor
      */
     public final void fill(final float value) {
-        for (int i = 0; i < values.length; i++) {
-            values[i] = value;
-        }
+        KERNELS.fill(values, offset, value, size);
     }
 
     public static final void fill(final float[] array, final float val) {
-        for (int i = 0; i < array.length; i++) {
-            array[i] = val;
-        }
+        KERNELS.fill(array, 0, val, array.length);
     }
 
     
     public final void div(Tensor t) {
-        for (int i = 0; i < values.length; i++) {
-            this.values[i] = this.values[i] / t.values[i];
-        }
+        KERNELS.div(values, offset, t.values, t.offset, size);
     }
     
     // TODO: fix number of dimensions
     public Tensor copy() {
         Tensor newTensor = new Tensor(rows, cols,  depth, fourthDim);    
-        System.arraycopy(this.values, 0, newTensor.values, 0, this.values.length);                
+        System.arraycopy(this.values, offset, newTensor.values, 0, size);                
         return newTensor;
     }
     
     // TODO: also set dimensions for dst
     public static final void copy(final Tensor src, final Tensor dest) {
-        System.arraycopy(src.values, 0, dest.values, 0, src.values.length);
+        System.arraycopy(src.values, src.offset, dest.values, dest.offset, src.size);
     }
 
     public static final void copy(final float[] src, final float[] dest) {
@@ -578,7 +755,7 @@ public class Tensor implements Serializable {
     }
 
     public void apply(Function<Float, Float> f) {
-        for(int i=0; i<values.length; i++) {
+        for(int i=offset; i<offset+size; i++) {
             values[i] = f.apply(values[i]);
         }
     }
@@ -610,8 +787,10 @@ public class Tensor implements Serializable {
         if (this.dimensions != other.dimensions) {
             return false;
         }
-        if (!Arrays.equals(this.values, other.values)) {
-            return false;
+        for (int i = 0; i < size; i++) {
+            if (Float.floatToIntBits(this.values[offset + i]) != Float.floatToIntBits(other.values[other.offset + i])) {
+                return false;
+            }
         }
         return true;
     }
@@ -624,15 +803,17 @@ public class Tensor implements Serializable {
         hash = 41 * hash + this.depth;
         hash = 41 * hash + this.fourthDim;
         hash = 41 * hash + this.dimensions;
-        hash = 41 * hash + Arrays.hashCode(this.values);
+        for (int i = offset; i < offset + size; i++) {
+            hash = 31 * hash + Float.floatToIntBits(values[i]);
+        }
         return hash;
     }
 
     public boolean equals(Tensor t2, float delta) {
         float[] arr2 = t2.getValues();
 
-        for (int i = 0; i < values.length; i++) {
-            if (Math.abs(values[i] - arr2[i]) > delta) {
+        for (int i = 0; i < size; i++) {
+            if (Math.abs(values[offset + i] - arr2[t2.offset + i]) > delta) {
                 return false;
             }
         }
@@ -659,7 +840,7 @@ public class Tensor implements Serializable {
     public void setValuesFromString(String values) {
         String[] strArr = values.split(",");
         for (int i = 0; i < strArr.length; i++) {
-            this.values[i] = Float.parseFloat(strArr[i]);
+            this.values[offset + i] = Float.parseFloat(strArr[i]);
         }
     }
 
@@ -689,11 +870,7 @@ public class Tensor implements Serializable {
      * @return L1 norm
      */
     public float sumAbs() {
-        float sum = 0;
-        for (int i = 0; i < values.length; i++) {
-            sum += Math.abs(values[i]);
-        }
-        return sum;
+        return KERNELS.sumAbs(values, offset, size);
     }
 
     /**
@@ -702,38 +879,35 @@ public class Tensor implements Serializable {
      * @return L2 norm
      */
     public float sumSqr() {
-        float sum = 0;
-        for (int i = 0; i < values.length; i++) {
-            sum += values[i] * values[i];
-        }
-        return sum;
+        return KERNELS.sumSqr(values, offset, size);
     }
 
     // works for 2d tensors
     public void randomize() {
         for (int r = 0; r < rows; r++) {
             for (int c = 0; c < cols; c++) {
-                values[r * cols + c] = RandomGenerator.getDefault().nextFloat();
+                values[offset + r * cols + c] = RandomGenerator.getDefault().nextFloat();
             }
         }
     }
 
     public void multiplyElementWise(Tensor tensor2) {
-        for(int i=0; i<values.length; i++) {
-            values[i] *= tensor2.values[i];
-        }
+        KERNELS.multiply(values, offset, tensor2.values, tensor2.offset, size);
     }
 
     public void multiply(float m) {
-        for(int i=0; i<values.length; i++) {
-            values[i] *= m;
-        }
+        KERNELS.multiply(values, offset, m, size);
     }
 
     public void sqrt() {
-        for (int i = 0; i < values.length; i++) {
+        for (int i = offset; i < offset + size; i++) {
             values[i] = (float)Math.sqrt(values[i]);
         }
     }
 
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        initStrides();
+    }
+
 }
@@ -0,0 +1,166 @@
+/**
+ *  DeepNetts is pure Java Deep Learning Library with support for Backpropagation
+ *  based learning and image recognition.
+ *
+ *  Copyright (C) 2017  Zoran Sevarac <sevarac@gmail.com>
+ *
+ * This file is part of DeepNetts.
+ *
+ * DeepNetts is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <https://www.gnu.org/licenses/>.package
+ * deepnetts.core;
+ */
+package deepnetts.util;
+
+/**
+ * Element wise kernels on float arrays, used by Tensor and Tensors.
+ * All methods work on a span of array specified by offset and length.
+ *
+ * This class provides plain scalar loops, which work on any Java version.
+ * When running on JDK 17+ with jdk.incubator.vector module added
+ * (--add-modules jdk.incubator.vector) and deepnetts-core used as a multi-release jar,
+ * vectorized implementation based on Vector API is used instead.
+ *
+ * @author Zoran Sevarac
+ */
+class TensorKernels {
+
+    private static final String VECTOR_KERNELS_CLASS = "deepnetts.util.VectorTensorKernels";
+
+    private static final TensorKernels INSTANCE = create();
+
+    TensorKernels() { }
+
+    /**
+     * Returns kernels to use on this JVM.
+     *
+     * @return vectorized kernels if available, scalar otherwise
+     */
+    static TensorKernels get() {
+        return INSTANCE;
+    }
+
+    /**
+     * Tries to load vectorized kernels and falls back to scalar ones if Vector API is not available.
+     */
+    private static TensorKernels create() {
+        try {
+            return (TensorKernels) Class.forName(VECTOR_KERNELS_CLASS).getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError | ClassCastException ex) {
+            return new TensorKernels();
+        }
+    }
+
+    /**
+     * Returns true if these kernels use Vector API.
+     *
+     * @return true if vectorized, false for scalar loops
+     */
+    boolean isVectorized() {
+        return false;
+    }
+
+    /**
+     * a[i] += b[i]
+     */
+    void add(final float[] a, final int aOff, final float[] b, final int bOff, final int len) {
+        for (int i = 0; i < len; i++) {
+            a[aOff + i] += b[bOff + i];
+        }
+    }
+
+    /**
+     * a[i] -= b[i]
+     */
+    void sub(final float[] a, final int aOff, final float[] b, final int bOff, final int len) {
+        for (int i = 0; i < len; i++) {
+            a[aOff + i] -= b[bOff + i];
+        }
+    }
+
+    /**
+     * a[i] -= val
+     */
+    void sub(final float[] a, final int aOff, final float val, final int len) {
+        for (int i = 0; i < len; i++) {
+            a[aOff + i] -= val;
+        }
+    }
+
+    /**
+     * a[i] *= b[i]
+     */
+    void multiply(final float[] a, final int aOff, final float[] b, final int bOff, final int len) {
+        for (int i = 0; i < len; i++) {
+            a[aOff + i] *= b[bOff + i];
+        }
+    }
+
+    /**
+     * a[i] *= val
+     */
+    void multiply(final float[] a, final int aOff, final float val, final int len) {
+        for (int i = 0; i < len; i++) {
+            a[aOff + i] *= val;
+        }
+    }
+
+    /**
+     * a[i] /= b[i]
+     */
+    void div(final float[] a, final int aOff, final float[] b, final int bOff, final int len) {
+        for (int i = 0; i < len; i++) {
+            a[aOff + i] /= b[bOff + i];
+        }
+    }
+
+    /**
+     * a[i] /= val
+     */
+    void div(final float[] a, final int aOff, final float val, final int len) {
+        for (int i = 0; i < len; i++) {
+            a[aOff + i] /= val;
+        }
+    }
+
+    /**
+     * a[i] = val
+     */
+    void fill(final float[] a, final int aOff, final float val, final int len) {
+        for (int i = 0; i < len; i++) {
+            a[aOff + i] = val;
+        }
+    }
+
+    /**
+     * Returns sum of absolute values.
+     */
+    float sumAbs(final float[] a, final int aOff, final int len) {
+        float sum = 0;
+        for (int i = 0; i < len; i++) {
+            sum += Math.abs(a[aOff + i]);
+        }
+        return sum;
+    }
+
+    /**
+     * Returns sum of squared values.
+     */
+    float sumSqr(final float[] a, final int aOff, final int len) {
+        float sum = 0;
+        for (int i = 0; i < len; i++) {
+            sum += a[aOff + i] * a[aOff + i];
+        }
+        return sum;
+    }
+
+}
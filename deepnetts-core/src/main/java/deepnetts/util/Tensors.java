@@ -28,6 +28,8 @@ package deepnetts.util;
  */
 public class Tensors {
 
+    private static final TensorKernels KERNELS = TensorKernels.get();
+
     public static float[] copyOf(float[] arr) {
         float[] copy = new float[arr.length];
         System.arraycopy(arr, 0, copy, 0, arr.length);
@@ -35,15 +37,11 @@ public class Tensors {
     }
 
     public static void sub(float[] arr, float val) {
-        for(int i=0; i < arr.length; i++) {
-             arr[i] = arr[i] - val;
-        }
+        KERNELS.sub(arr, 0, val, arr.length);
     }
 
     public static void multiply(float[] arr1, float[] arr2) {
-        for (int i = 0; i < arr1.length; i++) {
-            arr1[i] *= arr2[i];
-        }        
+        KERNELS.multiply(arr1, 0, arr2, 0, arr1.length);
     }
 
 
@@ -62,9 +60,10 @@ public class Tensors {
     public static Tensor absMax(final Tensor t, final Tensor max) {
         final float[] tValues= t.getValues();
         final float[] maxValues= max.getValues();
-        
-        for(int i=0; i < tValues.length; i++) {
-            if (Math.abs(tValues[i]) > maxValues[i]) maxValues[i] = Math.abs(tValues[i]);
+        final int tOffset = t.getOffset(), maxOffset = max.getOffset();
+
+        for(int i=0; i < t.size(); i++) {
+            if (Math.abs(tValues[tOffset + i]) > maxValues[maxOffset + i]) maxValues[maxOffset + i] = Math.abs(tValues[tOffset + i]);
         }
         return max;       
     }
@@ -87,9 +86,10 @@ public class Tensors {
     public static Tensor absMin(final Tensor t, final Tensor min) {
         final float[] tValues= t.getValues();
         final float[] minValues= min.getValues();
-        
-        for(int i=0; i < tValues.length; i++) {
-            if (Math.abs(tValues[i]) < Math.abs(minValues[i])) minValues[i] = Math.abs(tValues[i]);
+        final int tOffset = t.getOffset(), minOffset = min.getOffset();
+
+        for(int i=0; i < t.size(); i++) {
+            if (Math.abs(tValues[tOffset + i]) < Math.abs(minValues[minOffset + i])) minValues[minOffset + i] = Math.abs(tValues[tOffset + i]);
         }
         return min;       
     }    
@@ -102,27 +102,19 @@ public class Tensors {
     }        
     
     public static void div(final float[] array, final float val) {
-        for (int i = 0; i < array.length; i++) {
-            array[i] /= val;
-        }
+        KERNELS.div(array, 0, val, array.length);
     }
 
     public static void div(final float[] array, final float[] divisor) {
-        for (int i = 0; i < array.length; i++) {
-            array[i] = array[i] / divisor[i];
-        }
+        KERNELS.div(array, 0, divisor, 0, array.length);
     }
     
     public static final void sub(final float[] array1, final float[] array2) {
-        for (int i = 0; i < array1.length; i++) {
-            array1[i] -= array2[i];
-        }
+        KERNELS.sub(array1, 0, array2, 0, array1.length);
     }
 
     public static final void add(final float[] array1, final float[] array2) {
-        for (int i = 0; i < array1.length; i++) {
-            array1[i] += array2[i];
-        }
+        KERNELS.add(array1, 0, array2, 0, array1.length);
     }    
     
     // decimal scale
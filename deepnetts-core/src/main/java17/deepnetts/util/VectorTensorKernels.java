@@ -0,0 +1,185 @@
+/**
+ *  DeepNetts is pure Java Deep Learning Library with support for Backpropagation
+ *  based learning and image recognition.
+ *
+ *  Copyright (C) 2017  Zoran Sevarac <sevarac@gmail.com>
+ *
+ * This file is part of DeepNetts.
+ *
+ * DeepNetts is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <https://www.gnu.org/licenses/>.package
+ * deepnetts.core;
+ */
+package deepnetts.util;
+
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Tensor kernels implemented with Vector API (JDK 17+).
+ * Processes as many values at once as preferred vector size on current CPU allows,
+ * and the remaining values using scalar loop.
+ *
+ * This class is packaged in META-INF/versions/17 of multi-release jar,
+ * and loaded by TensorKernels only if jdk.incubator.vector module is available.
+ *
+ * @author Zoran Sevarac
+ */
+final class VectorTensorKernels extends TensorKernels {
+
+    private static final VectorSpecies<Float> SPECIES = FloatVector.SPECIES_PREFERRED;
+
+    VectorTensorKernels() { }
+
+    @Override
+    boolean isVectorized() {
+        return true;
+    }
+
+    @Override
+    void add(final float[] a, final int aOff, final float[] b, final int bOff, final int len) {
+        final int bound = SPECIES.loopBound(len);
+        int i = 0;
+        for (; i < bound; i += SPECIES.length()) {
+            final FloatVector va = FloatVector.fromArray(SPECIES, a, aOff + i);
+            final FloatVector vb = FloatVector.fromArray(SPECIES, b, bOff + i);
+            va.add(vb).intoArray(a, aOff + i);
+        }
+        for (; i < len; i++) {
+            a[aOff + i] += b[bOff + i];
+        }
+    }
+
+    @Override
+    void sub(final float[] a, final int aOff, final float[] b, final int bOff, final int len) {
+        final int bound = SPECIES.loopBound(len);
+        int i = 0;
+        for (; i < bound; i += SPECIES.length()) {
+            final FloatVector va = FloatVector.fromArray(SPECIES, a, aOff + i);
+            final FloatVector vb = FloatVector.fromArray(SPECIES, b, bOff + i);
+            va.sub(vb).intoArray(a, aOff + i);
+        }
+        for (; i < len; i++) {
+            a[aOff + i] -= b[bOff + i];
+        }
+    }
+
+    @Override
+    void sub(final float[] a, final int aOff, final float val, final int len) {
+        final int bound = SPECIES.loopBound(len);
+        int i = 0;
+        for (; i < bound; i += SPECIES.length()) {
+            FloatVector.fromArray(SPECIES, a, aOff + i).sub(val).intoArray(a, aOff + i);
+        }
+        for (; i < len; i++) {
+            a[aOff + i] -= val;
+        }
+    }
+
+    @Override
+    void multiply(final float[] a, final int aOff, final float[] b, final int bOff, final int len) {
+        final int bound = SPECIES.loopBound(len);
+        int i = 0;
+        for (; i < bound; i += SPECIES.length()) {
+            final FloatVector va = FloatVector.fromArray(SPECIES, a, aOff + i);
+            final FloatVector vb = FloatVector.fromArray(SPECIES, b, bOff + i);
+            va.mul(vb).intoArray(a, aOff + i);
+        }
+        for (; i < len; i++) {
+            a[aOff + i] *= b[bOff + i];
+        }
+    }
+
+    @Override
+    void multiply(final float[] a, final int aOff, final float val, final int len) {
+        final int bound = SPECIES.loopBound(len);
+        int i = 0;
+        for (; i < bound; i += SPECIES.length()) {
+            FloatVector.fromArray(SPECIES, a, aOff + i).mul(val).intoArray(a, aOff + i);
+        }
+        for (; i < len; i++) {
+            a[aOff + i] *= val;
+        }
+    }
+
+    @Override
+    void div(final float[] a, final int aOff, final float[] b, final int bOff, final int len) {
+        final int bound = SPECIES.loopBound(len);
+        int i = 0;
+        for (; i < bound; i += SPECIES.length()) {
+            final FloatVector va = FloatVector.fromArray(SPECIES, a, aOff + i);
+            final FloatVector vb = FloatVector.fromArray(SPECIES, b, bOff + i);
+            va.div(vb).intoArray(a, aOff + i);
+        }
+        for (; i < len; i++) {
+            a[aOff + i] /= b[bOff + i];
+        }
+    }
+
+    @Override
+    void div(final float[] a, final int aOff, final float val, final int len) {
+        final int bound = SPECIES.loopBound(len);
+        int i = 0;
+        for (; i < bound; i += SPECIES.length()) {
+            FloatVector.fromArray(SPECIES, a, aOff + i).div(val).intoArray(a, aOff + i);
+        }
+        for (; i < len; i++) {
+            a[aOff + i] /= val;
+        }
+    }
+
+    @Override
+    void fill(final float[] a, final int aOff, final float val, final int len) {
+        final FloatVector vv = FloatVector.broadcast(SPECIES, val);
+        final int bound = SPECIES.loopBound(len);
+        int i = 0;
+        for (; i < bound; i += SPECIES.length()) {
+            vv.intoArray(a, aOff + i);
+        }
+        for (; i < len; i++) {
+            a[aOff + i] = val;
+        }
+    }
+
+    @Override
+    float sumAbs(final float[] a, final int aOff, final int len) {
+        FloatVector acc = FloatVector.zero(SPECIES);
+        final int bound = SPECIES.loopBound(len);
+        int i = 0;
+        for (; i < bound; i += SPECIES.length()) {
+            acc = acc.add(FloatVector.fromArray(SPECIES, a, aOff + i).abs());
+        }
+        float sum = acc.reduceLanes(VectorOperators.ADD);
+        for (; i < len; i++) {
+            sum += Math.abs(a[aOff + i]);
+        }
+        return sum;
+    }
+
+    @Override
+    float sumSqr(final float[] a, final int aOff, final int len) {
+        FloatVector acc = FloatVector.zero(SPECIES);
+        final int bound = SPECIES.loopBound(len);
+        int i = 0;
+        for (; i < bound; i += SPECIES.length()) {
+            final FloatVector va = FloatVector.fromArray(SPECIES, a, aOff + i);
+            acc = va.fma(va, acc);
+        }
+        float sum = acc.reduceLanes(VectorOperators.ADD);
+        for (; i < len; i++) {
+            sum += a[aOff + i] * a[aOff + i];
+        }
+        return sum;
+    }
+
+}
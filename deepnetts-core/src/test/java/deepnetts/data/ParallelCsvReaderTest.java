@@ -0,0 +1,175 @@
+/**
+ *  DeepNetts is pure Java Deep Learning Library with support for Backpropagation
+ *  based learning and image recognition.
+ *
+ *  Copyright (C) 2017  Zoran Sevarac <sevarac@gmail.com>
+ *
+ * This file is part of DeepNetts.
+ *
+ * DeepNetts is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <https://www.gnu.org/licenses/>.package
+ * deepnetts.core;
+ */
+
+package deepnetts.data;
+
+import deepnetts.util.DeepNettsException;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Checks that parallel csv reader gives the same values and errors as sequential reading with Float.parseFloat.
+ *
+ * @author Zoran Sevarac
+ */
+public class ParallelCsvReaderTest {
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    /**
+     * Number of rows which gives several chunks.
+     */
+    private static final int ROWS = 2 * ParallelCsvReader.CHUNK_SIZE / 18;
+
+    @Test
+    public void parseFloatMatchesFloatParseFloat() {
+        final String[] values = {
+            "0", "-0", "+0", "0.0", "-0.0", "00012", "1", "-1", "+1", "1.", "-1.", ".5", "-.5", "+.5",
+            "0.1", "0.2", "0.3", "-0.7", "3.14159", "123456.789", "1234567.5", "0.000001", "0.0000001",
+            "16777215", "16777216", "16777217", "16777218", "-16777217", "1677721.5", "1677721.7", "167772.17",
+            "9999999999", "99999999999", "12345678901234567890",
+            "0.0123456789", "0.01234567891", "1.0000000001", "1.00000000001", "0.9999999999", "0.99999999999",
+            "1e3", "1E3", "-2.5e-3", "1.5E+10", "3.4028235e38", "3.4028236e38", "1.4e-45", "1e-50", "1e50",
+            "NaN", "-NaN", "Infinity", "-Infinity", "+Infinity", "1.5f", "2d", "0x1p3",
+            " 42", "42 ", "\t-3.25\t", "  7.  "
+        };
+        for (String value : values) {
+            assertParsedAsFloatParseFloat(value);
+        }
+    }
+
+    @Test
+    public void parseFloatMatchesFloatParseFloatForRandomNumbers() {
+        final Random rnd = new Random(123);
+        for (int i = 0; i < 200000; i++) {
+            final int digits = 1 + rnd.nextInt(12);
+            final StringBuilder sb = new StringBuilder();
+            if (rnd.nextBoolean()) sb.append('-');
+            final int dotPos = rnd.nextInt(digits + 1);
+            for (int d = 0; d < digits; d++) {
+                if (d == dotPos) sb.append('.');
+                sb.append((char) ('0' + rnd.nextInt(10)));
+            }
+            assertParsedAsFloatParseFloat(sb.toString());
+            assertParsedAsFloatParseFloat(Float.toString(Float.intBitsToFloat(rnd.nextInt())));
+        }
+    }
+
+    @Test
+    public void parseFloatRejectsWhatFloatParseFloatRejects() {
+        final String[] values = {"", " ", "-", "+", ".", "-.", "1e", "1.2.3", "abc", "1,5", "--1", "0x"};
+        for (String value : values) {
+            try {
+                parse(value);
+                fail("Expected NumberFormatException for '" + value + "'");
+            } catch (NumberFormatException expected) {
+                // same as Float.parseFloat
+            }
+        }
+    }
+
+    @Test
+    public void readCsvAcrossChunksWithCrlf() throws IOException {
+        final File csvFile = tempFolder.newFile("data.csv");
+        try (Writer out = new BufferedWriter(new FileWriter(csvFile))) {
+            out.write("a,b,c\r\n");
+            for (int i = 0; i < ROWS; i++) {
+                out.write(row(i));
+                out.write(i % 100000 == 0 ? "\r\n\r\n" : "\r\n"); // some empty lines too
+            }
+        }
+        assertTrue(csvFile.length() > 2 * ParallelCsvReader.CHUNK_SIZE);
+
+        for (boolean packed : new boolean[] {false, true}) {
+            for (int threadCount : new int[] {1, 4}) {
+                final TabularDataSet<?> dataSet = ParallelCsvReader.read(csvFile, 2, 1, true, ",", threadCount, packed);
+                assertEquals(3, dataSet.getColumnNames().length);
+                assertEquals("c", dataSet.getColumnNames()[2]);
+                assertEquals(ROWS, dataSet.size());
+                for (int i = 0; i < ROWS; i++) {
+                    final String[] values = row(i).split(",");
+                    final MLDataItem item = dataSet.get(i);
+                    assertEquals(Float.parseFloat(values[0]), item.getInput().get(0), 0);
+                    assertEquals(Float.parseFloat(values[1]), item.getInput().get(1), 0);
+                    assertEquals(Float.parseFloat(values[2]), item.getTargetOutput().get(0), 0);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void readCsvReportsRowNumbersAcrossChunks() throws IOException {
+        final int badRow = ROWS - 10; // in the last chunk
+        assertRowError(badRow, "1.5,2", "Wrong number of values in the row " + (badRow + 1) + ": found 2 expected 3");
+        assertRowError(badRow, "1.5,x,1", "Error parsing csv, number expected line in " + (badRow + 1) + ": ");
+    }
+
+    private void assertRowError(int badRow, String badLine, String expectedMessage) throws IOException {
+        final File csvFile = tempFolder.newFile();
+        try (Writer out = new BufferedWriter(new FileWriter(csvFile))) {
+            for (int i = 0; i < ROWS; i++) {
+                out.write(i == badRow ? badLine : row(i));
+                out.write(i % 1000 == 0 ? "\n\n" : "\n");
+            }
+        }
+
+        for (int threadCount : new int[] {1, 4}) {
+            try {
+                ParallelCsvReader.read(csvFile, 2, 1, false, ",", threadCount, false);
+                fail("Expected error in row " + (badRow + 1));
+            } catch (DeepNettsException ex) {
+                assertTrue(ex.getMessage(), ex.getMessage().startsWith(expectedMessage));
+            }
+        }
+    }
+
+    private static String row(int i) {
+        return i + "." + (i % 1000) + ",-" + (i % 97) + ".25," + (i % 2);
+    }
+
+    private static void assertParsedAsFloatParseFloat(String value) {
+        final float expected = Float.parseFloat(value);
+        assertEquals(value, Float.floatToIntBits(expected), Float.floatToIntBits(parse(value)));
+    }
+
+    /**
+     * Parses value placed between other bytes, to check that only the specified range is used.
+     */
+    private static float parse(String value) {
+        final byte[] bytes = ("9," + value + ",9").getBytes(StandardCharsets.US_ASCII);
+        return ParallelCsvReader.parseFloat(ByteBuffer.wrap(bytes), 2, bytes.length - 2);
+    }
+
+}
@@ -0,0 +1,126 @@
+/**
+ *  DeepNetts is pure Java Deep Learning Library with support for Backpropagation
+ *  based learning and image recognition.
+ *
+ *  Copyright (C) 2017  Zoran Sevarac <sevarac@gmail.com>
+ *
+ * This file is part of DeepNetts.
+ *
+ * DeepNetts is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <https://www.gnu.org/licenses/>.package
+ * deepnetts.core;
+ */
+
+package deepnetts.net;
+
+import deepnetts.data.TabularDataSet;
+import deepnetts.net.train.BackpropagationTrainer;
+import deepnetts.net.train.opt.OptimizerType;
+import deepnetts.util.FileIO;
+import deepnetts.util.Tensor;
+import java.io.File;
+import java.util.Random;
+import org.junit.Test;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that networks serialized with Java serialization by version 1.11, before layers kept
+ * activation derivatives and gradient sums, can still be loaded, used and trained.
+ *
+ * Files in test resources were created with the previous version of the library:
+ * feed forward network with tanh, relu, linear and sigmoid layers trained with momentum in online mode,
+ * and convolutional network trained with sgd in batch mode, each trained for a few epochs with data
+ * created like in {@link #dataSet(int, int, int)}.
+ *
+ * @author Zoran Sevarac
+ */
+public class SerializedNetworkCompatibilityTest {
+
+    /**
+     * Outputs of serialized networks calculated by the version which serialized them.
+     */
+    private static final float[] FEED_FORWARD_OUTPUT = {0.3087533f, 0.3168926f, 0.41752514f};
+    private static final float[] CONVOLUTIONAL_OUTPUT = {0.343339f, 0.65666103f};
+
+    @Test
+    public void loadAndTrainFeedForwardNetwork() throws Exception {
+        final TabularDataSet<TabularDataSet.Item> dataSet = dataSet(30, 4, 3);
+
+        for (OptimizerType optimizer : new OptimizerType[] {OptimizerType.MOMENTUM, OptimizerType.ADAM}) {
+            for (boolean batchMode : new boolean[] {false, true}) {
+                final FeedForwardNetwork neuralNet = FileIO.createFromFile(resource("feedforward-serialized.dnet"), FeedForwardNetwork.class);
+                neuralNet.setInput(new Tensor(0.1f, 0.5f, -0.3f, 0.8f));
+                assertArrayEquals(FEED_FORWARD_OUTPUT, neuralNet.getOutput(), 1e-6f);
+
+                train(neuralNet, dataSet, optimizer, batchMode);
+            }
+        }
+    }
+
+    @Test
+    public void loadAndTrainConvolutionalNetwork() throws Exception {
+        final TabularDataSet<TabularDataSet.Item> dataSet = dataSet(20, 64, 2);
+        final float[] input = new float[64];
+        for (int i = 0; i < input.length; i++) {
+            input[i] = (float) Math.sin(i);
+        }
+
+        for (OptimizerType optimizer : new OptimizerType[] {OptimizerType.SGD, OptimizerType.ADAM}) {
+            for (boolean batchMode : new boolean[] {false, true}) {
+                final ConvolutionalNetwork neuralNet = FileIO.createFromFile(resource("convolutional-serialized.dnet"), ConvolutionalNetwork.class);
+                neuralNet.setInput(new Tensor(8, 8, input));
+                assertArrayEquals(CONVOLUTIONAL_OUTPUT, neuralNet.getOutput(), 1e-6f);
+
+                train(neuralNet, dataSet, optimizer, batchMode);
+            }
+        }
+    }
+
+    private static void train(NeuralNetwork<?> neuralNet, TabularDataSet<TabularDataSet.Item> dataSet, OptimizerType optimizer, boolean batchMode) {
+        final BackpropagationTrainer trainer = (BackpropagationTrainer) neuralNet.getTrainer();
+        trainer.setMaxEpochs(2).setOptimizer(optimizer).setBatchMode(batchMode).setBatchSize(10).setThreadCount(2);
+        neuralNet.train(dataSet);
+
+        final float loss = trainer.getTrainingLoss();
+        assertTrue("Training loss: " + loss, Float.isFinite(loss));
+    }
+
+    /**
+     * Creates random data set with one hot encoded targets.
+     */
+    private static TabularDataSet<TabularDataSet.Item> dataSet(int size, int numInputs, int numOutputs) {
+        final Random rnd = new Random(7);
+        final TabularDataSet<TabularDataSet.Item> dataSet = new TabularDataSet<>(numInputs, numOutputs);
+        for (int i = 0; i < size; i++) {
+            final float[] in = new float[numInputs];
+            for (int j = 0; j < numInputs; j++) {
+                in[j] = rnd.nextFloat();
+            }
+            final float[] out = new float[numOutputs];
+            out[i % numOutputs] = 1;
+            dataSet.add(new TabularDataSet.Item(in, out));
+        }
+
+        final String[] columnNames = new String[numInputs + numOutputs];
+        for (int i = 0; i < columnNames.length; i++) {
+            columnNames[i] = "col" + i;
+        }
+        dataSet.setColumnNames(columnNames);
+        return dataSet;
+    }
+
+    private static String resource(String name) throws Exception {
+        return new File(SerializedNetworkCompatibilityTest.class.getResource(name).toURI()).getPath();
+    }
+
+}